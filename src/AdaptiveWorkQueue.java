@@ -0,0 +1,553 @@
+package edu.usfca.cs272;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * A work queue that picks its own number of worker threads between a minimum
+ * and a maximum, so the number does not have to be tuned for each workload.
+ * Tasks that mostly wait on I/O (such as fetching web pages) call for many
+ * threads, while tasks that keep a processor busy (such as stemming) call for
+ * about one per processor.
+ *
+ * Every interval, the queue measures how many tasks finished, how many are
+ * waiting, how long the workers were idle, and how much of the time spent
+ * running tasks was spent blocked rather than on a processor. It then aims for
+ * the number of threads that keeps every processor busy, which is the number of
+ * processors divided by the fraction of time tasks are not blocked. Workers are
+ * only added while tasks are waiting, and are retired while they are idle.
+ *
+ * The throughput is checked after workers are added: if it did not rise, they
+ * are retired again and the queue stops growing for a while. Since
+ * waiting for a busy processor also looks like being blocked, extra workers are
+ * retired a few at a time while every processor is busy, and added back if the
+ * throughput drops. Every decision is logged.
+ *
+ * @see <a href="https://jcip.net/">Java Concurrency in Practice, 8.2: Sizing
+ *      Thread Pools</a>
+ */
+public class AdaptiveWorkQueue extends WorkQueue {
+	/** Logger used for this class. */
+	private static final Logger log = LogManager.getLogger();
+
+	/** The default time between adjustments, in milliseconds. */
+	public static final long DEFAULT_INTERVAL = 500;
+
+	/** The number of processors available. */
+	private static final int PROCESSORS = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * The fraction of the processor time available that has to be used for the
+	 * processors to count as saturated
+	 */
+	private static final double SATURATED = 0.9;
+
+	/**
+	 * The number of adjustments the limits found by measuring the throughput apply
+	 * for
+	 */
+	private static final int LIMIT_ADJUSTMENTS = 10;
+
+	/** Measures the processor time of each thread, if supported. */
+	private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+	/** Queue of pending work (or tasks). */
+	private final LinkedList<Runnable> tasks;
+
+	/** The running workers, guarded by the lock of {@link #tasks}. */
+	private final List<Worker> workers;
+
+	/** The minimum number of workers. */
+	private final int min;
+
+	/** The maximum number of workers. */
+	private final int max;
+
+	/** The time between adjustments, in milliseconds. */
+	private final long interval;
+
+	/** Whether the processor time of threads can be measured. */
+	private final boolean measured;
+
+	/** Adjusts the number of workers every interval. */
+	private final Thread monitor;
+
+	/** The number of workers asked to exit, guarded by the lock of the tasks. */
+	private int retiring;
+
+	/** The number of tasks added but not finished yet. */
+	private int pending;
+
+	/** Used to wait in {@link #finish()} until there is no more pending work. */
+	private final Object pendingLock;
+
+	/** Used to signal the workers should terminate. */
+	private volatile boolean shutdown;
+
+	/** The number of tasks finished since the last adjustment. */
+	private final LongAdder completed;
+
+
+	/** The number of tasks finished per second in the last interval. */
+	private double lastRate;
+
+	/**
+	 * The average processor time of the tasks finished in the last interval, in
+	 * nanoseconds
+	 */
+	private double lastCost;
+
+	/**
+	 * The number of workers added (if positive) or retired to test whether they
+	 * were needed (if negative) in the last adjustment
+	 */
+	private int lastChange;
+
+	/**
+	 * The number of workers past which adding more did not raise the throughput,
+	 * or the maximum if none was found
+	 */
+	private int ceiling;
+
+	/**
+	 * The number of workers below which retiring more lowered the throughput, or
+	 * the minimum if none was found
+	 */
+	private int floor;
+
+	/**
+	 * The average processor time of the tasks when the ceiling or floor was found,
+	 * in nanoseconds
+	 */
+	private double limitCost;
+
+	/** The number of adjustments left before the ceiling and floor are lifted. */
+	private int limitAge;
+
+	/**
+	 * Starts a work queue that adjusts its number of worker threads between the
+	 * specified bounds every {@link #DEFAULT_INTERVAL} milliseconds.
+	 *
+	 * @param min the minimum number of worker threads; at least 1
+	 * @param max the maximum number of worker threads
+	 */
+	public AdaptiveWorkQueue(int min, int max) {
+		this(min, max, DEFAULT_INTERVAL);
+	}
+
+	/**
+	 * Starts a work queue that adjusts its number of worker threads between the
+	 * specified bounds. It starts with one thread per processor, within the
+	 * bounds.
+	 *
+	 * @param min      the minimum number of worker threads; at least 1
+	 * @param max      the maximum number of worker threads
+	 * @param interval the time between adjustments, in milliseconds
+	 */
+	public AdaptiveWorkQueue(int min, int max, long interval) {
+		super(0, false);
+		this.min = Math.max(1, min);
+		this.max = Math.max(this.min, max);
+		this.interval = Math.max(1, interval);
+		this.measured = THREADS.isThreadCpuTimeSupported() && THREADS.isThreadCpuTimeEnabled();
+		this.tasks = new LinkedList<>();
+		this.workers = new ArrayList<>();
+		this.retiring = 0;
+		this.pending = 0;
+		this.pendingLock = new Object();
+		this.shutdown = false;
+		this.completed = new LongAdder();
+		this.lastRate = 0;
+		this.lastCost = 0;
+		this.lastChange = 0;
+		this.ceiling = this.max;
+		this.floor = this.min;
+		this.limitCost = 0;
+		this.limitAge = 0;
+
+		synchronized (tasks) {
+			grow(Math.min(Math.max(PROCESSORS, this.min), this.max));
+		}
+
+		this.monitor = new Thread(this::monitor, "WorkQueueMonitor");
+		this.monitor.setDaemon(true);
+		this.monitor.start();
+	}
+
+	@Override
+	public void execute(Runnable task) {
+		synchronized (tasks) {
+			if (shutdown) {
+				throw new RejectedExecutionException("Work queue is shut down.");
+			}
+
+			synchronized (pendingLock) {
+				pending += 1;
+			}
+			tasks.addLast(task);
+			tasks.notifyAll();
+		}
+	}
+
+	@Override
+	public void finish() {
+		synchronized (pendingLock) {
+			while (pending > 0) {
+				try {
+					pendingLock.wait();
+				} catch (InterruptedException e) {
+					System.err.println("Warning: Interrupted while waiting on pending work.");
+
+					log.catching(Level.WARN, e);
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+		}
+	}
+
+	@Override
+	public void join() {
+		try {
+			finish();
+			shutdown();
+
+			List<Worker> running;
+			synchronized (tasks) {
+				running = new ArrayList<>(workers);
+			}
+
+			for (Worker worker : running) {
+				worker.join();
+			}
+			monitor.join();
+		} catch (InterruptedException e) {
+			System.err.println("Warning: Work queue interrupted while joining.");
+			log.catching(Level.WARN, e);
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	@Override
+	public void shutdown() {
+		shutdown = true;
+		monitor.interrupt();
+
+		synchronized (tasks) {
+			tasks.notifyAll();
+		}
+	}
+
+	/**
+	 * Returns the number of worker threads currently running, which changes over
+	 * time.
+	 *
+	 * @return number of worker threads
+	 */
+	@Override
+	public int size() {
+		synchronized (tasks) {
+			return workers.size() - retiring;
+		}
+	}
+
+	/**
+	 * Adjusts the number of workers every interval until the queue is shut down.
+	 */
+	private void monitor() {
+		try {
+			while (!shutdown) {
+				Thread.sleep(interval);
+				adjust();
+			}
+		} catch (InterruptedException e) {
+			// interrupted by shutdown, so nothing to do
+		}
+	}
+
+	/**
+	 * Measures the last interval and adds or retires workers based on it.
+	 */
+	private void adjust() {
+		long done = completed.sumThenReset();
+
+		long nanos = TimeUnit.MILLISECONDS.toNanos(interval);
+		double rate = done * 1000.0 / interval;
+
+		synchronized (tasks) {
+			// the times of the workers are read here rather than added up after every
+			// task, so tasks still running count too, and reading the processor time
+			// (which can cost as much as a system call) is not done for every task
+			long running = 0;
+			long processing = 0;
+
+			for (Worker worker : workers) {
+				long time = worker.running();
+				running += time - worker.lastRunning;
+				worker.lastRunning = time;
+
+				long cpu = measured ? THREADS.getThreadCpuTime(worker.threadId()) : -1;
+				if (cpu >= 0) {
+					processing += cpu - worker.lastCpu;
+					worker.lastCpu = cpu;
+				}
+			}
+
+			// without processor times, tasks are assumed to keep a processor busy
+			double blocked = measured && running > 0 ? Math.max(0, 1 - (double) processing / running) : 0;
+			boolean saturated = measured && processing >= SATURATED * PROCESSORS * nanos;
+
+			// throughputs can only be compared while running the same kind of tasks
+			double cost = done > 0 ? (double) processing / done : lastCost;
+			boolean comparable = similar(cost, lastCost);
+
+			int current = workers.size() - retiring;
+			int depth = tasks.size();
+			double idleness = Math.max(0, 1 - (double) running / (nanos * Math.max(1, current)));
+
+			boolean idling = depth == 0 && idleness > 0.5;
+
+			// the limits only apply for a while, and to the same kind of tasks
+			if ((ceiling < max || floor > min) && (--limitAge <= 0 || idling || !similar(cost, limitCost))) {
+				log.debug("Lifting the limits of {} to {} workers, tasks now take {} us of processor time", floor, ceiling,
+						Math.round(cost / 1000));
+				ceiling = max;
+				floor = min;
+			}
+
+			int target = bound((int) Math.round(PROCESSORS / Math.max(0.01, 1 - blocked)));
+			boolean testing = false;
+
+			if (saturated && current > PROCESSORS && target >= current && depth > 0) {
+				// time spent waiting for a processor looks like time blocked, so with every
+				// processor busy, extra workers are retired a few at a time to test whether
+				// they are needed
+				target = bound(current - Math.max(1, (current - PROCESSORS) / 2));
+				testing = target < current;
+			}
+
+			int change = lastChange;
+			lastChange = 0;
+
+			if (comparable && change > 0 && depth > 0 && rate <= lastRate) {
+				// the last workers added made no difference, so stop growing for now
+				ceiling = Math.max(min, current - change);
+				limitCost = cost;
+				limitAge = LIMIT_ADJUSTMENTS;
+				log.debug("Retiring {} of {} workers, adding them did not raise {} tasks/s", current - ceiling, current,
+						Math.round(lastRate));
+				retire(current - ceiling);
+			} else if (comparable && change < 0 && depth > 0 && rate < lastRate * SATURATED) {
+				// the last workers retired were needed, so stop shrinking for now
+				floor = Math.min(max, current - change);
+				limitCost = cost;
+				limitAge = LIMIT_ADJUSTMENTS;
+				log.debug("Adding back {} workers, retiring them lowered {} to {} tasks/s", -change, Math.round(lastRate),
+						Math.round(rate));
+				grow(floor - current);
+			} else if (depth > 0 && current < target) {
+				int added = Math.min(target - current, depth);
+				log.debug("Growing from {} to {} workers: {} tasks waiting, {}% of task time blocked, {} tasks/s",
+						current, current + added, depth, percent(blocked), Math.round(rate));
+				grow(added);
+				lastChange = added;
+			} else if (current > target || (idling && current > min)) {
+				int retired = Math.min(Math.max(1, current - target), current - min);
+				log.debug("Shrinking from {} to {} workers: {}% idle, {}% of task time blocked, {} tasks/s", current,
+						current - retired, percent(idleness), percent(blocked), Math.round(rate));
+				retire(retired);
+				lastChange = testing ? -retired : 0;
+			}
+
+			lastRate = rate;
+			lastCost = cost;
+		}
+	}
+
+	/**
+	 * Keeps a number of workers within the bounds, and within the ceiling and
+	 * floor found by measuring the throughput.
+	 *
+	 * @param count the number of workers
+	 * @return the number of workers within the bounds
+	 */
+	private int bound(int count) {
+		return Math.max(Math.max(min, floor), Math.min(Math.min(max, ceiling), count));
+	}
+
+	/**
+	 * Checks whether two average processor times per task are close enough to
+	 * come from the same kind of tasks. Times below a few microseconds, which
+	 * tasks waiting on I/O all have, count as the same.
+	 *
+	 * @param cost  the first processor time, in nanoseconds
+	 * @param other the second processor time, in nanoseconds
+	 * @return true if the times are within a factor of 2 of each other
+	 */
+	private static boolean similar(double cost, double other) {
+		double larger = Math.max(cost, other) + TimeUnit.MICROSECONDS.toNanos(10);
+		double smaller = Math.min(cost, other) + TimeUnit.MICROSECONDS.toNanos(10);
+		return larger < 2 * smaller;
+	}
+
+	/**
+	 * Starts new workers. Must be called while holding the lock of
+	 * {@link #tasks}.
+	 *
+	 * @param count the number of workers to add
+	 */
+	private void grow(int count) {
+		// workers about to exit are kept instead of replaced
+		int kept = Math.min(count, retiring);
+		retiring -= kept;
+
+		for (int i = kept; i < count; i++) {
+			Worker worker = new Worker();
+			workers.add(worker);
+			worker.start();
+		}
+	}
+
+	/**
+	 * Asks workers to exit once they finish their current task. Must be called
+	 * while holding the lock of {@link #tasks}.
+	 *
+	 * @param count the number of workers to retire
+	 */
+	private void retire(int count) {
+		retiring += count;
+		tasks.notifyAll();
+	}
+
+	/**
+	 * Formats a fraction as a whole percentage.
+	 *
+	 * @param fraction the fraction between 0 and 1
+	 * @return the percentage
+	 */
+	private static long percent(double fraction) {
+		return Math.round(Math.min(1, fraction) * 100);
+	}
+
+	/**
+	 * Waits until work (or a task) is available in the work queue, and runs it,
+	 * timing how long it takes. Exits once asked to retire or a shutdown is
+	 * detected.
+	 */
+	private class Worker extends Thread {
+		/**
+		 * The time this worker spent running finished tasks, in nanoseconds
+		 */
+		private volatile long finished;
+
+		/**
+		 * When this worker started running its current task, or 0 while it waits for
+		 * one
+		 */
+		private volatile long started;
+
+		/**
+		 * The time this worker spent running tasks at the last adjustment, in
+		 * nanoseconds
+		 */
+		private long lastRunning;
+
+		/**
+		 * The processor time of this worker at the last adjustment, in nanoseconds
+		 */
+		private long lastCpu;
+
+		/**
+		 * Initializes a worker thread with a custom name.
+		 */
+		public Worker() {
+			this.finished = 0;
+			this.started = 0;
+			this.lastRunning = 0;
+			this.lastCpu = 0;
+			setName("Worker" + getName());
+		}
+
+		/**
+		 * Returns the time this worker spent running tasks, including the task it is
+		 * running now. Read from another thread, this may miss the time of a task
+		 * that just finished, which is then counted the next time.
+		 *
+		 * @return the time spent running tasks, in nanoseconds
+		 */
+		private long running() {
+			long time = finished;
+			long since = started;
+			return since == 0 ? time : time + System.nanoTime() - since;
+		}
+
+		@Override
+		public void run() {
+			Runnable task = null;
+
+			try {
+				while (true) {
+					synchronized (tasks) {
+						while (tasks.isEmpty() && !shutdown && retiring == 0) {
+							tasks.wait();
+						}
+
+						if (shutdown) {
+							break;
+						}
+
+						if (retiring > 0) {
+							retiring--;
+							workers.remove(this);
+							log.debug("{} retired, {} workers left", getName(), workers.size() - retiring);
+							return;
+						}
+
+						task = tasks.removeFirst();
+					}
+
+					long start = System.nanoTime();
+					started = start;
+
+					try {
+						task.run();
+					} catch (RuntimeException e) {
+						// catch runtime exceptions to avoid leaking threads
+						System.err.printf("Error: %s encountered an exception while running.%n", this.getName());
+						log.catching(Level.ERROR, e);
+					}
+
+					started = 0;
+					finished += System.nanoTime() - start;
+					completed.increment();
+
+					synchronized (pendingLock) {
+						pending -= 1;
+						if (pending == 0) {
+							pendingLock.notifyAll();
+						}
+					}
+				}
+			} catch (InterruptedException e) {
+				// causes early termination of worker threads
+				System.err.printf("Warning: %s interrupted while waiting.%n", this.getName());
+				log.catching(Level.WARN, e);
+				Thread.currentThread().interrupt();
+			}
+
+			synchronized (tasks) {
+				workers.remove(this);
+			}
+		}
+	}
+}
@@ -0,0 +1,100 @@
+package edu.usfca.cs272;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Assigns each location (file path or URL) a dense integer document id, so the
+ * location string only has to be stored once no matter how many words occur
+ * in it. Ids are assigned in the order locations are first added, starting at
+ * 0.
+ *
+ * Warning: This class is not thread-safe. If multiple threads access this class
+ * concurrently, access must be synchronized externally.
+ */
+public class DocumentDictionary {
+	/**
+	 * Maps each location to its document id
+	 */
+	private final HashMap<String, Integer> ids;
+
+	/**
+	 * Stores the location of each document id
+	 */
+	private final ArrayList<String> locations;
+
+	/**
+	 * Creates an empty document dictionary
+	 */
+	public DocumentDictionary() {
+		this.ids = new HashMap<>();
+		this.locations = new ArrayList<>();
+	}
+
+	/**
+	 * Returns the id of a location, assigning the next available id if the
+	 * location has not been seen before.
+	 *
+	 * @param location - the location to look up or add
+	 * @return the document id of the location
+	 */
+	public int add(String location) {
+		Integer id = ids.get(location);
+
+		if (id == null) {
+			id = locations.size();
+			ids.put(location, id);
+			locations.add(location);
+		}
+
+		return id;
+	}
+
+	/**
+	 * Returns the id of a location without adding it.
+	 *
+	 * @param location - the location to look up
+	 * @return the document id of the location, or -1 if it is not known
+	 */
+	public int get(String location) {
+		Integer id = ids.get(location);
+		return id == null ? -1 : id;
+	}
+
+	/**
+	 * Forgets the id of a location, so the location is assigned a new id if it is
+	 * added again. The old id keeps its location, but is never reused.
+	 *
+	 * @param location - the location to remove
+	 * @return the id the location had, or -1 if it is not known
+	 */
+	public int remove(String location) {
+		Integer id = ids.remove(location);
+		return id == null ? -1 : id;
+	}
+
+	/**
+	 * Returns the location a document id was assigned to.
+	 *
+	 * @param id - the document id
+	 * @return the location of the document
+	 * @throws IndexOutOfBoundsException if the id has not been assigned
+	 */
+	public String location(int id) {
+		return locations.get(id);
+	}
+
+	/**
+	 * Returns the number of document ids assigned so far.
+	 *
+	 * @return the number of documents
+	 */
+	public int size() {
+		return locations.size();
+	}
+
+	@Override
+	public String toString() {
+		return locations.toString();
+	}
+}
@@ -0,0 +1,91 @@
+package edu.usfca.cs272;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Collects the stems of a single document, in order, grouped by stem. Used to
+ * build up everything a document adds to an inverted index without touching
+ * the index, so the whole document can then be added with a single call to
+ * {@link InvertedIndex#insertDocument(String, DocumentPostings)}.
+ *
+ * The position lists are handed over to the index when the document is
+ * inserted, so a document should not be modified or inserted again afterwards.
+ */
+public class DocumentPostings {
+	/**
+	 * The positions of each stem in the document
+	 */
+	private final HashMap<String, PostingList> postings;
+
+	/**
+	 * The number of stems added so far, which is also the last position used
+	 */
+	private int count;
+
+	/**
+	 * Creates an empty document
+	 */
+	public DocumentPostings() {
+		this.postings = new HashMap<>();
+		this.count = 0;
+	}
+
+	/**
+	 * Adds the next stem of the document at the next position, starting at 1.
+	 *
+	 * @param stem - the stem to add
+	 */
+	public void add(String stem) {
+		int position = ++count;
+		var positions = postings.get(stem);
+
+		if (positions == null) {
+			positions = new PostingList();
+			postings.put(stem, positions);
+		}
+
+		positions.insert(position);
+	}
+
+	/**
+	 * Adds the stems of the next part of the document, collected separately (for
+	 * example by another thread), after the stems added so far. Their positions
+	 * are shifted by the number of stems added so far.
+	 *
+	 * @param next - the stems of the part of the document that follows
+	 */
+	public void addAll(DocumentPostings next) {
+		for (var entry : next.postings.entrySet()) {
+			var positions = postings.get(entry.getKey());
+
+			if (positions == null) {
+				positions = new PostingList();
+				postings.put(entry.getKey(), positions);
+			}
+
+			positions.appendAll(entry.getValue(), count);
+		}
+
+		count += next.count;
+	}
+
+	/**
+	 * Returns the number of stems added, which is the word count of the document.
+	 *
+	 * @return the number of stems added
+	 */
+	public int size() {
+		return count;
+	}
+
+	/**
+	 * Returns the positions of each stem in the document.
+	 *
+	 * @return an unmodifiable view of the positions of each stem
+	 */
+	public Map<String, PostingList> postings() {
+		return Collections.unmodifiableMap(postings);
+	}
+}
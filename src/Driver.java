@@ -2,10 +2,16 @@
 package edu.usfca.cs272;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.MalformedURLException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 
 /**
  * Class responsible for running this project based on the provided command-line
@@ -16,6 +22,8 @@ import java.time.Instant;
  * @version Fall 2023
  */
 public class Driver {
+	/** Logger used for this class. */
+	private static final Logger log = LogManager.getLogger();
 
 	/**
 	 * Initializes the classes necessary based on the provided command-line
@@ -32,36 +40,126 @@ public class Driver {
 
 		InvertedIndex index;
 
-		SearchProcessorInterface processor;
-
 		ThreadedInvertedIndex threadedIndex = null;
 
 		WorkQueue queue = null;
 
-		if (parser.hasFlag("-threads") || parser.hasFlag("-html")) {
+		if (parser.hasFlag("-threads") || parser.hasFlag("-html") || parser.hasFlag("-budget")
+				|| parser.hasFlag("-watch")) {
 			int numThreads = parser.getInteger("-threads", 5);
 
 			if (numThreads < 1) {
 				numThreads = 5;
 			}
 
-			threadedIndex = new ThreadedInvertedIndex();
-			queue = new WorkQueue(numThreads);
-			processor = new ThreadedSearchProcessor(threadedIndex, parser.hasFlag("-partial"), queue);
+			if (parser.hasFlag("-shards")) {
+				int numShards = parser.getInteger("-shards", numThreads);
+				threadedIndex = new ShardedInvertedIndex(numShards < 1 ? numThreads : numShards);
+			} else if (parser.hasFlag("-publish")) {
+				threadedIndex = new VersionedInvertedIndex(Math.max(0, parser.getInteger("-publish", 0)));
+			} else if (parser.hasFlag("-budget")) {
+				// the memory budget is given in megabytes
+				int budget = parser.getInteger("-budget", 256);
+				threadedIndex = new SpillingInvertedIndex((budget < 1 ? 256 : budget) * 1024L * 1024L);
+			} else if (parser.hasFlag("-segments")) {
+				int flushSize = parser.getInteger("-segments", SegmentedInvertedIndex.DEFAULT_FLUSH_SIZE);
+				threadedIndex = new SegmentedInvertedIndex(flushSize < 1 ? SegmentedInvertedIndex.DEFAULT_FLUSH_SIZE : flushSize,
+						SegmentedInvertedIndex.DEFAULT_MERGE_FACTOR);
+			} else {
+				threadedIndex = new ThreadedInvertedIndex();
+			}
+
+			// bound the number of tasks waiting to run, if requested
+			int capacity = Integer.MAX_VALUE;
+			if (parser.hasFlag("-capacity")) {
+				capacity = parser.getInteger("-capacity", numThreads * 16);
+				capacity = capacity < 1 ? numThreads * 16 : capacity;
+			}
+
+			WorkQueue.Overflow overflow = switch (parser.getString("-overflow", "block")) {
+				case "caller" -> WorkQueue.Overflow.CALLER_RUNS;
+				case "reject" -> WorkQueue.Overflow.REJECT;
+				default -> WorkQueue.Overflow.BLOCK;
+			};
+
+			if (parser.hasFlag("-virtual")) {
+				// fetch every page on a virtual thread, and stem on the platform threads
+				queue = new VirtualWorkQueue(numThreads, capacity, overflow);
+			} else if (parser.hasFlag("-adaptive")) {
+				// adjust the number of workers between -threads (if given) and the maximum
+				int minThreads = parser.hasFlag("-threads") ? numThreads : 1;
+				int maxThreads = parser.getInteger("-adaptive", 64);
+				queue = new AdaptiveWorkQueue(minThreads, maxThreads < 1 ? 64 : maxThreads);
+			} else if (parser.hasFlag("-steal")) {
+				// workers with their own queues stealing from each other
+				queue = new StealingWorkQueue(numThreads);
+			} else {
+				queue = new WorkQueue(numThreads, capacity, overflow);
+			}
 
 			index = threadedIndex;
 
 		} else {
 			index = new InvertedIndex();
-			processor = new SearchProcessor(index, parser.hasFlag("-partial"));
 
 		}
 
-		if (parser.hasFlag("-text")) {
+		// a saved binary index is searched as is instead of building a new one
+		boolean load = parser.hasFlag("-load");
+
+		// keep the index up to date with the text files after it is built, unless it
+		// can no longer be modified once built
+		boolean watch = !load && parser.hasFlag("-watch") && parser.getPath("-text") != null
+				&& !(threadedIndex instanceof SpillingInvertedIndex);
+
+		// the watcher starts before the index is built, so changes made while it is
+		// built, searched, and saved are applied once watching begins
+		IndexWatcher watcher = null;
+		if (watch) {
+			try {
+				watcher = new IndexWatcher(parser.getPath("-text"), threadedIndex, queue, parser.getInteger("-watch", 500));
+			} catch (IOException e) {
+				System.out.println("Error while watching " + parser.getPath("-text"));
+				watch = false;
+			}
+		}
+
+		// an incremental build updates the saved index with the files that changed
+		// since it was saved, using the manifest stored next to it
+		IndexManifest manifest = null;
+		Path manifestPath = null;
+
+		if (!load && parser.hasFlag("-incremental") && parser.hasFlag("-save")) {
+			Path savePath = parser.getPath("-save", Path.of("index.bin"));
+			manifestPath = parser.getPath("-incremental", IndexManifest.pathFor(savePath));
+			manifest = new IndexManifest();
+
+			if (Files.exists(savePath) && Files.exists(manifestPath)) {
+				try {
+					IndexManifest previous = IndexManifest.read(manifestPath);
+					MappedInvertedIndex saved = MappedInvertedIndex.open(savePath);
+					if (threadedIndex instanceof SpillingInvertedIndex spilling) {
+						// the saved index may not fit in memory either, so it stays on disk
+						spilling.addRun(saved);
+					} else {
+						saved.thaw(index);
+					}
+					manifest = previous;
+				} catch (IOException e) {
+					System.out.println("Error reading index from " + savePath + ", rebuilding it");
+				}
+			}
+		}
+
+		if (!load && parser.hasFlag("-text")) {
 			Path textPath = parser.getPath("-text");
 			try {
 				if (textPath != null) {
-					if (threadedIndex != null && queue != null) {
+					if (manifest != null && threadedIndex != null && queue != null) {
+						ThreadedInvertedIndexProcessor.update(textPath, threadedIndex, queue, manifest);
+					} else if (manifest != null) {
+						InvertedIndexProcessor.update(textPath, index, manifest);
+					} else if (threadedIndex != null && queue != null) {
 						ThreadedInvertedIndexProcessor.process(textPath, threadedIndex, queue);
 					} else {
 						InvertedIndexProcessor.process(textPath, index);
@@ -71,10 +169,14 @@ public class Driver {
 				}
 			} catch (IOException e) {
 				System.out.println("Error while processing input file");
+				manifest = null;
+			} catch (RejectedExecutionException e) {
+				System.out.println("Error: too many files waiting to be indexed");
+				manifest = null;
 			}
 		}
 
-		if (parser.hasFlag("-html")) {
+		if (!load && parser.hasFlag("-html")) {
 			String seedUrl = parser.getString("-html");
 
 			if (seedUrl != null) {
@@ -90,6 +192,162 @@ public class Driver {
 			}
 		}
 
+		// the index searched and written from here on
+		ReadOnlyInvertedIndex built = index;
+
+		if (load) {
+			Path loadPath = parser.getPath("-load", Path.of("index.bin"));
+			try {
+				built = MappedInvertedIndex.open(loadPath);
+			} catch (IOException e) {
+				System.out.println("Error reading index from " + loadPath);
+			}
+		} else if (threadedIndex instanceof SpillingInvertedIndex spilling) {
+			// the index may not fit in memory, so merge the spilled runs into a file
+			try {
+				if (parser.hasFlag("-save")) {
+					built = spilling.finish(parser.getPath("-save", Path.of("index.bin")));
+				} else {
+					built = spilling.finish();
+				}
+			} catch (IOException | UncheckedIOException e) {
+				System.out.println("Error writing index runs");
+				built = new InvertedIndex();
+				manifest = null;
+			}
+		} else if (!watch) {
+			// the index is only read from here on, so compact it into a lock-free
+			// snapshot and let the mutable index be garbage collected
+			built = index.freeze();
+		} else if (index instanceof VersionedInvertedIndex versioned) {
+			// the watched index keeps changing, but the first outputs must include
+			// everything built so far
+			versioned.publish();
+		}
+		index = null;
+
+		// stop merging segments in the background once the index is built
+		if (!watch) {
+			if (threadedIndex instanceof SegmentedInvertedIndex segmented) {
+				segmented.shutdown();
+			}
+			threadedIndex = null;
+		}
+
+		log.debug("Stem cache: {}", StemCache.ENGLISH);
+
+		output(parser, built, queue);
+
+		// If a savePath is provided, write the index in binary for -load
+		if (parser.hasFlag("-save")) {
+			Path savePath = parser.getPath("-save", Path.of("index.bin"));
+			try {
+				built.writeBinary(savePath);
+			} catch (IOException e) {
+				System.out.println("Error writing to " + savePath);
+				manifest = null;
+			}
+		}
+
+		// the manifest must match the saved index, so if anything went wrong it is
+		// removed and the next incremental build starts over
+		if (manifestPath != null) {
+			try {
+				if (manifest != null) {
+					manifest.write(manifestPath);
+				} else {
+					Files.deleteIfExists(manifestPath);
+				}
+			} catch (IOException e) {
+				System.out.println("Error writing to " + manifestPath);
+			}
+		}
+
+		if (watcher != null) {
+			Path textPath = parser.getPath("-text");
+			InvertedIndex live = threadedIndex;
+			WorkQueue workers = queue;
+			IndexWatcher watching = watcher;
+
+			// stop watching when the program is interrupted
+			Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+				try {
+					watching.close();
+				} catch (IOException e) {
+					System.out.println("Error while watching " + textPath);
+				}
+			}));
+
+			// searches and outputs are redone after every batch of changes
+			watching.watch(() -> {
+				if (live instanceof VersionedInvertedIndex versioned) {
+					versioned.publish();
+				}
+				output(parser, live, workers);
+			});
+
+			if (threadedIndex instanceof SegmentedInvertedIndex segmented) {
+				segmented.shutdown();
+			}
+		}
+
+		if (queue != null) {
+			queue.shutdown();
+		}
+
+		// Calculate time elapsed and output it
+		long elapsed = Duration.between(start, Instant.now()).toMillis();
+		double seconds = (double) elapsed / Duration.ofSeconds(1).toMillis();
+		System.out.printf("Elapsed: %f seconds%n", seconds);
+	}
+
+	/**
+	 * Searches the index for the queries and writes the requested outputs.
+	 *
+	 * @param parser - the command-line arguments
+	 * @param index  - the index to search and write
+	 * @param queue  - the work queue to search with, or null to search on the
+	 *               calling thread
+	 */
+	private static void output(ArgumentParser parser, ReadOnlyInvertedIndex index, WorkQueue queue) {
+		SearchProcessorInterface processor;
+
+		// only keep the best results of each query if a limit is given
+		int limit = Math.max(0, parser.getInteger("-limit", 0));
+
+		if (queue != null) {
+			processor = new ThreadedSearchProcessor(index, parser.hasFlag("-partial"), limit, queue);
+		} else {
+			processor = new SearchProcessor(index, parser.hasFlag("-partial"), limit);
+		}
+
+		// the counts and index are written while the queries are searched
+		WorkQueue.TaskGroup writes = queue != null ? queue.group("output") : null;
+
+		// If a countPath is provided, write the word counts to a JSON file
+		if (parser.hasFlag("-counts")) {
+			Path countPath = parser.getPath("-counts", Path.of("counts.json"));
+			start(writes, () -> {
+				try {
+					JsonWriter.writeObject(index.getWordCounts(), countPath);
+				} catch (IOException e) {
+					System.out.println("Error writing to " + countPath);
+				}
+			});
+		}
+
+		// If a indexPath is provided, write the word index to a JSON file
+		if (parser.hasFlag("-index")) {
+			Path indexPath = parser.getPath("-index", Path.of("index.json"));
+			start(writes, () -> {
+				try {
+					index.writeJson(indexPath);
+				} catch (IOException e) {
+					System.out.println("Error writing to " + indexPath);
+				}
+			});
+		}
+
 		// if the query flag is found
 		if (parser.hasFlag("-query"))
 
@@ -106,33 +364,15 @@ public class Driver {
 					processor.processQueryFile(queryPath);
 				} catch (IOException e) {
 					System.out.println("Error writing to " + queryPath);
+				} catch (RejectedExecutionException e) {
+					System.out.println("Error: too many queries waiting to be searched");
 				}
 			}
 
 		}
 
-		if (queue != null) {
-			queue.shutdown();
-		}
-
-		// If a countPath is provided, write the word counts to a JSON file
-		if (parser.hasFlag("-counts")) {
-			Path countPath = parser.getPath("-counts", Path.of("counts.json"));
-			try {
-				JsonWriter.writeObject(index.getWordCounts(), countPath);
-			} catch (IOException e) {
-				System.out.println("Error writing to " + countPath);
-			}
-		}
-
-		// If a indexPath is provided, write the word index to a JSON file
-		if (parser.hasFlag("-index")) {
-			Path indexPath = parser.getPath("-index", Path.of("index.json"));
-			try {
-				index.writeJson(indexPath);
-			} catch (IOException e) {
-				System.out.println("Error writing to " + indexPath);
-			}
+		if (writes != null) {
+			writes.finish();
 		}
 
 		if (parser.hasFlag("-results")) {
@@ -143,10 +383,24 @@ public class Driver {
 				System.out.println("Error writing to " + resultsPath);
 			}
 		}
+	}
 
-		// Calculate time elapsed and output it
-		long elapsed = Duration.between(start, Instant.now()).toMillis();
-		double seconds = (double) elapsed / Duration.ofSeconds(1).toMillis();
-		System.out.printf("Elapsed: %f seconds%n", seconds);
+	/**
+	 * Runs a task as part of a group of tasks, or on the calling thread if there is
+	 * no group or the work queue rejects the task.
+	 *
+	 * @param group - the group to run the task in, or null
+	 * @param task  - the task to run
+	 */
+	private static void start(WorkQueue.TaskGroup group, Runnable task) {
+		if (group != null) {
+			try {
+				group.execute(task);
+				return;
+			} catch (RejectedExecutionException e) {
+				log.debug("Running {} on the calling thread", group.getName());
+			}
+		}
+		task.run();
 	}
 }
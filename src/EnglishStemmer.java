@@ -0,0 +1,592 @@
+package edu.usfca.cs272;
+
+import opennlp.tools.stemmer.Stemmer;
+import opennlp.tools.stemmer.snowball.SnowballStemmer;
+
+/**
+ * Stems English words with the Snowball English (Porter2) algorithm, giving the
+ * same stems as {@link SnowballStemmer} with
+ * {@link SnowballStemmer.ALGORITHM#ENGLISH}. Unlike that stemmer, which copies
+ * every word into a new program state and then into a new string, words are
+ * stemmed in place in a character array, so stemming allocates nothing.
+ *
+ * The steps below follow the published algorithm closely, including its
+ * special cases, so they can be compared with it directly.
+ *
+ * A stemmer is not thread safe, so each thread needs its own.
+ *
+ * @see <a href="https://snowballstem.org/algorithms/english/stemmer.html">The
+ *      English (Porter2) stemming algorithm</a>
+ */
+public class EnglishStemmer implements Stemmer {
+	/**
+	 * Words that are stemmed differently than the rules say (or not at all), and
+	 * their stems
+	 */
+	private static final String[][] EXCEPTIONS = {
+			{ "skis", "ski" }, { "skies", "sky" }, { "dying", "die" }, { "lying", "lie" }, { "tying", "tie" },
+			{ "idly", "idl" }, { "gently", "gentl" }, { "ugly", "ugli" }, { "early", "earli" }, { "only", "onli" },
+			{ "singly", "singl" }, { "sky", "sky" }, { "news", "news" }, { "howe", "howe" }, { "atlas", "atlas" },
+			{ "cosmos", "cosmos" }, { "bias", "bias" }, { "andes", "andes" } };
+
+	/**
+	 * Words that are left alone after step 1a
+	 */
+	private static final String[] INVARIANTS = { "inning", "outing", "canning", "herring", "earring", "proceed",
+			"exceed", "succeed" };
+
+	/**
+	 * Prefixes after which the first region starts, instead of after the first
+	 * consonant following a vowel
+	 */
+	private static final String[] PREFIXES = { "gener", "commun", "arsen" };
+
+	/**
+	 * The suffixes of step 1b, longest first, since only the longest suffix of a
+	 * word is removed
+	 */
+	private static final String[] STEP_1B = { "eedly", "ingly", "edly", "eed", "ing", "ed" };
+
+	/**
+	 * The suffixes of step 2, longest first
+	 */
+	private static final String[] STEP_2 = { "ization", "ational", "fulness", "ousness", "iveness", "tional", "biliti",
+			"lessli", "entli", "ation", "alism", "aliti", "ousli", "iviti", "fulli", "enci", "anci", "abli", "izer",
+			"ator", "alli", "bli", "ogi", "li" };
+
+	/**
+	 * The replacements of the suffixes of step 2, or null if a suffix needs more
+	 * checks
+	 */
+	private static final String[] STEP_2_REPLACEMENTS = { "ize", "ate", "ful", "ous", "ive", "tion", "ble", "less",
+			"ent", "ate", "al", "al", "ous", "ive", "ful", "ence", "ance", "able", "ize", "ate", "al", "ble", null, null };
+
+	/**
+	 * The suffixes of step 3, longest first
+	 */
+	private static final String[] STEP_3 = { "ational", "tional", "alize", "icate", "iciti", "ative", "ical", "ness",
+			"ful" };
+
+	/**
+	 * The replacements of the suffixes of step 3, or null if a suffix needs more
+	 * checks
+	 */
+	private static final String[] STEP_3_REPLACEMENTS = { "ate", "tion", "al", "ic", "ic", null, "ic", "", "" };
+
+	/**
+	 * The suffixes removed by step 4, longest first
+	 */
+	private static final String[] STEP_4 = { "ement", "ance", "ence", "able", "ible", "ment", "ant", "ent", "ism",
+			"ate", "iti", "ous", "ive", "ize", "ion", "al", "er", "ic" };
+
+	/**
+	 * The word being stemmed
+	 */
+	private char[] word;
+
+	/**
+	 * The current length of the word being stemmed
+	 */
+	private int length;
+
+	/**
+	 * Where the first region (R1) of the word starts
+	 */
+	private int p1;
+
+	/**
+	 * Where the second region (R2) of the word starts
+	 */
+	private int p2;
+
+	/**
+	 * Whether a 'y' was marked as a consonant by changing it to 'Y'
+	 */
+	private boolean foundY;
+
+	/**
+	 * Holds the characters of words passed as a {@link CharSequence}
+	 */
+	private char[] buffer;
+
+	/**
+	 * Creates a new stemmer.
+	 */
+	public EnglishStemmer() {
+		this.buffer = new char[32];
+	}
+
+	/**
+	 * Stems a word.
+	 *
+	 * @param word - the lower-case word to stem
+	 * @return the stem of the word
+	 */
+	@Override
+	public String stem(CharSequence word) {
+		int size = word.length();
+		if (size > buffer.length) {
+			buffer = new char[Math.max(size, buffer.length * 2)];
+		}
+
+		for (int i = 0; i < size; i++) {
+			buffer[i] = word.charAt(i);
+		}
+
+		return new String(buffer, 0, stem(buffer, size));
+	}
+
+	/**
+	 * Stems a word in place. A stem is never longer than its word, so the stem
+	 * replaces the start of the word in the array.
+	 *
+	 * @param word   - the array holding the lower-case word
+	 * @param length - the length of the word, which starts at index 0
+	 * @return the length of the stem
+	 */
+	public int stem(char[] word, int length) {
+		this.word = word;
+		this.length = length;
+
+		// exceptions are whole words, and words of one or two letters are left alone
+		if (!exception() && length >= 3) {
+			prelude();
+			markRegions();
+
+			step1a();
+			if (!invariant()) {
+				step1b();
+				step1c();
+				step2();
+				step3();
+				step4();
+				step5();
+			}
+
+			postlude();
+		}
+
+		this.word = null;
+		return this.length;
+	}
+
+	/**
+	 * Replaces words with special stems.
+	 *
+	 * @return true if the word was an exception
+	 */
+	private boolean exception() {
+		for (String[] exception : EXCEPTIONS) {
+			if (is(exception[0])) {
+				replace(0, exception[1]);
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Checks whether the word is left alone after step 1a.
+	 *
+	 * @return true if the word is invariant
+	 */
+	private boolean invariant() {
+		for (String invariant : INVARIANTS) {
+			if (is(invariant)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Removes an initial apostrophe, and marks every 'y' that acts as a
+	 * consonant by changing it to 'Y'.
+	 */
+	private void prelude() {
+		foundY = false;
+
+		if (length > 0 && word[0] == '\'') {
+			System.arraycopy(word, 1, word, 0, --length);
+		}
+
+		if (length > 0 && word[0] == 'y') {
+			word[0] = 'Y';
+			foundY = true;
+		}
+
+		for (int i = 1; i < length; i++) {
+			if (word[i] == 'y' && isVowel(word[i - 1])) {
+				word[i] = 'Y';
+				foundY = true;
+			}
+		}
+	}
+
+	/**
+	 * Finds where the regions R1 and R2 start. Each region starts after the first
+	 * consonant that follows a vowel in the region before it, or is empty.
+	 */
+	private void markRegions() {
+		p1 = length;
+		p2 = length;
+
+		int start = -1;
+		for (String prefix : PREFIXES) {
+			if (length >= prefix.length() && matches(0, prefix)) {
+				start = prefix.length();
+				break;
+			}
+		}
+
+		if (start < 0) {
+			start = afterVowelConsonant(0);
+			if (start < 0) {
+				return;
+			}
+		}
+		p1 = start;
+
+		start = afterVowelConsonant(start);
+		if (start >= 0) {
+			p2 = start;
+		}
+	}
+
+	/**
+	 * Finds the position after the first consonant following a vowel.
+	 *
+	 * @param start - where to start looking
+	 * @return the position after the consonant, or -1 if there is none
+	 */
+	private int afterVowelConsonant(int start) {
+		int i = start;
+		while (i < length && !isVowel(word[i])) {
+			i++;
+		}
+		i++;
+		while (i < length && isVowel(word[i])) {
+			i++;
+		}
+		return i < length ? i + 1 : -1;
+	}
+
+	/**
+	 * Step 1a: removes possessives and plural endings.
+	 */
+	private void step1a() {
+		if (endsWith("'s'")) {
+			length -= 3;
+		} else if (endsWith("'s")) {
+			length -= 2;
+		} else if (endsWith("'")) {
+			length -= 1;
+		}
+
+		if (endsWith("sses")) {
+			length -= 2;
+		} else if (endsWith("ied") || endsWith("ies")) {
+			// "ies" becomes "i" after two or more letters, and "ie" otherwise
+			length -= length > 4 ? 2 : 1;
+		} else if (endsWith("us") || endsWith("ss")) {
+			return;
+		} else if (endsWith("s") && hasVowel(length - 2)) {
+			// only if a vowel comes before the letter preceding the 's'
+			length--;
+		}
+	}
+
+	/**
+	 * Step 1b: removes verb endings, restoring an 'e' or undoubling the last
+	 * consonant where needed.
+	 */
+	private void step1b() {
+		int index = longestSuffix(STEP_1B);
+		if (index < 0) {
+			return;
+		}
+
+		int start = length - STEP_1B[index].length();
+		if (STEP_1B[index].startsWith("ee")) {
+			if (start >= p1) {
+				replace(start, "ee");
+			}
+			return;
+		}
+
+		if (!hasVowel(start)) {
+			return;
+		}
+		length = start;
+
+		if (endsWith("at") || endsWith("bl") || endsWith("iz")) {
+			word[length++] = 'e';
+		} else if (endsWithDouble()) {
+			length--;
+		} else if (length == p1 && isShort(length)) {
+			word[length++] = 'e';
+		}
+	}
+
+	/**
+	 * Step 1c: replaces a final 'y' after a consonant with 'i', unless the
+	 * consonant is the first letter.
+	 */
+	private void step1c() {
+		if (length > 2) {
+			char last = word[length - 1];
+			if ((last == 'y' || last == 'Y') && !isVowel(word[length - 2])) {
+				word[length - 1] = 'i';
+			}
+		}
+	}
+
+	/**
+	 * Step 2: replaces derivational suffixes in R1.
+	 */
+	private void step2() {
+		int index = longestSuffix(STEP_2);
+		if (index < 0) {
+			return;
+		}
+
+		int start = length - STEP_2[index].length();
+		if (start < p1) {
+			return;
+		}
+
+		String replacement = STEP_2_REPLACEMENTS[index];
+		if (replacement != null) {
+			replace(start, replacement);
+		} else if (STEP_2[index].equals("ogi")) {
+			if (start > 0 && word[start - 1] == 'l') {
+				replace(start, "og");
+			}
+		} else if (start > 0 && isValidLi(word[start - 1])) {
+			length = start;
+		}
+	}
+
+	/**
+	 * Step 3: replaces more derivational suffixes in R1.
+	 */
+	private void step3() {
+		int index = longestSuffix(STEP_3);
+		if (index < 0) {
+			return;
+		}
+
+		int start = length - STEP_3[index].length();
+		if (start < p1) {
+			return;
+		}
+
+		String replacement = STEP_3_REPLACEMENTS[index];
+		if (replacement != null) {
+			replace(start, replacement);
+		} else if (start >= p2) {
+			// "ative" is only removed in R2
+			length = start;
+		}
+	}
+
+	/**
+	 * Step 4: removes suffixes in R2.
+	 */
+	private void step4() {
+		int index = longestSuffix(STEP_4);
+		if (index < 0) {
+			return;
+		}
+
+		int start = length - STEP_4[index].length();
+		if (start < p2) {
+			return;
+		}
+
+		if (!STEP_4[index].equals("ion")) {
+			length = start;
+		} else if (start > 0 && (word[start - 1] == 's' || word[start - 1] == 't')) {
+			length = start;
+		}
+	}
+
+	/**
+	 * Step 5: removes a final 'e', or the last 'l' of a final "ll", in the right
+	 * regions.
+	 */
+	private void step5() {
+		if (length == 0) {
+			return;
+		}
+
+		int start = length - 1;
+		if (word[start] == 'e') {
+			if (start >= p2 || (start >= p1 && !isShort(start))) {
+				length = start;
+			}
+		} else if (word[start] == 'l') {
+			if (start >= p2 && start > 0 && word[start - 1] == 'l') {
+				length = start;
+			}
+		}
+	}
+
+	/**
+	 * Changes every 'Y' marked by the prelude back to 'y'.
+	 */
+	private void postlude() {
+		if (foundY) {
+			for (int i = 0; i < length; i++) {
+				if (word[i] == 'Y') {
+					word[i] = 'y';
+				}
+			}
+		}
+	}
+
+	/**
+	 * Checks whether the part of the word before a position ends in a short
+	 * syllable: a consonant other than 'w', 'x', or 'Y' after a vowel after a
+	 * consonant, or a vowel followed by a consonant at the start of the word.
+	 *
+	 * @param end - the end of the part of the word to check
+	 * @return true if it ends in a short syllable
+	 */
+	private boolean isShort(int end) {
+		if (end >= 3 && !isVowelWXY(word[end - 1]) && isVowel(word[end - 2]) && !isVowel(word[end - 3])) {
+			return true;
+		}
+		return end == 2 && !isVowel(word[1]) && isVowel(word[0]);
+	}
+
+	/**
+	 * Checks whether the part of the word before a position contains a vowel.
+	 *
+	 * @param end - the end of the part of the word to check
+	 * @return true if it contains a vowel
+	 */
+	private boolean hasVowel(int end) {
+		for (int i = 0; i < end; i++) {
+			if (isVowel(word[i])) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Checks whether the word ends in a double consonant that is undoubled.
+	 *
+	 * @return true if the word ends in "bb", "dd", "ff", "gg", "mm", "nn", "pp",
+	 *         "rr", or "tt"
+	 */
+	private boolean endsWithDouble() {
+		if (length < 2 || word[length - 1] != word[length - 2]) {
+			return false;
+		}
+
+		return switch (word[length - 1]) {
+			case 'b', 'd', 'f', 'g', 'm', 'n', 'p', 'r', 't' -> true;
+			default -> false;
+		};
+	}
+
+	/**
+	 * Finds the longest of several suffixes the word ends with.
+	 *
+	 * @param suffixes - the suffixes, longest first
+	 * @return the index of the longest suffix the word ends with, or -1 if none
+	 */
+	private int longestSuffix(String[] suffixes) {
+		for (int i = 0; i < suffixes.length; i++) {
+			if (endsWith(suffixes[i])) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Checks whether the word ends with a suffix.
+	 *
+	 * @param suffix - the suffix
+	 * @return true if the word ends with the suffix
+	 */
+	private boolean endsWith(String suffix) {
+		return length >= suffix.length() && matches(length - suffix.length(), suffix);
+	}
+
+	/**
+	 * Checks whether the word is exactly some text.
+	 *
+	 * @param text - the text
+	 * @return true if the word equals the text
+	 */
+	private boolean is(String text) {
+		return length == text.length() && matches(0, text);
+	}
+
+	/**
+	 * Checks whether the word contains some text at a position.
+	 *
+	 * @param start - the position in the word, which must leave room for the text
+	 * @param text  - the text
+	 * @return true if the text is found at the position
+	 */
+	private boolean matches(int start, String text) {
+		for (int i = 0; i < text.length(); i++) {
+			if (word[start + i] != text.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Replaces the end of the word.
+	 *
+	 * @param start       - where the replaced end starts
+	 * @param replacement - the new end, which is not longer than the old one
+	 */
+	private void replace(int start, String replacement) {
+		replacement.getChars(0, replacement.length(), word, start);
+		length = start + replacement.length();
+	}
+
+	/**
+	 * Checks whether a letter is a vowel.
+	 *
+	 * @param c - the letter
+	 * @return true for 'a', 'e', 'i', 'o', 'u', and 'y'
+	 */
+	private static boolean isVowel(char c) {
+		return switch (c) {
+			case 'a', 'e', 'i', 'o', 'u', 'y' -> true;
+			default -> false;
+		};
+	}
+
+	/**
+	 * Checks whether a letter is a vowel, 'w', 'x', or 'Y'.
+	 *
+	 * @param c - the letter
+	 * @return true if the letter cannot end a short syllable
+	 */
+	private static boolean isVowelWXY(char c) {
+		return isVowel(c) || c == 'w' || c == 'x' || c == 'Y';
+	}
+
+	/**
+	 * Checks whether a letter may come before a "li" suffix that is removed.
+	 *
+	 * @param c - the letter
+	 * @return true for 'c', 'd', 'e', 'g', 'h', 'k', 'm', 'n', 'r', and 't'
+	 */
+	private static boolean isValidLi(char c) {
+		return switch (c) {
+			case 'c', 'd', 'e', 'g', 'h', 'k', 'm', 'n', 'r', 't' -> true;
+			default -> false;
+		};
+	}
+}
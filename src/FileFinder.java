@@ -83,6 +83,25 @@ public class FileFinder {
 		return findText(start).toList();
 	}
 
+	/**
+	 * Returns a stream of the text files under a directory, found as the stream is
+	 * read instead of all at once.
+	 *
+	 * @param start       the directory path to start with
+	 * @param defaultPath the path to return if 'start' is not a directory
+	 * @return a stream of text files under 'start', or a stream of 'defaultPath'
+	 *         if 'start' is not a directory
+	 * @throws IOException if an IO error occurs
+	 *
+	 * @see #listText(Path, Path)
+	 */
+	public static Stream<Path> findText(Path start, Path defaultPath) throws IOException {
+		if (Files.isDirectory(start)) {
+			return findText(start);
+		}
+		return Stream.of(defaultPath);
+	}
+
 	/**
 	 * Recursively list all text files under a specified directory path.
 	 *
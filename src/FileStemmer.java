@@ -14,8 +14,6 @@ import java.util.TreeSet;
 import java.util.regex.Pattern;
 
 import opennlp.tools.stemmer.Stemmer;
-import opennlp.tools.stemmer.snowball.SnowballStemmer;
-import opennlp.tools.stemmer.snowball.SnowballStemmer.ALGORITHM;
 
 /**
  * Utility class for parsing, cleaning, and stemming text and text files into
@@ -77,19 +75,13 @@ public class FileStemmer {
 	 * @param stems   the collection to add stems
 	 *
 	 * @see #parse(String)
+	 * @see WordTokenizer#tokenize(String, java.util.function.Consumer)
 	 * @see Stemmer#stem(CharSequence)
 	 * @see Collection#add(Object)
 	 */
 	public static void addStems(String line, Stemmer stemmer, Collection<String> stems) {
-		// Cleaning & splitting the word
-		String[] words = parse(line);
-
-		// Iterate through each word and stem using a for-each loop
-		for (String word : words) {
-			String stem = stemmer.stem(word).toString();
-			// Add the stem to the collection of strings
-			stems.add(stem);
-		}
+		// Cleaning & splitting the words in one pass, then stemming each one
+		new WordTokenizer().tokenize(line, word -> stems.add(stemmer.stem(word).toString()));
 	}
 
 	/**
@@ -116,12 +108,12 @@ public class FileStemmer {
 	 * @param line the line of words to parse and stem
 	 * @return a list of cleaned and stemmed words in parsed order
 	 *
-	 * @see SnowballStemmer#SnowballStemmer(ALGORITHM)
-	 * @see ALGORITHM#ENGLISH
+	 * @see EnglishStemmer
+	 * @see StemCache#ENGLISH
 	 * @see #listStems(String, Stemmer)
 	 */
 	public static ArrayList<String> listStems(String line) {
-		SnowballStemmer stemmer = new SnowballStemmer(SnowballStemmer.ALGORITHM.ENGLISH);
+		Stemmer stemmer = StemCache.ENGLISH;
 		return listStems(line, stemmer);
 	}
 
@@ -133,13 +125,13 @@ public class FileStemmer {
 	 * @return a list of stems from file in parsed order
 	 * @throws IOException if unable to read or parse file
 	 *
-	 * @see SnowballStemmer
-	 * @see ALGORITHM#ENGLISH
+	 * @see EnglishStemmer
+	 * @see StemCache#ENGLISH
 	 * @see StandardCharsets#UTF_8
 	 * @see #listStems(String, Stemmer)
 	 */
 	public static ArrayList<String> listStems(Path input) throws IOException {
-		SnowballStemmer stemmer = new SnowballStemmer(SnowballStemmer.ALGORITHM.ENGLISH);
+		Stemmer stemmer = StemCache.ENGLISH;
 		ArrayList<String> words = new ArrayList<>();
 
 		try (BufferedReader reader = Files.newBufferedReader(input, UTF_8)) {
@@ -176,12 +168,12 @@ public class FileStemmer {
 	 * @param line the line of words to parse and stem
 	 * @return a sorted set of unique cleaned and stemmed words
 	 *
-	 * @see SnowballStemmer#SnowballStemmer(ALGORITHM)
-	 * @see ALGORITHM#ENGLISH
+	 * @see EnglishStemmer
+	 * @see StemCache#ENGLISH
 	 * @see #uniqueStems(String, Stemmer)
 	 */
 	public static TreeSet<String> uniqueStems(String line) {
-		SnowballStemmer stemmer = new SnowballStemmer(SnowballStemmer.ALGORITHM.ENGLISH);
+		Stemmer stemmer = StemCache.ENGLISH;
 		return uniqueStems(line, stemmer);
 	}
 
@@ -193,13 +185,13 @@ public class FileStemmer {
 	 * @return a sorted set of unique cleaned and stemmed words from file
 	 * @throws IOException if unable to read or parse file
 	 *
-	 * @see SnowballStemmer
-	 * @see ALGORITHM#ENGLISH
+	 * @see EnglishStemmer
+	 * @see StemCache#ENGLISH
 	 * @see StandardCharsets#UTF_8
 	 * @see #uniqueStems(String, Stemmer)
 	 */
 	public static TreeSet<String> uniqueStems(Path input) throws IOException {
-		SnowballStemmer stemmer = new SnowballStemmer(SnowballStemmer.ALGORITHM.ENGLISH);
+		Stemmer stemmer = StemCache.ENGLISH;
 		TreeSet<String> words = new TreeSet<>();
 
 		try (BufferedReader reader = Files.newBufferedReader(input, UTF_8)) {
@@ -222,14 +214,14 @@ public class FileStemmer {
 	 *         a single line of the input file
 	 * @throws IOException if unable to read or parse file
 	 *
-	 * @see SnowballStemmer
-	 * @see ALGORITHM#ENGLISH
+	 * @see EnglishStemmer
+	 * @see StemCache#ENGLISH
 	 * @see StandardCharsets#UTF_8
 	 * @see #uniqueStems(String, Stemmer)
 	 */
 	public static ArrayList<TreeSet<String>> listUniqueStems(Path input) throws IOException {
 		ArrayList<TreeSet<String>> wordsbyLine = new ArrayList<>();
-		SnowballStemmer stemmer = new SnowballStemmer(SnowballStemmer.ALGORITHM.ENGLISH);
+		Stemmer stemmer = StemCache.ENGLISH;
 
 		try (BufferedReader reader = Files.newBufferedReader(input, UTF_8)) {
 			String line;
@@ -0,0 +1,724 @@
+package edu.usfca.cs272;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Read-only snapshot of an inverted index, created by
+ * {@link InvertedIndex#freeze()} once the index is done being built. The words,
+ * documents, and positions are compacted into flat sorted arrays with offset
+ * tables (compressed sparse row layout), so lookups are binary searches over
+ * contiguous memory instead of walks through tree nodes. The words themselves
+ * are kept in a front coded {@link TermDictionary}, which also finds the range
+ * of words matching a prefix for partial search.
+ *
+ * Since the snapshot never changes, it is safe to search from multiple threads
+ * without any locking. It has no methods to modify it; {@link #thaw()} copies
+ * it into an index that can be modified instead.
+ */
+public class FrozenInvertedIndex extends ReadOnlyInvertedIndex {
+	/**
+	 * All of the words in the index, numbered in sorted order
+	 */
+	private final TermDictionary words;
+
+	/**
+	 * The postings of word {@code w} are stored from {@code wordOffsets[w]}
+	 * (inclusive) to {@code wordOffsets[w + 1]} (exclusive)
+	 */
+	private final int[] wordOffsets;
+
+	/**
+	 * The document id of each posting, in increasing order for each word
+	 */
+	private final int[] documents;
+
+	/**
+	 * The positions of posting {@code p} are stored from {@code positionOffsets[p]}
+	 * (inclusive) to {@code positionOffsets[p + 1]} (exclusive)
+	 */
+	private final int[] positionOffsets;
+
+	/**
+	 * The positions of every posting, in increasing order for each posting
+	 */
+	private final int[] positions;
+
+	/**
+	 * The location of each document id, sorted so ids are in location order
+	 */
+	private final String[] locations;
+
+	/**
+	 * The word count of each document id
+	 */
+	private final int[] wordCounts;
+
+	/**
+	 * Creates a snapshot from already compacted arrays. Only intended to be called
+	 * by {@link InvertedIndex#freeze()}.
+	 *
+	 * @param words           - all of the words, numbered in sorted order
+	 * @param wordOffsets     - where the postings of each word start
+	 * @param documents       - the document id of each posting
+	 * @param positionOffsets - where the positions of each posting start
+	 * @param positions       - the positions of every posting
+	 * @param locations       - the location of each document id, sorted
+	 * @param wordCounts      - the word count of each document id
+	 */
+	FrozenInvertedIndex(TermDictionary words, int[] wordOffsets, int[] documents, int[] positionOffsets, int[] positions,
+			String[] locations, int[] wordCounts) {
+		this.words = words;
+		this.wordOffsets = wordOffsets;
+		this.documents = documents;
+		this.positionOffsets = positionOffsets;
+		this.positions = positions;
+		this.locations = locations;
+		this.wordCounts = wordCounts;
+	}
+
+	@Override
+	List<SearchResult> select(Set<String> queries, boolean partial, int limit) {
+		ScoreAccumulator scores = accumulator(locations.length);
+
+		for (String query : queries) {
+			if (partial) {
+				// all words starting with the query are numbered next to each other
+				int end = words.prefixEnd(query);
+				for (int word = words.prefixStart(query); word < end; word++) {
+					searchHelper(scores, word);
+				}
+			} else {
+				int word = words.find(query);
+				if (word >= 0) {
+					searchHelper(scores, word);
+				}
+			}
+		}
+
+		return results(scores, limit, wordCounts, document -> locations[document]);
+	}
+
+	/**
+	 * Adds the matches of a single word to the scores.
+	 *
+	 * @param scores - the matches found so far
+	 * @param word   - index of the word to search for
+	 */
+	private void searchHelper(ScoreAccumulator scores, int word) {
+		for (int posting = wordOffsets[word]; posting < wordOffsets[word + 1]; posting++) {
+			scores.add(documents[posting], positionOffsets[posting + 1] - positionOffsets[posting]);
+		}
+	}
+
+	/**
+	 * Returns this index, which is already frozen.
+	 *
+	 * @return this index
+	 */
+	@Override
+	public FrozenInvertedIndex freeze() {
+		return this;
+	}
+
+	@Override
+	public String toString() {
+		return JsonWriter.writeIndex(asMap());
+	}
+
+	@Override
+	public boolean containsCount(String location) {
+		return Arrays.binarySearch(locations, location) >= 0;
+	}
+
+	@Override
+	public boolean containsWord(String word) {
+		return words.find(word) >= 0;
+	}
+
+	@Override
+	public boolean containsLocation(String word, String location) {
+		return findPosting(word, location) >= 0;
+	}
+
+	@Override
+	public boolean containsPosition(String word, String location, int position) {
+		int posting = findPosting(word, location);
+		return posting >= 0 && Arrays.binarySearch(positions, positionOffsets[posting], positionOffsets[posting + 1],
+				position) >= 0;
+	}
+
+	@Override
+	public int numUniqueWords() {
+		return words.size();
+	}
+
+	@Override
+	public int numCounts() {
+		return locations.length;
+	}
+
+	@Override
+	public int numLocations(String word) {
+		int found = words.find(word);
+		return found >= 0 ? wordOffsets[found + 1] - wordOffsets[found] : 0;
+	}
+
+	@Override
+	public int numPositions(String word, String location) {
+		int posting = findPosting(word, location);
+		return posting >= 0 ? positionOffsets[posting + 1] - positionOffsets[posting] : 0;
+	}
+
+	@Override
+	public Integer getWordCount(String file) {
+		int document = Arrays.binarySearch(locations, file);
+		return document >= 0 ? wordCounts[document] : 0;
+	}
+
+	@Override
+	public Set<Integer> getPositions(String word, String file) {
+		int posting = findPosting(word, file);
+		if (posting < 0) {
+			return Collections.emptySet();
+		}
+		return positionSet(posting);
+	}
+
+	@Override
+	public Set<String> getLocations(String word) {
+		int found = words.find(word);
+		if (found < 0) {
+			return Collections.emptySet();
+		}
+
+		TreeSet<String> wordLocations = new TreeSet<>();
+		for (int posting = wordOffsets[found]; posting < wordOffsets[found + 1]; posting++) {
+			wordLocations.add(locations[documents[posting]]);
+		}
+		return Collections.unmodifiableSet(wordLocations);
+	}
+
+	@Override
+	public NavigableSet<String> getWords() {
+		TreeSet<String> sorted = new TreeSet<>();
+		words.forEach(sorted::add);
+		return Collections.unmodifiableNavigableSet(sorted);
+	}
+
+	@Override
+	List<String> getWords(String prefix) {
+		// all words starting with the prefix are numbered next to each other
+		int end = words.prefixEnd(prefix);
+		List<String> found = new ArrayList<>();
+		for (int word = words.prefixStart(prefix); word < end; word++) {
+			found.add(words.get(word));
+		}
+		return found;
+	}
+
+	@Override
+	public Map<String, Integer> getWordCounts() {
+		TreeMap<String, Integer> counts = new TreeMap<>();
+		for (int i = 0; i < locations.length; i++) {
+			counts.put(locations[i], wordCounts[i]);
+		}
+		return Collections.unmodifiableMap(counts);
+	}
+
+	@Override
+	public void writeJson(Path path) throws IOException {
+		JsonWriter.writeIndex(asMap(), path);
+	}
+
+	@Override
+	public void writeBinary(Path path) throws IOException {
+		// size the encoded positions first, so the layout is known up front
+		long positionBytes = 0;
+		for (int posting = 0; posting + 1 < positionOffsets.length; posting++) {
+			int previous = 0;
+			for (int i = positionOffsets[posting]; i < positionOffsets[posting + 1]; i++) {
+				positionBytes += MappedInvertedIndex.encodedSize(positions[i] - previous);
+				previous = positions[i];
+			}
+		}
+
+		int numPostings = documents.length;
+
+		try (DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(Files.newOutputStream(path), 1 << 16))) {
+			long[] layout = MappedInvertedIndex.writeHead(out, words, wordOffsets, locations, wordCounts, numPostings,
+					positions.length, positionBytes);
+			long written = layout[MappedInvertedIndex.DOCUMENTS];
+
+			for (int document : documents) {
+				out.writeInt(document);
+			}
+			written += (long) numPostings * Integer.BYTES;
+
+			written = MappedInvertedIndex.pad(out, written, layout[MappedInvertedIndex.COUNTS]);
+			for (int posting = 0; posting < numPostings; posting++) {
+				out.writeInt(positionOffsets[posting + 1] - positionOffsets[posting]);
+			}
+			written += (long) numPostings * Integer.BYTES;
+
+			written = MappedInvertedIndex.pad(out, written, layout[MappedInvertedIndex.POSITION_OFFSETS]);
+			long positionOffset = 0;
+			out.writeLong(positionOffset);
+			for (int posting = 0; posting < numPostings; posting++) {
+				int previous = 0;
+				for (int i = positionOffsets[posting]; i < positionOffsets[posting + 1]; i++) {
+					positionOffset += MappedInvertedIndex.encodedSize(positions[i] - previous);
+					previous = positions[i];
+				}
+				out.writeLong(positionOffset);
+			}
+			written += (numPostings + 1L) * Long.BYTES;
+
+			MappedInvertedIndex.pad(out, written, layout[MappedInvertedIndex.POSITIONS]);
+			for (int posting = 0; posting < numPostings; posting++) {
+				MappedInvertedIndex.writePositions(out, positions, positionOffsets[posting], positionOffsets[posting + 1]);
+			}
+		}
+	}
+
+	/**
+	 * Copies this snapshot into a new index that can be modified again, for
+	 * example to update an index loaded from a file instead of rebuilding it.
+	 *
+	 * @return a modifiable copy of this index
+	 */
+	public InvertedIndex thaw() {
+		// the postings are stored by word, but are added to the copy by document
+		List<Map<String, PostingList>> postings = new ArrayList<>(locations.length);
+		for (int document = 0; document < locations.length; document++) {
+			postings.add(new HashMap<>());
+		}
+
+		int ordinal = 0;
+		for (String word : words) {
+			for (int posting = wordOffsets[ordinal]; posting < wordOffsets[ordinal + 1]; posting++) {
+				PostingList list = new PostingList();
+				for (int i = positionOffsets[posting]; i < positionOffsets[posting + 1]; i++) {
+					list.insert(positions[i]);
+				}
+				postings.get(documents[posting]).put(word, list);
+			}
+			ordinal++;
+		}
+
+		InvertedIndex index = new InvertedIndex();
+		for (int document = 0; document < locations.length; document++) {
+			if (postings.get(document).isEmpty()) {
+				index.updateWordCount(locations[document], wordCounts[document]);
+			} else {
+				index.insertDocument(locations[document], postings.get(document), wordCounts[document]);
+			}
+			postings.set(document, null);
+		}
+		return index;
+	}
+
+	/**
+	 * Returns the number of positions stored, which is a good measure of how much
+	 * work it takes to merge this snapshot with others.
+	 *
+	 * @return the number of positions
+	 */
+	int positionCount() {
+		return positions.length;
+	}
+
+	/**
+	 * Merges several snapshots into a new one without modifying them. Words and
+	 * locations found in more than one snapshot are combined the same way
+	 * {@link InvertedIndex#addAll(Collection)} combines them: their positions are
+	 * merged and the largest word count is kept.
+	 *
+	 * @param snapshots - the snapshots to merge
+	 * @return the merged snapshot
+	 */
+	static FrozenInvertedIndex merge(List<FrozenInvertedIndex> snapshots) {
+		return merge(snapshots, Collections.nCopies(snapshots.size(), Set.of()));
+	}
+
+	/**
+	 * Merges several snapshots into a new one, leaving out the documents removed
+	 * from each snapshot. Words left without any documents are left out as well.
+	 *
+	 * @param snapshots - the snapshots to merge
+	 * @param removed   - the locations removed from each snapshot, in the same
+	 *                  order as the snapshots
+	 * @return the merged snapshot
+	 * @see #merge(List)
+	 */
+	static FrozenInvertedIndex merge(List<FrozenInvertedIndex> snapshots, List<? extends Set<String>> removed) {
+		if (snapshots.size() == 1 && removed.get(0).isEmpty()) {
+			return snapshots.get(0);
+		}
+
+		int numDocuments = 0;
+		int numWords = 0;
+		long numPostings = 0;
+		long numPositions = 0;
+
+		for (FrozenInvertedIndex snapshot : snapshots) {
+			numDocuments += snapshot.locations.length;
+			numWords += snapshot.words.size();
+			numPostings += snapshot.documents.length;
+			numPositions += snapshot.positions.length;
+		}
+
+		if (numPostings > Integer.MAX_VALUE - 8 || numPositions > Integer.MAX_VALUE - 8) {
+			throw new IllegalStateException("Too many positions to merge: " + numPositions);
+		}
+
+		// merge the sorted locations, keeping the largest word count of each
+		String[] locations = new String[numDocuments];
+		int copied = 0;
+		for (int i = 0; i < snapshots.size(); i++) {
+			for (String location : snapshots.get(i).locations) {
+				if (!removed.get(i).contains(location)) {
+					locations[copied++] = location;
+				}
+			}
+		}
+		Arrays.sort(locations, 0, copied);
+
+		int unique = 0;
+		for (int i = 0; i < copied; i++) {
+			if (unique == 0 || !locations[i].equals(locations[unique - 1])) {
+				locations[unique++] = locations[i];
+			}
+		}
+		locations = Arrays.copyOf(locations, unique);
+
+		int[] wordCounts = new int[unique];
+		Arrays.fill(wordCounts, Integer.MIN_VALUE);
+		int[][] remaps = new int[snapshots.size()][];
+		for (int i = 0; i < remaps.length; i++) {
+			FrozenInvertedIndex snapshot = snapshots.get(i);
+			remaps[i] = new int[snapshot.locations.length];
+			for (int document = 0; document < remaps[i].length; document++) {
+				if (removed.get(i).contains(snapshot.locations[document])) {
+					remaps[i][document] = -1;
+					continue;
+				}
+
+				int merged = Arrays.binarySearch(locations, snapshot.locations[document]);
+				remaps[i][document] = merged;
+				wordCounts[merged] = Math.max(wordCounts[merged], snapshot.wordCounts[document]);
+			}
+		}
+
+		// k-way merge the sorted words of every snapshot
+		PriorityQueue<WordCursor> queue = new PriorityQueue<>();
+		for (int i = 0; i < snapshots.size(); i++) {
+			WordCursor cursor = new WordCursor(i, snapshots.get(i).words.iterator());
+			if (cursor.advance()) {
+				queue.add(cursor);
+			}
+		}
+
+		List<String> words = new ArrayList<>(numWords);
+		int[] wordOffsets = new int[numWords + 1];
+		int[] documents = new int[(int) numPostings];
+		int[] positionOffsets = new int[(int) numPostings + 1];
+		int[] positions = new int[(int) numPositions];
+		List<WordCursor> group = new ArrayList<>();
+
+		int posting = 0;
+		int position = 0;
+
+		while (!queue.isEmpty()) {
+			String word = queue.peek().word;
+			group.clear();
+			while (!queue.isEmpty() && queue.peek().word.equals(word)) {
+				group.add(queue.poll());
+			}
+
+			wordOffsets[words.size()] = posting;
+			words.add(word);
+
+			if (group.size() == 1) {
+				// the remapped ids of a single snapshot are still in increasing order
+				WordCursor cursor = group.get(0);
+				FrozenInvertedIndex snapshot = snapshots.get(cursor.snapshot);
+				int[] remap = remaps[cursor.snapshot];
+
+				for (int p = snapshot.wordOffsets[cursor.ordinal]; p < snapshot.wordOffsets[cursor.ordinal + 1]; p++) {
+					if (remap[snapshot.documents[p]] < 0) {
+						continue;
+					}
+
+					int start = snapshot.positionOffsets[p];
+					int length = snapshot.positionOffsets[p + 1] - start;
+
+					documents[posting] = remap[snapshot.documents[p]];
+					positionOffsets[posting++] = position;
+					System.arraycopy(snapshot.positions, start, positions, position, length);
+					position += length;
+				}
+			} else {
+				// the postings of each snapshot are in increasing order, so repeatedly take
+				// the smallest merged document id among the snapshots
+				for (WordCursor cursor : group) {
+					FrozenInvertedIndex snapshot = snapshots.get(cursor.snapshot);
+					cursor.posting = snapshot.wordOffsets[cursor.ordinal];
+					cursor.end = snapshot.wordOffsets[cursor.ordinal + 1];
+				}
+
+				while (true) {
+					int document = Integer.MAX_VALUE;
+					for (WordCursor cursor : group) {
+						FrozenInvertedIndex snapshot = snapshots.get(cursor.snapshot);
+						while (cursor.posting < cursor.end && remaps[cursor.snapshot][snapshot.documents[cursor.posting]] < 0) {
+							cursor.posting++;
+						}
+						if (cursor.posting < cursor.end) {
+							document = Math.min(document, remaps[cursor.snapshot][snapshot.documents[cursor.posting]]);
+						}
+					}
+
+					if (document == Integer.MAX_VALUE) {
+						break;
+					}
+
+					int start = position;
+					int found = 0;
+					for (WordCursor cursor : group) {
+						FrozenInvertedIndex snapshot = snapshots.get(cursor.snapshot);
+						if (cursor.posting < cursor.end
+								&& remaps[cursor.snapshot][snapshot.documents[cursor.posting]] == document) {
+							int p = cursor.posting++;
+							found++;
+							int length = snapshot.positionOffsets[p + 1] - snapshot.positionOffsets[p];
+							System.arraycopy(snapshot.positions, snapshot.positionOffsets[p], positions, position, length);
+							position += length;
+						}
+					}
+
+					if (found > 1) {
+						// the same document in several snapshots may repeat positions
+						Arrays.sort(positions, start, position);
+						int end = start;
+						for (int j = start; j < position; j++) {
+							if (j == start || positions[j] != positions[end - 1]) {
+								positions[end++] = positions[j];
+							}
+						}
+						position = end;
+					}
+
+					documents[posting] = document;
+					positionOffsets[posting++] = start;
+				}
+			}
+
+			// a word only found in removed documents is left out
+			if (posting == wordOffsets[words.size() - 1]) {
+				words.remove(words.size() - 1);
+			}
+
+			for (WordCursor cursor : group) {
+				if (cursor.advance()) {
+					queue.add(cursor);
+				}
+			}
+		}
+
+		wordOffsets[words.size()] = posting;
+		positionOffsets[posting] = position;
+
+		return new FrozenInvertedIndex(new TermDictionary(words), Arrays.copyOf(wordOffsets, words.size() + 1),
+				Arrays.copyOf(documents, posting), Arrays.copyOf(positionOffsets, posting + 1),
+				Arrays.copyOf(positions, position), locations, wordCounts);
+	}
+
+	/**
+	 * Steps through the words of one snapshot during a merge. Also used to merge
+	 * the runs of a {@link SpillingInvertedIndex} by
+	 * {@link MappedInvertedIndex#merge(List, List, Path)}.
+	 */
+	static class WordCursor implements Comparable<WordCursor> {
+		/**
+		 * The index of the snapshot in the list being merged
+		 */
+		final int snapshot;
+
+		/**
+		 * The remaining words of the snapshot
+		 */
+		final Iterator<String> iterator;
+
+		/**
+		 * The current word
+		 */
+		String word;
+
+		/**
+		 * The ordinal of the current word in the snapshot
+		 */
+		int ordinal;
+
+		/**
+		 * The next posting of the current word to merge
+		 */
+		int posting;
+
+		/**
+		 * The posting after the last one of the current word
+		 */
+		int end;
+
+		/**
+		 * @param snapshot - the index of the snapshot in the list being merged
+		 * @param iterator - the words of the snapshot in sorted order
+		 */
+		public WordCursor(int snapshot, Iterator<String> iterator) {
+			this.snapshot = snapshot;
+			this.iterator = iterator;
+			this.ordinal = -1;
+		}
+
+		/**
+		 * Moves to the next word.
+		 *
+		 * @return true if there was another word
+		 */
+		public boolean advance() {
+			if (!iterator.hasNext()) {
+				return false;
+			}
+			word = iterator.next();
+			ordinal++;
+			return true;
+		}
+
+		@Override
+		public int compareTo(WordCursor other) {
+			int comparison = word.compareTo(other.word);
+			return comparison != 0 ? comparison : Integer.compare(snapshot, other.snapshot);
+		}
+	}
+
+	/**
+	 * Finds the posting of a word in a location.
+	 *
+	 * @param word     - word to look up
+	 * @param location - location to look up
+	 * @return the index of the posting, or -1 if the word does not occur in the
+	 *         location
+	 */
+	private int findPosting(String word, String location) {
+		int found = words.find(word);
+		if (found < 0) {
+			return -1;
+		}
+
+		int document = Arrays.binarySearch(locations, location);
+		if (document < 0) {
+			return -1;
+		}
+
+		int posting = Arrays.binarySearch(documents, wordOffsets[found], wordOffsets[found + 1], document);
+		return posting >= 0 ? posting : -1;
+	}
+
+	/**
+	 * Returns an unmodifiable view of the positions of a posting.
+	 *
+	 * @param posting - index of the posting
+	 * @return the positions as a sorted set
+	 */
+	private Set<Integer> positionSet(int posting) {
+		int start = positionOffsets[posting];
+		int end = positionOffsets[posting + 1];
+
+		return new AbstractSet<>() {
+			@Override
+			public Iterator<Integer> iterator() {
+				return Arrays.stream(positions, start, end).iterator();
+			}
+
+			@Override
+			public int size() {
+				return end - start;
+			}
+
+			@Override
+			public boolean contains(Object o) {
+				return o instanceof Integer position && Arrays.binarySearch(positions, start, end, position) >= 0;
+			}
+		};
+	}
+
+	/**
+	 * Returns the index as nested maps from word to location to positions,
+	 * created one word at a time as the map is iterated. Intended for use by
+	 * {@link JsonWriter}.
+	 *
+	 * @return a view of the index sorted by word and location
+	 */
+	private Map<String, Map<String, Set<Integer>>> asMap() {
+		return new AbstractMap<>() {
+			@Override
+			public Set<Entry<String, Map<String, Set<Integer>>>> entrySet() {
+				return new AbstractSet<>() {
+					@Override
+					public Iterator<Entry<String, Map<String, Set<Integer>>>> iterator() {
+						return new Iterator<>() {
+							/** The words in sorted order */
+							private final Iterator<String> iterator = words.iterator();
+
+							/** The index of the next word */
+							private int word = 0;
+
+							@Override
+							public boolean hasNext() {
+								return iterator.hasNext();
+							}
+
+							@Override
+							public Entry<String, Map<String, Set<Integer>>> next() {
+								String next = iterator.next();
+
+								// document ids are in location order, so the map is already sorted
+								Map<String, Set<Integer>> postings = new LinkedHashMap<>();
+								for (int posting = wordOffsets[word]; posting < wordOffsets[word + 1]; posting++) {
+									postings.put(locations[documents[posting]], positionSet(posting));
+								}
+								word++;
+								return Map.entry(next, postings);
+							}
+						};
+					}
+
+					@Override
+					public int size() {
+						return words.size();
+					}
+				};
+			}
+		};
+	}
+}
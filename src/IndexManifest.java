@@ -0,0 +1,251 @@
+package edu.usfca.cs272;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Records the size, last modified time, and content hash of every file in an
+ * index, so the index can be updated later by re-indexing only the files that
+ * were added or changed since, and removing the ones that were deleted.
+ *
+ * A file whose size and modified time are unchanged is assumed unchanged
+ * without reading it. Otherwise its contents are hashed, so a file that was
+ * only touched (or copied over with the same contents) is not re-indexed
+ * either.
+ *
+ * The manifest is stored as a text file with one file per line: the size, the
+ * modified time in milliseconds, the SHA-256 hash, and the location, separated
+ * by tabs.
+ *
+ * This class is thread safe, so files can be checked by several worker threads
+ * at once.
+ */
+public class IndexManifest {
+	/**
+	 * Separates the fields of each line of a manifest file
+	 */
+	private static final String SEPARATOR = "\t";
+
+	/**
+	 * The recorded state of each file, by location
+	 */
+	private final TreeMap<String, Entry> entries;
+
+	/**
+	 * Creates an empty manifest, where every file is new.
+	 */
+	public IndexManifest() {
+		this.entries = new TreeMap<>();
+	}
+
+	/**
+	 * Returns where the manifest of a saved index is stored by default, which is
+	 * next to the index file.
+	 *
+	 * @param index - the saved index file
+	 * @return the manifest file
+	 */
+	public static Path pathFor(Path index) {
+		return index.resolveSibling(index.getFileName() + ".manifest");
+	}
+
+	/**
+	 * Reads a manifest written by {@link #write(Path)}.
+	 *
+	 * @param path - the manifest file
+	 * @return the manifest
+	 * @throws IOException if the file cannot be read or is not a manifest
+	 */
+	public static IndexManifest read(Path path) throws IOException {
+		IndexManifest manifest = new IndexManifest();
+
+		try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.isEmpty()) {
+					continue;
+				}
+
+				// the location comes last, since it may contain the separator itself
+				String[] fields = line.split(SEPARATOR, 4);
+				if (fields.length != 4) {
+					throw new IOException("Invalid manifest line in " + path + ": " + line);
+				}
+
+				try {
+					manifest.entries.put(fields[3],
+							new Entry(Long.parseLong(fields[0]), Long.parseLong(fields[1]), fields[2]));
+				} catch (NumberFormatException e) {
+					throw new IOException("Invalid manifest line in " + path + ": " + line, e);
+				}
+			}
+		}
+
+		return manifest;
+	}
+
+	/**
+	 * Writes the manifest to a file.
+	 *
+	 * @param path - the manifest file
+	 * @throws IOException if the file cannot be written
+	 */
+	public synchronized void write(Path path) throws IOException {
+		try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+			for (var entry : entries.entrySet()) {
+				Entry file = entry.getValue();
+				writer.write(file.size + SEPARATOR + file.modified + SEPARATOR + file.hash + SEPARATOR + entry.getKey());
+				writer.newLine();
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of files recorded.
+	 *
+	 * @return the number of files
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Checks whether a file must be (re-)indexed because it is new or its
+	 * contents changed since it was recorded, and records its current state.
+	 * The state is read before the contents are hashed, so a file that changes
+	 * while it is being indexed is re-indexed again next time.
+	 *
+	 * @param file - the file to check, whose location is its path as a string
+	 * @return true if the file must be indexed
+	 * @throws IOException if the file cannot be read
+	 */
+	public boolean update(Path file) throws IOException {
+		String location = file.toString();
+		long size = Files.size(file);
+		long modified = Files.getLastModifiedTime(file).toMillis();
+
+		Entry recorded;
+		synchronized (this) {
+			recorded = entries.get(location);
+		}
+
+		if (recorded != null && recorded.size == size && recorded.modified == modified) {
+			return false;
+		}
+
+		// hashing reads the whole file, so it happens without holding the lock
+		String hash = hash(file);
+
+		synchronized (this) {
+			entries.put(location, new Entry(size, modified, hash));
+		}
+
+		return recorded == null || recorded.size != size || !recorded.hash.equals(hash);
+	}
+
+	/**
+	 * Forgets a file, so it is indexed again next time. Used when indexing a file
+	 * fails after {@link #update(Path)} recorded it.
+	 *
+	 * @param file - the file to forget
+	 */
+	public synchronized void forget(Path file) {
+		entries.remove(file.toString());
+	}
+
+	/**
+	 * Forgets every file that is not in a list of the current files.
+	 *
+	 * @param files - the current files
+	 * @return the locations of the files that were deleted since they were
+	 *         recorded, which must be removed from the index
+	 */
+	public synchronized List<String> retain(Collection<Path> files) {
+		Set<String> current = new HashSet<>();
+		for (Path file : files) {
+			current.add(file.toString());
+		}
+
+		List<String> deleted = new ArrayList<>();
+		var it = entries.keySet().iterator();
+		while (it.hasNext()) {
+			String location = it.next();
+			if (!current.contains(location)) {
+				deleted.add(location);
+				it.remove();
+			}
+		}
+		return deleted;
+	}
+
+	/**
+	 * Hashes the contents of a file.
+	 *
+	 * @param file - the file to hash
+	 * @return the SHA-256 hash of the file in hexadecimal
+	 * @throws IOException if the file cannot be read
+	 */
+	private static String hash(Path file) throws IOException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			// every Java platform is required to support SHA-256
+			throw new IllegalStateException(e);
+		}
+
+		byte[] buffer = new byte[1 << 16];
+		try (InputStream in = Files.newInputStream(file)) {
+			int read;
+			while ((read = in.read(buffer)) > 0) {
+				digest.update(buffer, 0, read);
+			}
+		}
+		return HexFormat.of().formatHex(digest.digest());
+	}
+
+	/**
+	 * The recorded state of a file.
+	 */
+	private static class Entry {
+		/**
+		 * The size of the file in bytes
+		 */
+		private final long size;
+
+		/**
+		 * The last modified time of the file in milliseconds
+		 */
+		private final long modified;
+
+		/**
+		 * The SHA-256 hash of the file contents
+		 */
+		private final String hash;
+
+		/**
+		 * @param size     - the size of the file in bytes
+		 * @param modified - the last modified time in milliseconds
+		 * @param hash     - the hash of the file contents
+		 */
+		public Entry(long size, long modified, String hash) {
+			this.size = size;
+			this.modified = modified;
+			this.hash = hash;
+		}
+	}
+}
@@ -0,0 +1,287 @@
+package edu.usfca.cs272;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Keeps an index up to date with a directory of text files while it is being
+ * searched. Every directory under the root is watched with a
+ * {@link WatchService}, so nothing is polled. Bursts of events (such as an
+ * editor saving a file, or a large copy) are debounced: changes are collected
+ * until no new event arrives for the debounce time, and every changed file is
+ * then indexed once, in parallel on a {@link WorkQueue}.
+ *
+ * Changed files replace their old document in the index atomically, and
+ * deleted files (or directories) are removed from it, so the index stays
+ * searchable the whole time. If events are lost because too many arrived at
+ * once, the whole directory is indexed again.
+ */
+public class IndexWatcher implements Closeable {
+	/** Logger used for this class. */
+	private static final Logger log = LogManager.getLogger();
+
+	/**
+	 * Changes are applied at the latest after this many debounce times, even if
+	 * events keep arriving
+	 */
+	private static final int MAX_DELAY = 10;
+
+	/**
+	 * The file or directory being watched
+	 */
+	private final Path root;
+
+	/**
+	 * The index to keep up to date
+	 */
+	private final ThreadedInvertedIndex index;
+
+	/**
+	 * The work queue changed files are indexed on
+	 */
+	private final WorkQueue queue;
+
+	/**
+	 * How long to wait for more events before applying changes, in milliseconds
+	 */
+	private final long debounce;
+
+	/**
+	 * Receives the events of every watched directory
+	 */
+	private final WatchService watcher;
+
+	/**
+	 * The directory each watch key belongs to
+	 */
+	private final Map<WatchKey, Path> directories;
+
+	/**
+	 * The files currently in the index. Tracked here rather than read from the
+	 * index, since some indexes only show changes once they are published.
+	 */
+	private final Set<Path> files;
+
+	/**
+	 * Starts watching a file or a directory and everything under it. Changes are
+	 * collected from now on, so the watcher should be created before the index is
+	 * built; any change made while it is built is applied by the first call to
+	 * {@link #watch(Runnable)}.
+	 *
+	 * @param root     - the file or directory the index is built from
+	 * @param index    - the index to keep up to date
+	 * @param queue    - the work queue to index changed files on
+	 * @param debounce - how long to wait for more events before applying changes,
+	 *                 in milliseconds
+	 * @throws IOException if the directories cannot be watched
+	 */
+	public IndexWatcher(Path root, ThreadedInvertedIndex index, WorkQueue queue, long debounce) throws IOException {
+		this.root = root;
+		this.index = index;
+		this.queue = queue;
+		this.debounce = Math.max(1, debounce);
+		this.watcher = root.getFileSystem().newWatchService();
+		this.directories = new HashMap<>();
+
+		if (Files.isDirectory(root)) {
+			register(root, new TreeSet<>());
+		} else {
+			// a single file is watched through the directory it is in
+			Path parent = root.toAbsolutePath().getParent();
+			directories.put(parent.register(watcher, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY), parent);
+		}
+
+		// listed only once everything is watched, so a file created in between is
+		// either listed here or reported by an event
+		this.files = new TreeSet<>(FileFinder.listText(root, root));
+	}
+
+	/**
+	 * Applies changes as they happen until the watcher is closed or the thread is
+	 * interrupted.
+	 *
+	 * @param updated - called after each batch of changes is applied
+	 */
+	public void watch(Runnable updated) {
+		try {
+			while (true) {
+				WatchKey key = watcher.take();
+
+				Set<Path> changed = new TreeSet<>();
+				boolean rescan = false;
+				long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(debounce * MAX_DELAY);
+
+				// keep collecting until the events stop for a while
+				while (key != null) {
+					rescan |= collect(key, changed);
+					key = System.nanoTime() < deadline ? watcher.poll(debounce, TimeUnit.MILLISECONDS) : null;
+				}
+
+				apply(changed, rescan);
+				updated.run();
+			}
+		} catch (ClosedWatchServiceException e) {
+			log.debug("Stopped watching {}", root);
+		} catch (InterruptedException e) {
+			log.debug("Interrupted while watching {}", root);
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Stops watching. A call to {@link #watch(Runnable)} in progress returns.
+	 */
+	@Override
+	public void close() throws IOException {
+		watcher.close();
+	}
+
+	/**
+	 * Watches a directory and every directory under it, following symbolic links
+	 * like {@link FileFinder}.
+	 *
+	 * @param start - the directory to watch
+	 * @param found - collects the text files found, which were possibly created
+	 *              before the directory was watched
+	 * @throws IOException if a directory cannot be watched
+	 */
+	private void register(Path start, Set<Path> found) throws IOException {
+		List<Path> paths;
+		try (Stream<Path> stream = Files.walk(start, FileVisitOption.FOLLOW_LINKS)) {
+			paths = stream.toList();
+		}
+
+		for (Path path : paths) {
+			if (Files.isDirectory(path)) {
+				directories.put(path.register(watcher, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY), path);
+			} else if (FileFinder.IS_TEXT.test(path)) {
+				found.add(path);
+			}
+		}
+	}
+
+	/**
+	 * Collects the paths changed by the events of a watch key.
+	 *
+	 * @param key     - the signalled watch key
+	 * @param changed - collects the changed paths
+	 * @return true if events were lost and everything must be indexed again
+	 */
+	private boolean collect(WatchKey key, Set<Path> changed) {
+		Path directory = directories.get(key);
+		boolean rescan = false;
+
+		for (WatchEvent<?> event : key.pollEvents()) {
+			if (event.kind() == OVERFLOW || directory == null) {
+				rescan = true;
+				continue;
+			}
+
+			Path path = directory.resolve((Path) event.context());
+			if (!path.startsWith(root) && !path.toAbsolutePath().equals(root.toAbsolutePath())) {
+				continue;
+			}
+
+			if (event.kind() == ENTRY_CREATE && Files.isDirectory(path)) {
+				// files may be created in a new directory before it is watched
+				try {
+					register(path, changed);
+				} catch (IOException e) {
+					log.warn("Unable to watch {}", path, e);
+					rescan = true;
+				}
+			}
+			changed.add(path.equals(root.toAbsolutePath()) ? root : path);
+		}
+
+		if (!key.reset()) {
+			directories.remove(key);
+		}
+		return rescan;
+	}
+
+	/**
+	 * Indexes changed files and removes deleted ones, waiting until the index is
+	 * up to date.
+	 *
+	 * @param changed - the paths that changed
+	 * @param rescan  - whether to index every file again and remove the files
+	 *                that are missing, because events were lost
+	 */
+	private void apply(Set<Path> changed, boolean rescan) {
+		List<Path> deleted = new ArrayList<>();
+
+		if (rescan) {
+			try {
+				changed.addAll(FileFinder.listText(root, root));
+			} catch (IOException e) {
+				log.warn("Unable to list {}", root, e);
+			}
+			for (Path file : files) {
+				if (!Files.exists(file)) {
+					deleted.add(file);
+				}
+			}
+		}
+
+		for (Path path : changed) {
+			if (!Files.exists(path)) {
+				deleted.add(path);
+			} else if (path.equals(root) || FileFinder.IS_TEXT.test(path)) {
+				files.add(path);
+				queue.compute(() -> reindex(path));
+			}
+		}
+
+		// a deleted directory takes every file under it along
+		var it = files.iterator();
+		while (it.hasNext()) {
+			Path file = it.next();
+			if (deleted.stream().anyMatch(file::startsWith)) {
+				index.removeDocument(file.toString());
+				it.remove();
+			}
+		}
+
+		queue.finish();
+	}
+
+	/**
+	 * Replaces a file in the index with its current contents.
+	 *
+	 * @param path - the file to index
+	 */
+	private void reindex(Path path) {
+		try {
+			index.replaceDocument(path.toString(), InvertedIndexProcessor.stemFile(path));
+		} catch (NoSuchFileException e) {
+			index.removeDocument(path.toString());
+		} catch (IOException e) {
+			log.warn("Unable to index {}", path, e);
+		}
+	}
+}
@@ -1,13 +1,20 @@
 package edu.usfca.cs272;
 
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.NavigableSet;
+import java.util.PriorityQueue;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
@@ -15,148 +22,322 @@ import java.util.TreeSet;
 /**
  * Class responsible representing the backwards index data structure
  */
-public class InvertedIndex {
+public class InvertedIndex extends ReadOnlyInvertedIndex {
 	/**
-	 * Stores the locations of all words in the backwards index
+	 * Stores the locations of all words in the backwards index, by document id
 	 */
-	private final TreeMap<String, TreeMap<String, TreeSet<Integer>>> index;
+	private final TreeMap<String, TermPostings> index;
 	/**
-	 * Stores the word count of words in a file
+	 * Stores the word count of each document, indexed by document id
 	 */
-	private final TreeMap<String, Integer> wordCounts;
+	private int[] wordCounts;
+	/**
+	 * Assigns each location a document id
+	 */
+	private DocumentDictionary documents;
+	/**
+	 * The ids of removed documents, whose postings are skipped until the index is
+	 * compacted
+	 */
+	private final BitSet removed;
+	/**
+	 * The number of removed documents that have not been compacted yet
+	 */
+	private int numRemoved;
 
 	/**
 	 * Method that will construct an empty backwards index
 	 */
 	public InvertedIndex() {
-		index = new TreeMap<String, TreeMap<String, TreeSet<Integer>>>();
-		wordCounts = new TreeMap<String, Integer>();
+		index = new TreeMap<String, TermPostings>();
+		wordCounts = new int[16];
+		documents = new DocumentDictionary();
+		removed = new BitSet();
+		numRemoved = 0;
+	}
+
+	@Override
+	List<SearchResult> select(Set<String> queries, boolean partial, int limit) {
+		ScoreAccumulator scores = accumulator(documents.size());
+
+		// Iterate through each file and add up the match count
+		for (String query : queries) {
+			if (partial) {
+				// Iterate over the tailMap of the index, starting from the given query
+				for (var entry : index.tailMap(query).entrySet()) {
+					String word = entry.getKey();
+					if (!word.startsWith(query)) {
+						break; // Exit the loop if the current word no longer matches the query
+					}
+					searchHelper(scores, entry.getValue());
+				}
+			} else {
+				var postings = index.get(query);
+				if (postings != null) {
+					searchHelper(scores, postings);
+				}
+			}
+		}
+
+		return results(scores, limit, wordCounts, documents::location);
 	}
 
 	/**
-	 * Method that performs a search operation based on a set of queries.
+	 * Helper method to add the matches of a single word to the scores.
 	 * 
-	 * @param queries - a set of search queries to be used for searching.
-	 * @param partial - a boolean flag indicating whether to perform a partial
-	 *                search. If true, partial search is performed; if false, exact
-	 *                search is performed.
-	 * @return - a list of search results based on the provided queries.
+	 * @param scores   - the matches found so far
+	 * @param postings - postings of the word to search for
 	 */
-	public List<SearchResult> search(Set<String> queries, boolean partial) {
-		return partial ? partialSearch(queries) : exactSearch(queries);
+	private void searchHelper(ScoreAccumulator scores, TermPostings postings) {
+		for (int i = 0; i < postings.size(); i++) {
+			int document = postings.document(i);
+			if (!isRemoved(document)) {
+				scores.add(document, postings.positions(i).size());
+			}
+		}
 	}
 
 	/**
-	 * Method that finds matches from the inverted index data structure and generate
-	 * a search result for each match
+	 * Updates the backward index so word has a location at fileName, position
 	 * 
-	 * @param queries - the set of search terms to search
-	 * @return - a sorted list of search results
+	 * @note does not update the word count of the file
+	 * 
+	 * @param word     - word to be added to the index
+	 * @param fileName - the file the word was found in
+	 * @param position - location of word in the file
 	 */
-	public List<SearchResult> exactSearch(Set<String> queries) {
+	public void insertWord(String word, String fileName, int position) {
 
-		Map<String, SearchResult> matches = new HashMap<>();
-		List<SearchResult> results = new ArrayList<>();
+		var postings = index.get(word);
 
-		// Iterate through each file and calculate the match count and score
-		for (String word : queries) {
-			exactSearchHelper(matches, results, word);
+		if (postings == null) {
+			postings = new TermPostings();
+			index.put(word, postings);
 		}
 
-		// Sort the results based on score, match count, and location
-		Collections.sort(results);
+		int document = addDocument(fileName, position);
+		postings.getOrCreate(document).insert(position);
+	}
 
-		return results;
+	/**
+	 * Adds every stem of a document to the index at once. The first stem is at
+	 * position 1, and the word count of the document is the number of stems.
+	 *
+	 * @param location - the location of the document
+	 * @param stems    - the stems of the document, in order
+	 */
+	public void insertDocument(String location, List<String> stems) {
+		DocumentPostings document = new DocumentPostings();
+		for (String stem : stems) {
+			document.add(stem);
+		}
+		insertDocument(location, document);
 	}
 
 	/**
-	 * Helper method to perform the search for a given word and update matches and
-	 * results.
-	 * 
-	 * @param matches - map to store matches
-	 * @param results - list to store search results
-	 * @param word    - word to search for
+	 * Adds all of the postings collected for a document to the index at once. The
+	 * position lists of the document are stored by the index, so the document
+	 * should not be used again afterwards.
+	 *
+	 * @param location - the location of the document
+	 * @param document - the stems of the document grouped with their positions
 	 */
-	private void exactSearchHelper(Map<String, SearchResult> matches, List<SearchResult> results, String word) {
-		var locations = index.get(word);
-		if (locations != null) {
-			for (var entry : locations.entrySet()) {
-				SearchResult result = matches.get(entry.getKey());
-				if (result == null) {
-					result = new SearchResult(entry.getKey());
-					matches.put(entry.getKey(), result);
-					results.add(result);
-				}
-				result.update(entry.getValue().size());
+	public void insertDocument(String location, DocumentPostings document) {
+		insertDocument(location, document.postings(), document.size());
+	}
+
+	/**
+	 * Adds the positions of several words in a document to the index at once.
+	 *
+	 * @param location  - the location of the document
+	 * @param postings  - the positions of each word in the document
+	 * @param wordCount - the word count of the document
+	 */
+	void insertDocument(String location, Map<String, PostingList> postings, int wordCount) {
+		if (postings.isEmpty()) {
+			return;
+		}
+
+		int document = addDocument(location, wordCount);
+
+		for (var entry : postings.entrySet()) {
+			var wordPostings = index.get(entry.getKey());
+
+			if (wordPostings == null) {
+				wordPostings = new TermPostings();
+				index.put(entry.getKey(), wordPostings);
 			}
+
+			wordPostings.add(document, entry.getValue());
 		}
 	}
 
 	/**
-	 * Performs a partial search on the inverted index using word stems.
-	 * 
-	 * @param partialQuery The query containing partial search terms (word stems).
-	 * @return A list of SearchResult objects, sorted by relevance.
+	 * Removes a document from the index. The postings of the document are only
+	 * marked as removed (a tombstone) and skipped from then on; the space they
+	 * use is reclaimed by {@link #compact()}, which happens automatically once
+	 * enough documents have been removed.
+	 *
+	 * @param location - the location of the document
+	 * @return true if the document was in the index
 	 */
-	public List<SearchResult> partialSearch(Set<String> partialQuery) {
+	public boolean removeDocument(String location) {
+		int document = documents.remove(location);
+		if (document < 0) {
+			return false;
+		}
 
-		Map<String, SearchResult> matches = new HashMap<>();
-		List<SearchResult> results = new ArrayList<>();
+		removed.set(document);
+		numRemoved++;
+		wordCounts[document] = 0;
 
-		// Iterate through each file and calculate the match count and score
-		for (String queryWord : partialQuery) {
-			// Iterate over the tailMap of the index, starting from the given queryWord
-			for (var entry : index.tailMap(queryWord).entrySet()) {
-				String word = entry.getKey();
-				if (!word.startsWith(queryWord)) {
-					break; // Exit the loop if the current word no longer matches the query
-				}
-				exactSearchHelper(matches, results, word);
-			}
+		if (numRemoved >= COMPACT_MINIMUM && numRemoved * COMPACT_RATIO >= documents.size()) {
+			compact();
 		}
+		return true;
+	}
 
-		// Sort the results based on score, match count, and location
-		Collections.sort(results);
+	/**
+	 * Replaces every word of a document with new stems. The first stem is at
+	 * position 1, and the word count of the document is the number of stems.
+	 *
+	 * @param location - the location of the document
+	 * @param stems    - the new stems of the document, in order
+	 */
+	public void replaceDocument(String location, List<String> stems) {
+		DocumentPostings document = new DocumentPostings();
+		for (String stem : stems) {
+			document.add(stem);
+		}
+		replaceDocument(location, document);
+	}
 
-		return results;
+	/**
+	 * Replaces every word of a document with the postings collected for its new
+	 * contents, for example when a file changes or a web page is crawled again.
+	 *
+	 * @param location - the location of the document
+	 * @param document - the new stems of the document grouped with their
+	 *                 positions
+	 */
+	public void replaceDocument(String location, DocumentPostings document) {
+		replaceDocument(location, document.postings(), document.size());
 	}
 
 	/**
-	 * Updates the backward index so word has a location at fileName, position
-	 * 
-	 * @note does not update the word count of the file
-	 * 
-	 * @param word     - word to be added to the index
-	 * @param fileName - the file the word was found in
-	 * @param position - location of word in the file
+	 * Replaces every word of a document with new positions. Subclasses override
+	 * this to make the replacement atomic.
+	 *
+	 * @param location  - the location of the document
+	 * @param postings  - the new positions of each word in the document
+	 * @param wordCount - the new word count of the document
 	 */
-	public void insertWord(String word, String fileName, int position) {
+	void replaceDocument(String location, Map<String, PostingList> postings, int wordCount) {
+		removeDocument(location);
+		insertDocument(location, postings, wordCount);
+	}
+
+	/**
+	 * Reclaims the space used by removed documents. Their postings are dropped,
+	 * words only found in removed documents are removed, and the remaining
+	 * documents are given new consecutive ids.
+	 */
+	public void compact() {
+		if (numRemoved == 0) {
+			return;
+		}
 
-		var wordLocations = index.get(word);
+		// ids are renumbered in the same order, so postings stay sorted
+		DocumentDictionary compacted = new DocumentDictionary();
+		int[] renumber = new int[documents.size()];
+		int[] counts = new int[Math.max(16, documents.size() - numRemoved)];
 
-		if (wordLocations == null) {
-			wordLocations = new TreeMap<>();
-			index.put(word, wordLocations);
+		for (int i = 0; i < renumber.length; i++) {
+			if (removed.get(i)) {
+				renumber[i] = -1;
+			} else {
+				renumber[i] = compacted.add(documents.location(i));
+				counts[renumber[i]] = wordCounts[i];
+			}
 		}
 
-		var positions = wordLocations.get(fileName);
+		var it = index.values().iterator();
+		while (it.hasNext()) {
+			var postings = it.next();
+			postings.renumber(renumber);
+			if (postings.size() == 0) {
+				it.remove();
+			}
+		}
 
-		if (positions == null) {
-			positions = new TreeSet<>();
-			wordLocations.put(fileName, positions);
+		documents = compacted;
+		wordCounts = counts;
+		removed.clear();
+		numRemoved = 0;
+	}
+
+	/**
+	 * Checks whether a document id belongs to a removed document.
+	 *
+	 * @param document - the document id
+	 * @return true if the document was removed
+	 */
+	private boolean isRemoved(int document) {
+		return numRemoved > 0 && removed.get(document);
+	}
+
+	/**
+	 * Counts the postings of a word that do not belong to removed documents, up to
+	 * a maximum.
+	 *
+	 * @param postings - the postings of the word
+	 * @param max      - stop counting once this many are found
+	 * @return the number of postings found, at most max
+	 */
+	private int numLive(TermPostings postings, int max) {
+		if (numRemoved == 0) {
+			return Math.min(postings.size(), max);
 		}
 
-		positions.add(position);
+		int live = 0;
+		for (int i = 0; i < postings.size() && live < max; i++) {
+			if (!removed.get(postings.document(i))) {
+				live++;
+			}
+		}
+		return live;
+	}
+
+	/**
+	 * Looks up the id of a location, adding it if necessary, and updates its word
+	 * count keeping the maximum position found for a location as the word count.
+	 *
+	 * @param location - the location of the document
+	 * @param count    - a position found in the document
+	 * @return the document id of the location
+	 */
+	private int addDocument(String location, int count) {
+		int known = documents.size();
+		int document = documents.add(location);
 
-		// Update the word count here keeping the maximum position found for a location
-		// as the word count.
-		wordCounts.merge(fileName, position, Integer::max);
+		if (document == known) {
+			if (document == wordCounts.length) {
+				wordCounts = Arrays.copyOf(wordCounts, wordCounts.length * 2);
+			}
+			wordCounts[document] = count;
+		} else {
+			wordCounts[document] = Math.max(wordCounts[document], count);
+		}
 
+		return document;
 	}
 
 	@Override
 	public String toString() {
-		return JsonWriter.writeIndex(index);
+		if (numRemoved > 0) {
+			return freeze().toString();
+		}
+		return JsonWriter.writeIndex(index, documents);
 	}
 
 	/**
@@ -165,8 +346,9 @@ public class InvertedIndex {
 	 * @param location - location the path to a file
 	 * @return if word count is known
 	 */
+	@Override
 	public boolean containsCount(String location) {
-		return wordCounts.containsKey(location);
+		return documents.get(location) >= 0;
 	}
 
 	/**
@@ -175,8 +357,10 @@ public class InvertedIndex {
 	 * @param word - to query
 	 * @return if the word exists in the index
 	 */
+	@Override
 	public boolean containsWord(String word) {
-		return index.containsKey(word);
+		var postings = index.get(word);
+		return postings != null && numLive(postings, 1) > 0;
 	}
 
 	/**
@@ -186,9 +370,9 @@ public class InvertedIndex {
 	 * @param location - of the path in the query
 	 * @return if the word exists in the index
 	 */
+	@Override
 	public boolean containsLocation(String word, String location) {
-		var locations = index.get(word);
-		return locations != null && locations.containsKey(location);
+		return findPositions(word, location) != null;
 	}
 
 	/**
@@ -199,13 +383,28 @@ public class InvertedIndex {
 	 * @param position - position within the file
 	 * @return if the word exists in the index
 	 */
+	@Override
 	public boolean containsPosition(String word, String location, int position) {
-		var locations = index.get(word);
-		if (locations != null) {
-			var positions = locations.get(location);
-			return positions != null && positions.contains(position);
+		var positions = findPositions(word, location);
+		return positions != null && positions.contains(position);
+	}
+
+	/**
+	 * Finds the positions of a word in a location.
+	 *
+	 * @param word     - word to look up
+	 * @param location - location to look up
+	 * @return the positions, or null if the word does not occur in the location
+	 */
+	private PostingList findPositions(String word, String location) {
+		var postings = index.get(word);
+		if (postings != null) {
+			int document = documents.get(location);
+			if (document >= 0) {
+				return postings.get(document);
+			}
 		}
-		return false;
+		return null;
 	}
 
 	/**
@@ -213,8 +412,19 @@ public class InvertedIndex {
 	 * 
 	 * @return the number of unique words in the index
 	 */
+	@Override
 	public int numUniqueWords() {
-		return index.size();
+		if (numRemoved == 0) {
+			return index.size();
+		}
+
+		int words = 0;
+		for (var postings : index.values()) {
+			if (numLive(postings, 1) > 0) {
+				words++;
+			}
+		}
+		return words;
 	}
 
 	/**
@@ -222,8 +432,9 @@ public class InvertedIndex {
 	 * 
 	 * @return the number of files in the index
 	 */
+	@Override
 	public int numCounts() {
-		return wordCounts.size();
+		return documents.size() - numRemoved;
 	}
 
 	/**
@@ -233,10 +444,11 @@ public class InvertedIndex {
 	 * @return the number of locations where the word occurs, or 0 if the word is
 	 *         not found in the index
 	 */
+	@Override
 	public int numLocations(String word) {
 		var locations = index.get(word);
 		if (locations != null) {
-			return locations.size();
+			return numLive(locations, Integer.MAX_VALUE);
 		}
 		return 0;
 	}
@@ -249,18 +461,10 @@ public class InvertedIndex {
 	 * @return the number of positions where the word occurs in the location, or 0
 	 *         if the word or location is not found in the index
 	 */
+	@Override
 	public int numPositions(String word, String location) {
-		var locations = index.get(word);
-
-		if (locations != null) {
-			var positions = locations.get(location);
-
-			if (positions != null) {
-				return positions.size();
-			}
-		}
-		return 0;
-
+		var positions = findPositions(word, location);
+		return positions != null ? positions.size() : 0;
 	}
 
 	/**
@@ -270,8 +474,10 @@ public class InvertedIndex {
 	 * @param file - in the index
 	 * @return number of words in the file or null if file not found
 	 */
+	@Override
 	public Integer getWordCount(String file) {
-		return wordCounts.getOrDefault(file, 0);
+		int document = documents.get(file);
+		return document >= 0 ? wordCounts[document] : 0;
 	}
 
 	/**
@@ -281,12 +487,9 @@ public class InvertedIndex {
 	 * @param file - file in the index
 	 * @return a set of positions where the word occurs in the file
 	 */
+	@Override
 	public Set<Integer> getPositions(String word, String file) {
-		var locations = index.get(word);
-		if (locations == null) {
-			return Collections.emptySet();
-		}
-		var positions = locations.get(file);
+		var positions = findPositions(word, file);
 		if (positions == null) {
 			return Collections.emptySet();
 		}
@@ -299,10 +502,17 @@ public class InvertedIndex {
 	 * @param word - word in the query
 	 * @return all the files that contain the word
 	 */
+	@Override
 	public Set<String> getLocations(String word) {
-		var locations = index.get(word);
-		if (locations != null) {
-			return Collections.unmodifiableSet(locations.keySet());
+		var postings = index.get(word);
+		if (postings != null) {
+			TreeSet<String> locations = new TreeSet<>();
+			for (int i = 0; i < postings.size(); i++) {
+				if (!isRemoved(postings.document(i))) {
+					locations.add(documents.location(postings.document(i)));
+				}
+			}
+			return Collections.unmodifiableSet(locations);
 		}
 		return Collections.emptySet();
 
@@ -313,8 +523,33 @@ public class InvertedIndex {
 	 * 
 	 * @return the set of all words in the index files
 	 */
+	@Override
 	public NavigableSet<String> getWords() {
-		return Collections.unmodifiableNavigableSet(index.navigableKeySet());
+		if (numRemoved == 0) {
+			return Collections.unmodifiableNavigableSet(index.navigableKeySet());
+		}
+
+		TreeSet<String> words = new TreeSet<>();
+		for (var entry : index.entrySet()) {
+			if (numLive(entry.getValue(), 1) > 0) {
+				words.add(entry.getKey());
+			}
+		}
+		return Collections.unmodifiableNavigableSet(words);
+	}
+
+	@Override
+	List<String> getWords(String prefix) {
+		List<String> found = new ArrayList<>();
+		for (var entry : index.tailMap(prefix).entrySet()) {
+			if (!entry.getKey().startsWith(prefix)) {
+				break;
+			}
+			if (numRemoved == 0 || numLive(entry.getValue(), 1) > 0) {
+				found.add(entry.getKey());
+			}
+		}
+		return found;
 	}
 
 	/**
@@ -322,8 +557,15 @@ public class InvertedIndex {
 	 * 
 	 * @return the word counts as an unmodifiable map
 	 */
+	@Override
 	public Map<String, Integer> getWordCounts() {
-		return Collections.unmodifiableMap(wordCounts);
+		TreeMap<String, Integer> counts = new TreeMap<>();
+		for (int i = 0; i < documents.size(); i++) {
+			if (!isRemoved(i)) {
+				counts.put(documents.location(i), wordCounts[i]);
+			}
+		}
+		return Collections.unmodifiableMap(counts);
 	}
 
 	/**
@@ -333,31 +575,150 @@ public class InvertedIndex {
 	 * @param other - the InvertedIndex to add
 	 */
 	public void addAll(InvertedIndex other) {
-		for (var entry : other.wordCounts.entrySet()) {
-			this.wordCounts.merge(entry.getKey(), entry.getValue(), Integer::max);
+		addAll(List.of(other));
+	}
+
+	/**
+	 * Adds the data from several InvertedIndexes to this one in a single pass. It
+	 * is assumed the inverted indices have not indexed the same files.
+	 *
+	 * The sorted words of every other index are merged together (k-way), so each
+	 * distinct word is looked up in this index once no matter how many of the
+	 * other indices contain it. The postings of each word are then merged,
+	 * spread across multiple threads if there are enough words to make it
+	 * worthwhile, since different words never share postings.
+	 *
+	 * @param others - the InvertedIndexes to add
+	 */
+	public void addAll(Collection<? extends InvertedIndex> others) {
+		List<MergeCursor> cursors = new ArrayList<>(others.size());
+
+		for (InvertedIndex other : others) {
+			if (other == this) {
+				continue;
+			}
+
+			// translate the document ids of the other index into ids for this index
+			int[] remap = new int[other.documents.size()];
+			for (int i = 0; i < remap.length; i++) {
+				remap[i] = other.isRemoved(i) ? -1 : this.addDocument(other.documents.location(i), other.wordCounts[i]);
+			}
+
+			var it = other.index.entrySet().iterator();
+			if (it.hasNext()) {
+				cursors.add(new MergeCursor(cursors.size(), it, remap));
+			}
 		}
 
-		for (var entry : other.index.entrySet()) {
-			String otherWord = entry.getKey();
-			var otherMap = entry.getValue();
-			var thisMap = this.index.get(otherWord);
+		merge(cursors);
+	}
 
-			if (thisMap == null) {
-				this.index.put(otherWord, otherMap);
-			} else {
-				for (var treeEntry : otherMap.entrySet()) {
-					String otherFile = treeEntry.getKey();
-					var otherList = treeEntry.getValue();
-					var thisList = thisMap.get(otherFile);
-					if (thisList == null) {
-						thisMap.put(otherFile, otherList);
-					} else {
-						thisList.addAll(otherList);
-					}
+	/**
+	 * Adds only some of the words from several InvertedIndexes to this one, in a
+	 * single pass the same way as {@link #addAll(Collection)}. Only the documents
+	 * those words occur in are added to this index, along with their word counts
+	 * from the other indices.
+	 *
+	 * @param others - the InvertedIndexes to add words from
+	 * @param words  - the words to add from each index, in the same order as the
+	 *               indices; the words of each index must be sorted and must all
+	 *               be in that index
+	 */
+	void addAll(List<? extends InvertedIndex> others, List<? extends List<String>> words) {
+		List<MergeCursor> cursors = new ArrayList<>(others.size());
+
+		for (int i = 0; i < others.size(); i++) {
+			InvertedIndex other = others.get(i);
+			List<String> otherWords = words.get(i);
+
+			if (other == this || otherWords.isEmpty()) {
+				continue;
+			}
+
+			// find the documents the words occur in first, so they are added in document
+			// order and the postings of each word are still appended in increasing order
+			BitSet found = new BitSet(other.documents.size());
+			for (String word : otherWords) {
+				var otherPostings = other.index.get(word);
+				for (int j = 0; j < otherPostings.size(); j++) {
+					found.set(otherPostings.document(j));
 				}
 			}
+			found.andNot(other.removed);
+
+			int[] remap = new int[other.documents.size()];
+			Arrays.fill(remap, -1);
+			for (int document = found.nextSetBit(0); document >= 0; document = found.nextSetBit(document + 1)) {
+				remap[document] = this.addDocument(other.documents.location(document), other.wordCounts[document]);
+			}
+
+			var it = otherWords.stream().map(word -> Map.entry(word, other.index.get(word))).iterator();
+			cursors.add(new MergeCursor(cursors.size(), it, remap));
 		}
 
+		merge(cursors);
+	}
+
+	/**
+	 * Merges the words of several other indices into this one, given a cursor
+	 * over the sorted words of each of them.
+	 *
+	 * @param cursors - the cursors of the indices to merge, each already on its
+	 *                first word
+	 */
+	private void merge(List<MergeCursor> cursors) {
+		// group the postings of each distinct word, in word order
+		PriorityQueue<MergeCursor> queue = new PriorityQueue<>(cursors);
+		List<MergeGroup> groups = new ArrayList<>();
+		MergeGroup group = null;
+
+		while (!queue.isEmpty()) {
+			MergeCursor cursor = queue.poll();
+			String word = cursor.entry.getKey();
+
+			if (group == null || !group.word.equals(word)) {
+				var thisPostings = this.index.get(word);
+
+				if (thisPostings == null) {
+					thisPostings = new TermPostings();
+					this.index.put(word, thisPostings);
+				}
+
+				group = new MergeGroup(word, thisPostings);
+				groups.add(group);
+			}
+
+			group.add(cursor.entry.getValue(), cursor.remap);
+
+			if (cursor.advance()) {
+				queue.add(cursor);
+			}
+		}
+
+		// each group only touches the postings of its own word
+		if (groups.size() >= PARALLEL_MERGE) {
+			groups.parallelStream().forEach(MergeGroup::merge);
+		} else {
+			groups.forEach(MergeGroup::merge);
+		}
+
+		// words only found in removed documents were not added after all
+		for (MergeGroup merged : groups) {
+			if (merged.target.size() == 0) {
+				index.remove(merged.word);
+			}
+		}
+	}
+
+	/**
+	 * Updates the word count of a location, keeping the maximum count found. The
+	 * location is added to the index if necessary, even if it has no words yet.
+	 *
+	 * @param location - the location of the document
+	 * @param count    - the word count of the document
+	 */
+	void updateWordCount(String location, int count) {
+		addDocument(location, count);
 	}
 
 	/**
@@ -365,93 +726,434 @@ public class InvertedIndex {
 	 * @throws IOException - throw IOexcetion if IOexcetion occurs while writing the
 	 *                     index
 	 */
+	@Override
 	public void writeJson(Path path) throws IOException {
-		JsonWriter.writeIndex(index, path);
+		if (numRemoved > 0) {
+			freeze().writeJson(path);
+		} else {
+			JsonWriter.writeIndex(index, documents, path);
+		}
+	}
+
+	/**
+	 * Writes a compact binary copy of the index that can be loaded back almost
+	 * instantly with {@link MappedInvertedIndex#open(Path)}.
+	 * 
+	 * @param path - path to write
+	 * @throws IOException - if an IO error occurs while writing the index
+	 */
+	@Override
+	public void writeBinary(Path path) throws IOException {
+		// written straight from the postings instead of through freeze(), so the
+		// index is never copied in memory first
+		String[] sorted = sortedLocations();
+		int[] renumber = renumber(sorted);
+		int[] counts = new int[sorted.length];
+		for (int i = 0; i < renumber.length; i++) {
+			if (renumber[i] >= 0) {
+				counts[renumber[i]] = wordCounts[i];
+			}
+		}
+
+		// size every section first, so the layout is known up front
+		List<String> words = new ArrayList<>(index.size());
+		int[] wordOffsets = new int[index.size() + 1];
+		int numPostings = 0;
+		long numPositions = 0;
+		long positionBytes = 0;
+
+		for (var entry : index.entrySet()) {
+			var postings = entry.getValue();
+			int live = 0;
+			for (int i = 0; i < postings.size(); i++) {
+				if (!isRemoved(postings.document(i))) {
+					live++;
+					numPositions += postings.positions(i).size();
+					positionBytes += encodedSize(postings.positions(i));
+				}
+			}
+
+			// a word only found in removed documents is left out
+			if (live > 0) {
+				wordOffsets[words.size()] = numPostings;
+				words.add(entry.getKey());
+				numPostings = Math.addExact(numPostings, live);
+			}
+		}
+		wordOffsets[words.size()] = numPostings;
+
+		try (DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(Files.newOutputStream(path), 1 << 16))) {
+			long[] layout = MappedInvertedIndex.writeHead(out, new TermDictionary(words),
+					Arrays.copyOf(wordOffsets, words.size() + 1), sorted, counts, numPostings, numPositions, positionBytes);
+			long written = layout[MappedInvertedIndex.DOCUMENTS];
+
+			// every section lists the postings in the same order, so the postings are
+			// visited again for each section rather than copied
+			for (int section = MappedInvertedIndex.DOCUMENTS; section < MappedInvertedIndex.END; section++) {
+				written = MappedInvertedIndex.pad(out, written, layout[section]);
+				long positionOffset = 0;
+				if (section == MappedInvertedIndex.POSITION_OFFSETS) {
+					out.writeLong(positionOffset);
+					written += Long.BYTES;
+				}
+
+				for (var postings : index.values()) {
+					for (long next : order(postings, renumber)) {
+						var list = postings.positions((int) next);
+						switch (section) {
+							case MappedInvertedIndex.DOCUMENTS -> {
+								out.writeInt((int) (next >>> 32));
+								written += Integer.BYTES;
+							}
+							case MappedInvertedIndex.COUNTS -> {
+								out.writeInt(list.size());
+								written += Integer.BYTES;
+							}
+							case MappedInvertedIndex.POSITION_OFFSETS -> {
+								positionOffset += encodedSize(list);
+								out.writeLong(positionOffset);
+								written += Long.BYTES;
+							}
+							default -> written += MappedInvertedIndex.writePositions(out, list.toIntArray(), 0, list.size());
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of bytes the positions of a posting take once encoded in
+	 * the binary format.
+	 * 
+	 * @param list - the positions of the posting
+	 * @return the number of bytes
+	 */
+	private static long encodedSize(PostingList list) {
+		long size = 0;
+		int previous = 0;
+		var it = list.iterator();
+		while (it.hasNext()) {
+			int position = it.nextInt();
+			size += MappedInvertedIndex.encodedSize(position - previous);
+			previous = position;
+		}
+		return size;
+	}
+
+	/**
+	 * Returns the locations of every document that was not removed, in sorted
+	 * order.
+	 * 
+	 * @return the sorted locations
+	 */
+	private String[] sortedLocations() {
+		String[] sorted = new String[documents.size() - numRemoved];
+		int live = 0;
+		for (int i = 0; i < documents.size(); i++) {
+			if (!isRemoved(i)) {
+				sorted[live++] = documents.location(i);
+			}
+		}
+		Arrays.sort(sorted);
+		return sorted;
+	}
+
+	/**
+	 * Renumbers the documents so ids are in location order, leaving out removed
+	 * documents.
+	 * 
+	 * @param sorted - the locations of the documents that were not removed, in
+	 *               sorted order
+	 * @return the new id of each document id, or -1 for removed documents
+	 */
+	private int[] renumber(String[] sorted) {
+		int[] renumber = new int[documents.size()];
+		for (int i = 0; i < renumber.length; i++) {
+			renumber[i] = isRemoved(i) ? -1 : Arrays.binarySearch(sorted, documents.location(i));
+		}
+		return renumber;
+	}
+
+	/**
+	 * Sorts the postings of a word by their new document ids, leaving out removed
+	 * documents.
+	 * 
+	 * @param postings - the postings of the word
+	 * @param renumber - the new id of each document id, as returned by
+	 *                 {@link #renumber(String[])}
+	 * @return the new document id of each posting in the upper 32 bits and its
+	 *         index in the postings in the lower 32 bits, in sorted order
+	 */
+	private static long[] order(TermPostings postings, int[] renumber) {
+		long[] order = new long[postings.size()];
+		int found = 0;
+		for (int i = 0; i < order.length; i++) {
+			int document = renumber[postings.document(i)];
+			if (document >= 0) {
+				order[found++] = ((long) document << 32) | i;
+			}
+		}
+		Arrays.sort(order, 0, found);
+		return found == order.length ? order : Arrays.copyOf(order, found);
+	}
+
+	/**
+	 * Compacts the index into a read-only snapshot that is faster to search and
+	 * safe to share between threads without locking. Changes made to this index
+	 * afterwards are not reflected in the snapshot.
+	 *
+	 * @return a frozen copy of this index
+	 */
+	@Override
+	public FrozenInvertedIndex freeze() {
+		// renumber the documents so ids are in location order, leaving out removed
+		// documents
+		String[] sorted = sortedLocations();
+		int[] renumber = renumber(sorted);
+		int[] counts = new int[sorted.length];
+		for (int i = 0; i < renumber.length; i++) {
+			if (renumber[i] >= 0) {
+				counts[renumber[i]] = wordCounts[i];
+			}
+		}
+
+		// size the flat arrays before copying anything into them
+		int numPostings = 0;
+		long numPositions = 0;
+		for (var postings : index.values()) {
+			for (int i = 0; i < postings.size(); i++) {
+				if (!isRemoved(postings.document(i))) {
+					numPostings++;
+					numPositions += postings.positions(i).size();
+				}
+			}
+		}
+
+		if (numPositions > Integer.MAX_VALUE - 8) {
+			throw new IllegalStateException("Too many positions to freeze: " + numPositions);
+		}
+
+		List<String> words = new ArrayList<>(index.size());
+		int[] wordOffsets = new int[index.size() + 1];
+		int[] postingDocuments = new int[numPostings];
+		int[] positionOffsets = new int[numPostings + 1];
+		int[] positions = new int[(int) numPositions];
+
+		int posting = 0;
+		int position = 0;
+
+		for (var entry : index.entrySet()) {
+			var postings = entry.getValue();
+
+			// sort this word's postings by their new document ids
+			long[] order = order(postings, renumber);
+			int found = order.length;
+
+			// a word only found in removed documents is left out
+			if (found == 0) {
+				continue;
+			}
+
+			wordOffsets[words.size()] = posting;
+			words.add(entry.getKey());
+
+			for (int i = 0; i < found; i++) {
+				long next = order[i];
+				var list = postings.positions((int) next);
+				postingDocuments[posting] = (int) (next >>> 32);
+				positionOffsets[posting] = position;
+
+				var it = list.iterator();
+				while (it.hasNext()) {
+					positions[position++] = it.nextInt();
+				}
+				posting++;
+			}
+		}
+
+		wordOffsets[words.size()] = posting;
+		positionOffsets[posting] = position;
+
+		return new FrozenInvertedIndex(new TermDictionary(words), Arrays.copyOf(wordOffsets, words.size() + 1),
+				postingDocuments, positionOffsets, positions, sorted, counts);
 	}
 
 	/**
-	 * Represents a search result containing information about matches, score, and
-	 * file location.
+	 * The number of removed documents before the index compacts itself
+	 * automatically
 	 */
-	public class SearchResult implements Comparable<SearchResult> {
+	private static final int COMPACT_MINIMUM = 64;
 
+	/**
+	 * The index compacts itself once one in this many documents is removed
+	 */
+	static final int COMPACT_RATIO = 4;
+
+	/**
+	 * Roughly estimates how much memory the index uses, counting the objects each
+	 * word, posting, and document needs on top of its characters and compressed
+	 * positions. Meant for deciding when an index has grown too large, not for
+	 * exact accounting.
+	 *
+	 * @return the estimated size in bytes
+	 */
+	long estimateBytes() {
+		long bytes = 0;
+
+		for (var entry : index.entrySet()) {
+			var postings = entry.getValue();
+			bytes += WORD_BYTES + Character.BYTES * (long) entry.getKey().length();
+			for (int i = 0; i < postings.size(); i++) {
+				bytes += POSTING_BYTES + POSITION_BYTES * (long) postings.positions(i).size();
+			}
+		}
+
+		for (int i = 0; i < documents.size(); i++) {
+			bytes += DOCUMENT_BYTES + Character.BYTES * (long) documents.location(i).length();
+		}
+
+		return bytes;
+	}
+
+	/**
+	 * The estimated bytes used by each word, not counting its characters
+	 */
+	static final int WORD_BYTES = 96;
+
+	/**
+	 * The estimated bytes used by each posting, not counting its positions
+	 */
+	static final int POSTING_BYTES = 48;
+
+	/**
+	 * The estimated bytes used by each variable-byte encoded position
+	 */
+	static final int POSITION_BYTES = 2;
+
+	/**
+	 * The estimated bytes used by each document, not counting its location
+	 */
+	static final int DOCUMENT_BYTES = 96;
+
+	/**
+	 * The number of distinct words a merge needs before the postings are merged
+	 * in parallel
+	 */
+	private static final int PARALLEL_MERGE = 4096;
+
+	/**
+	 * Steps through the sorted words of one index being merged into another.
+	 */
+	private static class MergeCursor implements Comparable<MergeCursor> {
 		/**
-		 * Represents the total number of matches found for the current result,
-		 * 
+		 * The order of the index among the indices being merged
 		 */
-		private int matchCount;
+		private final int order;
+
 		/**
-		 * Represents the percent of words in the file that match the query
-		 * 
+		 * The remaining words and postings of the index
 		 */
-		private double score;
+		private final Iterator<Map.Entry<String, TermPostings>> iterator;
+
 		/**
-		 * Represents file location of the search result.
+		 * The id in the destination of each document id in this index
 		 */
-		private final String location;
+		private final int[] remap;
 
 		/**
-		 * 
-		 * @param location - file location of the search result.
+		 * The current word and postings
 		 */
-		public SearchResult(String location) {
-			this.matchCount = 0;
-			this.score = 0;
-			this.location = location;
-		}
+		private Map.Entry<String, TermPostings> entry;
 
 		/**
-		 * @param matches - The number of matches to add to the current match count.
+		 * @param order    - the order of the index among the indices being merged
+		 * @param iterator - the words and postings of the index, must not be empty
+		 * @param remap    - the id in the destination of each document id
 		 */
-		private void update(int matches) {
-			matchCount += matches;
-			score = (double) matchCount / getWordCount(location);
+		public MergeCursor(int order, Iterator<Map.Entry<String, TermPostings>> iterator, int[] remap) {
+			this.order = order;
+			this.iterator = iterator;
+			this.remap = remap;
+			this.entry = iterator.next();
 		}
 
 		/**
-		 * Retrieves the total number of matches found for the current result.
-		 * 
-		 * @return the match count
+		 * Moves to the next word.
+		 *
+		 * @return true if there was another word
 		 */
-		public int getMatchCount() {
-			return matchCount;
+		public boolean advance() {
+			if (iterator.hasNext()) {
+				entry = iterator.next();
+				return true;
+			}
+			return false;
+		}
+
+		@Override
+		public int compareTo(MergeCursor other) {
+			int wordComp = this.entry.getKey().compareTo(other.entry.getKey());
+			if (wordComp != 0) {
+				return wordComp;
+			}
+			// keep indices in order so document ids are appended in increasing order
+			return Integer.compare(this.order, other.order);
 		}
+	}
+
+	/**
+	 * The postings from every merged index for a single word.
+	 */
+	private static class MergeGroup {
+		/**
+		 * The word being merged
+		 */
+		private final String word;
+
+		/**
+		 * The postings of the word in the destination
+		 */
+		private final TermPostings target;
+
+		/**
+		 * The postings of the word in each merged index that contains it
+		 */
+		private final List<TermPostings> sources;
 
 		/**
-		 * Retrieves the percent of words in the file that match the query.
-		 * 
-		 * @return the matching score
+		 * The document id translation for each of the sources
 		 */
-		public double getScore() {
-			return score;
+		private final List<int[]> remaps;
+
+		/**
+		 * @param word   - the word being merged
+		 * @param target - the postings of the word in the destination
+		 */
+		public MergeGroup(String word, TermPostings target) {
+			this.word = word;
+			this.target = target;
+			this.sources = new ArrayList<>(1);
+			this.remaps = new ArrayList<>(1);
 		}
 
 		/**
-		 * Retrieves the file location of the search result.
-		 * 
-		 * @return the file location
+		 * @param source - the postings of the word in a merged index
+		 * @param remap  - the document id translation for that index
 		 */
-		public String getLocation() {
-			return location;
+		public void add(TermPostings source, int[] remap) {
+			sources.add(source);
+			remaps.add(remap);
 		}
 
-		@Override
-		public int compareTo(SearchResult other) {
-			// sorting in descending order
-			int scoreComp = Double.compare(other.getScore(), this.getScore());
-			if (scoreComp != 0) {
-				return scoreComp;
-			}
-			// sorting in descending order
-			int matchComp = Integer.compare(other.getMatchCount(), this.getMatchCount());
-			if (matchComp != 0) {
-				return matchComp;
+		/**
+		 * Merges every source into the destination postings.
+		 */
+		public void merge() {
+			for (int i = 0; i < sources.size(); i++) {
+				target.addAll(sources.get(i), remaps.get(i));
 			}
-
-			int locationComp = this.getLocation().compareToIgnoreCase(other.getLocation());
-			return locationComp;
 		}
-
 	}
-
 }
@@ -1,14 +1,18 @@
 package edu.usfca.cs272;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.List;
 
-import opennlp.tools.stemmer.snowball.SnowballStemmer;
 
 /**
  * Class that is responsible for processing one or more files and indexes those
@@ -36,6 +40,37 @@ public class InvertedIndexProcessor {
 
 	}
 
+	/**
+	 * Updates an index built from the same path earlier, re-indexing only the
+	 * files that were added or changed since, and removing the files that were
+	 * deleted. The manifest records the files in the index, and is updated to
+	 * match the files found now.
+	 *
+	 * @param textPath - for individual file index the file, if directory index
+	 *                 files in within the directory
+	 * @param index    - inverted index being updated
+	 * @param manifest - the files the index was built from
+	 * @throws IOException - if there is an issue reading the textPath
+	 */
+	public static void update(Path textPath, InvertedIndex index, IndexManifest manifest) throws IOException {
+		List<Path> files = FileFinder.listText(textPath, textPath);
+
+		for (String location : manifest.retain(files)) {
+			index.removeDocument(location);
+		}
+
+		for (Path file : files) {
+			if (manifest.update(file)) {
+				try {
+					index.replaceDocument(file.toString(), stemFile(file));
+				} catch (IOException e) {
+					manifest.forget(file);
+					throw e;
+				}
+			}
+		}
+	}
+
 	/**
 	 * Method that indexes the words in a file, associating each word with the
 	 * document's file name and position, and maintains a word count for the
@@ -46,26 +81,79 @@ public class InvertedIndexProcessor {
 	 * @throws IOException If an error occurs while reading the text document.
 	 */
 	public static void indexAll(InvertedIndex index, Path path) throws IOException {
-		int count = 0;
-		String fileName = path.toString();
-
-		SnowballStemmer stemmer = new SnowballStemmer(SnowballStemmer.ALGORITHM.ENGLISH);
-
-		String[] words = new String[0]; // Reuse this array
+		index.insertDocument(path.toString(), stemFile(path));
+	}
 
+	/**
+	 * Stems every word in a file, grouping the stems with their positions.
+	 *
+	 * @param path - The path to the text document to be stemmed.
+	 * @return the stems of the document grouped with their positions
+	 * @throws IOException If an error occurs while reading the text document.
+	 */
+	public static DocumentPostings stemFile(Path path) throws IOException {
 		try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
-			String line;
-			while ((line = reader.readLine()) != null) {
-				// Clean and split the line into words
-				words = FileStemmer.parse(line);
+			return stemLines(reader);
+		}
+	}
 
-				for (String word : words) {
-					String stemmedWord = stemmer.stem(word).toString();
-					index.insertWord(stemmedWord.toString(), fileName, ++count);
+	/**
+	 * Stems every word in part of a file, grouping the stems with their positions
+	 * within that part, starting at 1. The part must start at the beginning of a
+	 * line and end right after a line feed or at the end of the file, so no line
+	 * is split.
+	 *
+	 * @param path  - The path to the text document to be stemmed.
+	 * @param start - the offset of the first byte of the part
+	 * @param end   - the offset after the last byte of the part
+	 * @return the stems of the part grouped with their positions
+	 * @throws IOException If an error occurs while reading the text document.
+	 * @see DocumentPostings#addAll(DocumentPostings)
+	 */
+	public static DocumentPostings stemChunk(Path path, long start, long end) throws IOException {
+		byte[] bytes = new byte[Math.toIntExact(end - start)];
+		ByteBuffer buffer = ByteBuffer.wrap(bytes);
+
+		try (FileChannel channel = FileChannel.open(path)) {
+			while (buffer.hasRemaining()) {
+				if (channel.read(buffer, start + buffer.position()) < 0) {
+					throw new EOFException("Unexpected end of " + path);
 				}
 			}
 		}
 
+		// a line feed is never part of a multi-byte character, so the part decodes
+		// exactly like it does within the whole file
+		try (BufferedReader reader = new BufferedReader(
+				new InputStreamReader(new ByteArrayInputStream(bytes), StandardCharsets.UTF_8.newDecoder()))) {
+			return stemLines(reader);
+		}
+	}
+
+	/**
+	 * Stems every word read from a reader, grouping the stems with their
+	 * positions.
+	 *
+	 * @param reader - the reader to read lines from
+	 * @return the stems grouped with their positions
+	 * @throws IOException If an error occurs while reading.
+	 */
+	private static DocumentPostings stemLines(BufferedReader reader) throws IOException {
+		// common words are stemmed once and shared with the other threads
+		StemCache stemmer = StemCache.ENGLISH;
+
+		WordTokenizer tokenizer = new WordTokenizer(); // Reuse this buffer
+
+		// collect the whole document first so it is added to the index at once
+		DocumentPostings document = new DocumentPostings();
+
+		String line;
+		while ((line = reader.readLine()) != null) {
+			// Clean and split the line into words, stemming each one
+			tokenizer.tokenize(line, word -> document.add(stemmer.stem(word)));
+		}
+
+		return document;
 	}
 
 	/**
@@ -79,26 +167,28 @@ public class InvertedIndexProcessor {
 	 *                     content.
 	 */
 	public static void indexAll(InvertedIndex index, String content, String location) throws IOException {
-		int count = 0;
+		// common words are stemmed once and shared with the other threads
+		StemCache stemmer = StemCache.ENGLISH;
 
-		SnowballStemmer stemmer = new SnowballStemmer(SnowballStemmer.ALGORITHM.ENGLISH);
+		WordTokenizer tokenizer = new WordTokenizer(); // Reuse this buffer
 
-		String[] words = new String[0]; // Reuse this array
+		// collect the whole document first so it is added to the index at once
+		DocumentPostings document = new DocumentPostings();
 
 		try (BufferedReader reader = new BufferedReader(new StringReader(content))) {
 			String line;
 			while ((line = reader.readLine()) != null) {
-				// Clean and split the line into words
-				words = FileStemmer.parse(line);
-
-				for (String word : words) {
-					String stemmedWord = stemmer.stem(word).toString();
+				// Clean and split the line into words, stemming each one
+				tokenizer.tokenize(line, word -> {
+					String stemmedWord = stemmer.stem(word);
 					if (!stemmedWord.equals("")) {
-						index.insertWord(stemmedWord.toString(), location, ++count);
+						document.add(stemmedWord);
 					}
-				}
+				});
 			}
 		}
 
+		index.insertDocument(location, document);
+
 	}
 }
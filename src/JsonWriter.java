@@ -437,6 +437,90 @@ public class JsonWriter {
 		}
 	}
 
+	/**
+	 * Writes an inverted index stored by document id as a pretty JSON object with
+	 * nested arrays. Document ids are translated back into locations here, one
+	 * word at a time, so the locations are sorted the same way as the other
+	 * {@code writeIndex} methods.
+	 *
+	 * @param backwardsIndex - the postings of each word, sorted by word
+	 * @param documents      - the dictionary used to look up document locations
+	 * @param writer         - the writer to use
+	 * @param indent         - the initial indent level
+	 * @throws IOException - IOException if an IO error occurs
+	 */
+	public static void writeIndex(Map<String, TermPostings> backwardsIndex, DocumentDictionary documents,
+			Writer writer, int indent) throws IOException {
+		writer.write("{");
+		var it = backwardsIndex.entrySet().iterator();
+
+		if (it.hasNext()) {
+			writeIndexEntry(it.next(), documents, writer, indent);
+		}
+		while (it.hasNext()) {
+			writer.write(",");
+			writeIndexEntry(it.next(), documents, writer, indent);
+		}
+		writer.write("\n");
+		writeIndent("}", writer, indent);
+	}
+
+	/**
+	 * Writes the postings of a single word, translating document ids into
+	 * locations.
+	 *
+	 * @param entry     - the word and its postings
+	 * @param documents - the dictionary used to look up document locations
+	 * @param writer    - the writer to use
+	 * @param indent    - the number of times to indent
+	 * @throws IOException - IOException if an IO error occurs
+	 */
+	public static void writeIndexEntry(Map.Entry<String, TermPostings> entry, DocumentDictionary documents,
+			Writer writer, int indent) throws IOException {
+		writer.write("\n");
+		writeQuote(entry.getKey(), writer, indent + 1);
+		writer.write(": ");
+		writeObjectArrays(entry.getValue().toLocationMap(documents), writer, indent + 1);
+	}
+
+	/**
+	 * Writes an inverted index stored by document id as a pretty JSON object with
+	 * nested arrays to file.
+	 *
+	 * @param backwardsIndex - the postings of each word, sorted by word
+	 * @param documents      - the dictionary used to look up document locations
+	 * @param path           - path to file to write to
+	 * @throws IOException - IOException if an IO error occurs
+	 *
+	 * @see #writeIndex(Map, DocumentDictionary, Writer, int)
+	 */
+	public static void writeIndex(Map<String, TermPostings> backwardsIndex, DocumentDictionary documents, Path path)
+			throws IOException {
+		try (BufferedWriter writer = Files.newBufferedWriter(path, UTF_8)) {
+			writeIndex(backwardsIndex, documents, writer, 0);
+		}
+	}
+
+	/**
+	 * Returns an inverted index stored by document id as a pretty JSON object with
+	 * nested arrays.
+	 *
+	 * @param backwardsIndex - the postings of each word, sorted by word
+	 * @param documents      - the dictionary used to look up document locations
+	 * @return a {@link String} containing the elements in pretty JSON format
+	 *
+	 * @see #writeIndex(Map, DocumentDictionary, Writer, int)
+	 */
+	public static String writeIndex(Map<String, TermPostings> backwardsIndex, DocumentDictionary documents) {
+		try {
+			StringWriter writer = new StringWriter();
+			writeIndex(backwardsIndex, documents, writer, 0);
+			return writer.toString();
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
 	/**
 	 * Writes a list of search results as a JSON array to a Writer.
 	 * 
@@ -445,7 +529,7 @@ public class JsonWriter {
 	 * @param indent  The indentation level for formatting the JSON.
 	 * @throws IOException If an I/O error occurs while writing to the Writer.
 	 */
-	public static void writeSearchResultArray(List<InvertedIndex.SearchResult> results, Writer writer, int indent)
+	public static void writeSearchResultArray(List<ReadOnlyInvertedIndex.SearchResult> results, Writer writer, int indent)
 			throws IOException {
 		writer.write("[");
 		var it = results.iterator();
@@ -471,7 +555,7 @@ public class JsonWriter {
 	 * @param indent The indentation level for formatting the JSON.
 	 * @throws IOException If an I/O error occurs while writing to the Writer.
 	 */
-	public static void writeResult(InvertedIndex.SearchResult result, Writer writer, int indent) throws IOException {
+	public static void writeResult(ReadOnlyInvertedIndex.SearchResult result, Writer writer, int indent) throws IOException {
 		writer.write("{\n");
 		writeQuote("count", writer, indent + 1);
 		writer.write(": " + result.getMatchCount());
@@ -503,14 +587,14 @@ public class JsonWriter {
 	 * @param indent  The indentation level for formatting the JSON.
 	 * @throws IOException If an I/O error occurs while writing to the Writer.
 	 */
-	public static void writeQueryResults(Map<String, List<InvertedIndex.SearchResult>> queries, Writer writer,
+	public static void writeQueryResults(Map<String, List<ReadOnlyInvertedIndex.SearchResult>> queries, Writer writer,
 			int indent) throws IOException {
 
 		writeIndent("{\n", writer, indent);
 		var it = queries.entrySet().iterator();
 
 		if (it.hasNext()) {
-			Map.Entry<String, List<InvertedIndex.SearchResult>> queryResults = it.next();
+			Map.Entry<String, List<ReadOnlyInvertedIndex.SearchResult>> queryResults = it.next();
 			writeQuote(queryResults.getKey(), writer, indent + 1);
 			writer.write(": ");
 			writeSearchResultArray(queryResults.getValue(), writer, indent + 1);
@@ -518,7 +602,7 @@ public class JsonWriter {
 
 		while (it.hasNext()) {
 			writer.write(",\n");
-			Map.Entry<String, List<InvertedIndex.SearchResult>> queryResults = it.next();
+			Map.Entry<String, List<ReadOnlyInvertedIndex.SearchResult>> queryResults = it.next();
 			writeQuote(queryResults.getKey(), writer, indent + 1);
 			writer.write(": ");
 			writeSearchResultArray(queryResults.getValue(), writer, indent + 1);
@@ -535,7 +619,7 @@ public class JsonWriter {
 	 * @param path    The Path to the file where the JSON data will be written.
 	 * @throws IOException If an I/O error occurs while writing to the file.
 	 */
-	public static void writeQueryResults(Map<String, List<InvertedIndex.SearchResult>> queries, Path path)
+	public static void writeQueryResults(Map<String, List<ReadOnlyInvertedIndex.SearchResult>> queries, Path path)
 			throws IOException {
 		try (BufferedWriter writer = Files.newBufferedWriter(path, UTF_8)) {
 			writeQueryResults(queries, writer, 0);
@@ -0,0 +1,1096 @@
+package edu.usfca.cs272;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Read-only inverted index served directly from a binary index file written by
+ * {@link InvertedIndex#writeBinary(Path)}. The file is memory-mapped rather than
+ * parsed, so opening even a very large index only reads the header and the word
+ * counts; everything else is paged in by the operating system as searches touch
+ * it. Like a {@link FrozenInvertedIndex}, it cannot be modified and is safe to
+ * search from multiple threads without any locking.
+ *
+ * The file starts with a {@value #HEADER_SIZE} byte header holding a magic
+ * number, the format version, and the size of every section. The sections
+ * follow in this order, each starting on an 8 byte boundary:
+ *
+ * <ol>
+ * <li>the block offsets and front coded words of the {@link TermDictionary}</li>
+ * <li>where the postings of each word start</li>
+ * <li>where the location of each document starts, followed by the locations in
+ * sorted order</li>
+ * <li>the word count of each document</li>
+ * <li>the document id and number of positions of each posting</li>
+ * <li>where the positions of each posting start, followed by the positions as
+ * variable-byte encoded gaps</li>
+ * </ol>
+ *
+ * All values are big-endian. Searches only need the number of positions of
+ * each posting, so the compressed positions are only decoded when the positions
+ * themselves are asked for.
+ */
+public class MappedInvertedIndex extends ReadOnlyInvertedIndex {
+	/**
+	 * Identifies a binary index file
+	 */
+	static final int MAGIC = 0x53454958;
+
+	/**
+	 * The version of the file format
+	 */
+	static final int VERSION = 1;
+
+	/**
+	 * The size of the header in bytes
+	 */
+	static final int HEADER_SIZE = 64;
+
+	/** Index of the dictionary block offsets section in a layout */
+	static final int BLOCKS = 0;
+
+	/** Index of the dictionary words section in a layout */
+	static final int DICTIONARY = 1;
+
+	/** Index of the word offsets section in a layout */
+	static final int WORD_OFFSETS = 2;
+
+	/** Index of the location offsets section in a layout */
+	static final int LOCATION_OFFSETS = 3;
+
+	/** Index of the locations section in a layout */
+	static final int LOCATIONS = 4;
+
+	/** Index of the word counts section in a layout */
+	static final int WORD_COUNTS = 5;
+
+	/** Index of the posting documents section in a layout */
+	static final int DOCUMENTS = 6;
+
+	/** Index of the posting position counts section in a layout */
+	static final int COUNTS = 7;
+
+	/** Index of the position offsets section in a layout */
+	static final int POSITION_OFFSETS = 8;
+
+	/** Index of the positions section in a layout */
+	static final int POSITIONS = 9;
+
+	/** Index of the end of the file in a layout */
+	static final int END = 10;
+
+	/**
+	 * The index file
+	 */
+	private final Path path;
+
+	/**
+	 * All of the words in the index, numbered in sorted order
+	 */
+	private final TermDictionary words;
+
+	/**
+	 * Where the postings of each word start, as ints
+	 */
+	private final Section wordOffsets;
+
+	/**
+	 * The document id of each posting, as ints
+	 */
+	private final Section documents;
+
+	/**
+	 * The number of positions of each posting, as ints
+	 */
+	private final Section counts;
+
+	/**
+	 * Where the encoded positions of each posting start, as longs
+	 */
+	private final Section positionOffsets;
+
+	/**
+	 * The positions of every posting, as variable-byte encoded gaps
+	 */
+	private final Section positions;
+
+	/**
+	 * Where the location of each document id starts
+	 */
+	private final IntBuffer locationOffsets;
+
+	/**
+	 * The characters of every location, in sorted order
+	 */
+	private final CharBuffer locations;
+
+	/**
+	 * The word count of each document id, which every search needs
+	 */
+	private final int[] wordCounts;
+
+	/**
+	 * The number of positions in the whole index
+	 */
+	private final long numPositions;
+
+	/**
+	 * Maps an index file. Only intended to be called by {@link #open(Path)}.
+	 *
+	 * @param path    - the index file
+	 * @param channel - the open index file
+	 * @throws IOException if the file cannot be mapped or is not a valid index
+	 */
+	private MappedInvertedIndex(Path path, FileChannel channel) throws IOException {
+		this.path = path;
+
+		if (channel.size() < HEADER_SIZE) {
+			throw new IOException("Not an index file, too short for a header.");
+		}
+
+		ByteBuffer header = channel.map(MapMode.READ_ONLY, 0, HEADER_SIZE);
+		if (header.getInt() != MAGIC) {
+			throw new IOException("Not an index file, wrong magic number.");
+		}
+
+		int version = header.getInt();
+		if (version != VERSION) {
+			throw new IOException("Unsupported index file version: " + version);
+		}
+
+		int numWords = header.getInt();
+		int numDocuments = header.getInt();
+		int numPostings = header.getInt();
+		int numBlocks = header.getInt();
+		int dictionaryLength = header.getInt();
+		int locationLength = header.getInt();
+		this.numPositions = header.getLong();
+		long positionBytes = header.getLong();
+
+		long[] sizes = sizes(numWords, numDocuments, numPostings, numBlocks, dictionaryLength, locationLength,
+				positionBytes);
+		long[] layout = layout(sizes);
+
+		if (channel.size() != layout[END]) {
+			throw new IOException("Index file is " + channel.size() + " bytes, expected " + layout[END] + ".");
+		}
+
+		this.words = new TermDictionary(map(channel, layout, sizes, DICTIONARY).asCharBuffer(),
+				map(channel, layout, sizes, BLOCKS).asIntBuffer(), numWords);
+		this.locationOffsets = map(channel, layout, sizes, LOCATION_OFFSETS).asIntBuffer();
+		this.locations = map(channel, layout, sizes, LOCATIONS).asCharBuffer();
+
+		this.wordCounts = new int[numDocuments];
+		map(channel, layout, sizes, WORD_COUNTS).asIntBuffer().get(wordCounts);
+
+		this.wordOffsets = new Section(channel, layout[WORD_OFFSETS], sizes[WORD_OFFSETS]);
+		this.documents = new Section(channel, layout[DOCUMENTS], sizes[DOCUMENTS]);
+		this.counts = new Section(channel, layout[COUNTS], sizes[COUNTS]);
+		this.positionOffsets = new Section(channel, layout[POSITION_OFFSETS], sizes[POSITION_OFFSETS]);
+		this.positions = new Section(channel, layout[POSITIONS], sizes[POSITIONS]);
+	}
+
+	/**
+	 * Opens a binary index file written by {@link InvertedIndex#writeBinary(Path)}.
+	 * The file is mapped into memory and closed right away; the mapping stays
+	 * valid for as long as the returned index is in use.
+	 *
+	 * @param path - the index file
+	 * @return an index serving searches directly from the file
+	 * @throws IOException if the file cannot be read or is not a valid index
+	 */
+	public static MappedInvertedIndex open(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			return new MappedInvertedIndex(path, channel);
+		}
+	}
+
+	/**
+	 * Merges several index files into a new one without reading any of them into
+	 * memory. Only the words, locations, and word counts of the merged index are
+	 * kept in memory; the postings are merged one word at a time into temporary
+	 * files next to the output, which are then copied into place. Like
+	 * {@link FrozenInvertedIndex#merge(List)}, the positions of a location found
+	 * in more than one index are merged and its largest word count is kept.
+	 * Documents removed from an index are left out, along with any words left
+	 * without documents.
+	 *
+	 * @param runs    - the indexes to merge
+	 * @param removed - the locations removed from each index, in the same order
+	 *                as the indexes
+	 * @param output  - the index file to write
+	 * @throws IOException if an IO error occurs
+	 */
+	static void merge(List<MappedInvertedIndex> runs, List<? extends Set<String>> removed, Path output)
+			throws IOException {
+		// merge the sorted locations, keeping the largest word count of each
+		int numDocuments = 0;
+		for (MappedInvertedIndex run : runs) {
+			numDocuments = Math.addExact(numDocuments, run.wordCounts.length);
+		}
+
+		String[] locations = new String[numDocuments];
+		int copied = 0;
+		for (int i = 0; i < runs.size(); i++) {
+			MappedInvertedIndex run = runs.get(i);
+			for (int document = 0; document < run.wordCounts.length; document++) {
+				String location = run.location(document);
+				if (!removed.get(i).contains(location)) {
+					locations[copied++] = location;
+				}
+			}
+		}
+		Arrays.sort(locations, 0, copied);
+
+		int unique = 0;
+		for (int i = 0; i < copied; i++) {
+			if (unique == 0 || !locations[i].equals(locations[unique - 1])) {
+				locations[unique++] = locations[i];
+			}
+		}
+		locations = Arrays.copyOf(locations, unique);
+
+		int[] wordCounts = new int[unique];
+		Arrays.fill(wordCounts, Integer.MIN_VALUE);
+		int[][] remaps = new int[runs.size()][];
+		for (int i = 0; i < remaps.length; i++) {
+			MappedInvertedIndex run = runs.get(i);
+			remaps[i] = new int[run.wordCounts.length];
+			for (int document = 0; document < remaps[i].length; document++) {
+				String location = run.location(document);
+				if (removed.get(i).contains(location)) {
+					remaps[i][document] = -1;
+					continue;
+				}
+
+				int merged = Arrays.binarySearch(locations, location);
+				remaps[i][document] = merged;
+				wordCounts[merged] = Math.max(wordCounts[merged], run.wordCounts[document]);
+			}
+		}
+
+		// k-way merge the sorted words of every run
+		PriorityQueue<FrozenInvertedIndex.WordCursor> queue = new PriorityQueue<>();
+		for (int i = 0; i < runs.size(); i++) {
+			var cursor = new FrozenInvertedIndex.WordCursor(i, runs.get(i).words.iterator());
+			if (cursor.advance()) {
+				queue.add(cursor);
+			}
+		}
+
+		// the postings are too large to keep in memory, so each of their sections is
+		// written to its own temporary file and copied into place at the end
+		Path directory = output.toAbsolutePath().getParent();
+		Path[] temporary = new Path[END - DOCUMENTS];
+
+		try {
+			for (int i = 0; i < temporary.length; i++) {
+				temporary[i] = Files.createTempFile(directory, "postings", ".tmp");
+			}
+
+			List<String> words = new ArrayList<>();
+			int[] wordOffsets = new int[64];
+			List<FrozenInvertedIndex.WordCursor> group = new ArrayList<>();
+			MappedInvertedIndex[] matchedRuns = new MappedInvertedIndex[runs.size()];
+			int[] matchedPostings = new int[runs.size()];
+			int posting = 0;
+			long numPositions = 0;
+			long positionBytes = 0;
+
+			try (DataOutputStream documentsOut = newOutput(temporary[0]);
+					DataOutputStream countsOut = newOutput(temporary[COUNTS - DOCUMENTS]);
+					DataOutputStream offsetsOut = newOutput(temporary[POSITION_OFFSETS - DOCUMENTS]);
+					DataOutputStream positionsOut = newOutput(temporary[POSITIONS - DOCUMENTS])) {
+				offsetsOut.writeLong(positionBytes);
+
+				while (!queue.isEmpty()) {
+					String word = queue.peek().word;
+					group.clear();
+					while (!queue.isEmpty() && queue.peek().word.equals(word)) {
+						group.add(queue.poll());
+					}
+
+					if (words.size() + 1 >= wordOffsets.length) {
+						wordOffsets = Arrays.copyOf(wordOffsets, wordOffsets.length * 2);
+					}
+					wordOffsets[words.size()] = posting;
+					words.add(word);
+
+					for (var cursor : group) {
+						MappedInvertedIndex run = runs.get(cursor.snapshot);
+						cursor.posting = run.wordOffsets.getInt(cursor.ordinal);
+						cursor.end = run.wordOffsets.getInt(cursor.ordinal + 1);
+					}
+
+					// the postings of each run are in increasing order, so repeatedly take the
+					// smallest merged document id among the runs
+					while (true) {
+						int document = Integer.MAX_VALUE;
+						for (var cursor : group) {
+							MappedInvertedIndex run = runs.get(cursor.snapshot);
+							while (cursor.posting < cursor.end && remaps[cursor.snapshot][run.documents.getInt(cursor.posting)] < 0) {
+								cursor.posting++;
+							}
+							if (cursor.posting < cursor.end) {
+								document = Math.min(document, remaps[cursor.snapshot][run.documents.getInt(cursor.posting)]);
+							}
+						}
+
+						if (document == Integer.MAX_VALUE) {
+							break;
+						}
+
+						if (posting == Integer.MAX_VALUE - 8) {
+							throw new IOException("Too many postings to merge into " + output);
+						}
+
+						int found = 0;
+						for (var cursor : group) {
+							MappedInvertedIndex run = runs.get(cursor.snapshot);
+							if (cursor.posting < cursor.end
+									&& remaps[cursor.snapshot][run.documents.getInt(cursor.posting)] == document) {
+								matchedRuns[found] = run;
+								matchedPostings[found++] = cursor.posting++;
+							}
+						}
+
+						int count;
+						if (found == 1) {
+							// positions are encoded relative to their posting, so they copy as is
+							MappedInvertedIndex run = matchedRuns[0];
+							int p = matchedPostings[0];
+							long end = run.positionOffsets.getLong(p + 1);
+							for (long i = run.positionOffsets.getLong(p); i < end; i++) {
+								positionsOut.writeByte(run.positions.get(i));
+								positionBytes++;
+							}
+							count = run.counts.getInt(p);
+						} else {
+							// the same document in several runs may repeat positions
+							int[] positions = new int[0];
+							for (int i = 0; i < found; i++) {
+								int[] decoded = matchedRuns[i].decodePositions(matchedPostings[i]);
+								int length = positions.length;
+								positions = Arrays.copyOf(positions, length + decoded.length);
+								System.arraycopy(decoded, 0, positions, length, decoded.length);
+							}
+							Arrays.sort(positions);
+
+							count = 0;
+							for (int i = 0; i < positions.length; i++) {
+								if (i == 0 || positions[i] != positions[count - 1]) {
+									positions[count++] = positions[i];
+								}
+							}
+							positionBytes += writePositions(positionsOut, positions, 0, count);
+						}
+
+						documentsOut.writeInt(document);
+						countsOut.writeInt(count);
+						offsetsOut.writeLong(positionBytes);
+						numPositions += count;
+						posting++;
+					}
+
+					// a word only found in removed documents is left out
+					if (posting == wordOffsets[words.size() - 1]) {
+						words.remove(words.size() - 1);
+					}
+
+					for (var cursor : group) {
+						if (cursor.advance()) {
+							queue.add(cursor);
+						}
+					}
+				}
+			}
+
+			wordOffsets[words.size()] = posting;
+			wordOffsets = Arrays.copyOf(wordOffsets, words.size() + 1);
+
+			try (DataOutputStream out = newOutput(output)) {
+				long[] layout = writeHead(out, new TermDictionary(words), wordOffsets, locations, wordCounts, posting,
+						numPositions, positionBytes);
+
+				long written = layout[DOCUMENTS];
+				for (int section = DOCUMENTS; section < END; section++) {
+					written = pad(out, written, layout[section]);
+					written += Files.copy(temporary[section - DOCUMENTS], out);
+				}
+			}
+		} finally {
+			for (Path path : temporary) {
+				if (path != null) {
+					Files.deleteIfExists(path);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Calculates the size of each section of an index file.
+	 *
+	 * @param numWords         - the number of words
+	 * @param numDocuments     - the number of documents
+	 * @param numPostings      - the number of postings
+	 * @param numBlocks        - the number of term dictionary blocks
+	 * @param dictionaryLength - the number of characters of encoded words
+	 * @param locationLength   - the number of characters of every location
+	 * @param positionBytes    - the number of bytes of encoded positions
+	 * @return the size of each section in bytes, indexed by section
+	 */
+	static long[] sizes(int numWords, int numDocuments, int numPostings, int numBlocks, int dictionaryLength,
+			int locationLength, long positionBytes) {
+		long[] sizes = new long[END];
+		sizes[BLOCKS] = numBlocks * (long) Integer.BYTES;
+		sizes[DICTIONARY] = dictionaryLength * (long) Character.BYTES;
+		sizes[WORD_OFFSETS] = (numWords + 1L) * Integer.BYTES;
+		sizes[LOCATION_OFFSETS] = (numDocuments + 1L) * Integer.BYTES;
+		sizes[LOCATIONS] = locationLength * (long) Character.BYTES;
+		sizes[WORD_COUNTS] = numDocuments * (long) Integer.BYTES;
+		sizes[DOCUMENTS] = numPostings * (long) Integer.BYTES;
+		sizes[COUNTS] = numPostings * (long) Integer.BYTES;
+		sizes[POSITION_OFFSETS] = (numPostings + 1L) * Long.BYTES;
+		sizes[POSITIONS] = positionBytes;
+		return sizes;
+	}
+
+	/**
+	 * Calculates where each section of an index file starts, leaving padding
+	 * after each section so the next one starts on an 8 byte boundary.
+	 *
+	 * @param sizes - the size of each section, as returned by {@link #sizes}
+	 * @return the byte offset where each section starts, indexed by section, and
+	 *         the size of the file at {@link #END}
+	 */
+	static long[] layout(long[] sizes) {
+		long[] layout = new long[END + 1];
+		long offset = HEADER_SIZE;
+		for (int section = 0; section < END; section++) {
+			layout[section] = offset;
+			offset = (offset + sizes[section] + 7) & ~7L;
+		}
+		layout[END] = layout[POSITIONS] + sizes[POSITIONS];
+		return layout;
+	}
+
+	/**
+	 * Maps a section of an index file that must fit in a single buffer.
+	 *
+	 * @param channel - the open index file
+	 * @param layout  - where each section starts
+	 * @param sizes   - the size of each section
+	 * @param section - the section to map
+	 * @return the mapped section
+	 * @throws IOException if the section cannot be mapped
+	 */
+	private static ByteBuffer map(FileChannel channel, long[] layout, long[] sizes, int section) throws IOException {
+		long size = sizes[section];
+		if (size > Integer.MAX_VALUE) {
+			throw new IOException("Index file section " + section + " is too large to map: " + size);
+		}
+		return channel.map(MapMode.READ_ONLY, layout[section], size);
+	}
+
+	/**
+	 * Writes the header of an index file followed by every section before the
+	 * postings. These sections only depend on the words and locations, so they
+	 * are small enough to keep in memory even when the postings are not.
+	 *
+	 * @param out           - the output to write to
+	 * @param words         - the words of the index
+	 * @param wordOffsets   - where the postings of each word start, followed by
+	 *                      the number of postings
+	 * @param locations     - the locations in sorted order
+	 * @param wordCounts    - the word count of each location
+	 * @param numPostings   - the number of postings
+	 * @param numPositions  - the number of positions
+	 * @param positionBytes - the number of bytes of encoded positions
+	 * @return where each section starts, as returned by {@link #layout(long[])};
+	 *         the postings must be written next
+	 * @throws IOException if an IO error occurs
+	 */
+	static long[] writeHead(DataOutputStream out, TermDictionary words, int[] wordOffsets, String[] locations,
+			int[] wordCounts, int numPostings, long numPositions, long positionBytes) throws IOException {
+		CharBuffer data = words.data();
+		IntBuffer blocks = words.blocks();
+
+		int locationLength = 0;
+		for (String location : locations) {
+			locationLength = Math.addExact(locationLength, location.length());
+		}
+
+		long[] layout = layout(sizes(words.size(), locations.length, numPostings, blocks.remaining(), data.remaining(),
+				locationLength, positionBytes));
+
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeInt(words.size());
+		out.writeInt(locations.length);
+		out.writeInt(numPostings);
+		out.writeInt(blocks.remaining());
+		out.writeInt(data.remaining());
+		out.writeInt(locationLength);
+		out.writeLong(numPositions);
+		out.writeLong(positionBytes);
+		long written = 48;
+
+		written = pad(out, written, layout[BLOCKS]);
+		while (blocks.hasRemaining()) {
+			out.writeInt(blocks.get());
+		}
+		written += (long) blocks.limit() * Integer.BYTES;
+
+		written = pad(out, written, layout[DICTIONARY]);
+		while (data.hasRemaining()) {
+			out.writeChar(data.get());
+		}
+		written += (long) data.limit() * Character.BYTES;
+
+		written = pad(out, written, layout[WORD_OFFSETS]);
+		for (int offset : wordOffsets) {
+			out.writeInt(offset);
+		}
+		written += (long) wordOffsets.length * Integer.BYTES;
+
+		written = pad(out, written, layout[LOCATION_OFFSETS]);
+		int locationOffset = 0;
+		out.writeInt(locationOffset);
+		for (String location : locations) {
+			locationOffset += location.length();
+			out.writeInt(locationOffset);
+		}
+		written += (locations.length + 1L) * Integer.BYTES;
+
+		written = pad(out, written, layout[LOCATIONS]);
+		for (String location : locations) {
+			out.writeChars(location);
+		}
+		written += (long) locationLength * Character.BYTES;
+
+		written = pad(out, written, layout[WORD_COUNTS]);
+		for (int count : wordCounts) {
+			out.writeInt(count);
+		}
+		written += (long) wordCounts.length * Integer.BYTES;
+
+		pad(out, written, layout[DOCUMENTS]);
+		return layout;
+	}
+
+	/**
+	 * Writes positions as variable-byte encoded gaps, low 7 bits first.
+	 *
+	 * @param out       - the output to write to
+	 * @param positions - the positions in increasing order
+	 * @param start     - the first position to write (inclusive)
+	 * @param end       - the last position to write (exclusive)
+	 * @return the number of bytes written
+	 * @throws IOException if an IO error occurs
+	 */
+	static long writePositions(DataOutputStream out, int[] positions, int start, int end) throws IOException {
+		long written = 0;
+		int previous = 0;
+		for (int i = start; i < end; i++) {
+			int gap = positions[i] - previous;
+			while ((gap & ~0x7F) != 0) {
+				out.writeByte((gap & 0x7F) | 0x80);
+				gap >>>= 7;
+				written++;
+			}
+			out.writeByte(gap);
+			written++;
+			previous = positions[i];
+		}
+		return written;
+	}
+
+	/**
+	 * Returns the number of bytes a gap between positions takes once variable-byte
+	 * encoded.
+	 *
+	 * @param gap - the gap between positions
+	 * @return the number of bytes, between 1 and 5
+	 */
+	static int encodedSize(int gap) {
+		int size = 1;
+		while ((gap & ~0x7F) != 0) {
+			gap >>>= 7;
+			size++;
+		}
+		return size;
+	}
+
+	/**
+	 * Writes zeros until the next section of an index file.
+	 *
+	 * @param out     - the output to write to
+	 * @param written - the number of bytes written so far
+	 * @param target  - where the next section starts
+	 * @return the number of bytes written after padding
+	 * @throws IOException if an IO error occurs
+	 */
+	static long pad(DataOutputStream out, long written, long target) throws IOException {
+		for (; written < target; written++) {
+			out.writeByte(0);
+		}
+		return written;
+	}
+
+	/**
+	 * Opens a buffered output to write part of an index file.
+	 *
+	 * @param path - the file to write
+	 * @return the output
+	 * @throws IOException if the file cannot be opened
+	 */
+	private static DataOutputStream newOutput(Path path) throws IOException {
+		return new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), 1 << 16));
+	}
+
+	@Override
+	List<SearchResult> select(Set<String> queries, boolean partial, int limit) {
+		ScoreAccumulator scores = accumulator(wordCounts.length);
+
+		for (String query : queries) {
+			if (partial) {
+				// all words starting with the query are numbered next to each other
+				int end = words.prefixEnd(query);
+				for (int word = words.prefixStart(query); word < end; word++) {
+					searchHelper(scores, word);
+				}
+			} else {
+				int word = words.find(query);
+				if (word >= 0) {
+					searchHelper(scores, word);
+				}
+			}
+		}
+
+		return results(scores, limit, wordCounts, this::location);
+	}
+
+	/**
+	 * Adds the matches of a single word to the scores.
+	 *
+	 * @param scores - the matches found so far
+	 * @param word   - index of the word to search for
+	 */
+	private void searchHelper(ScoreAccumulator scores, int word) {
+		int end = wordOffsets.getInt(word + 1);
+		for (int posting = wordOffsets.getInt(word); posting < end; posting++) {
+			scores.add(documents.getInt(posting), counts.getInt(posting));
+		}
+	}
+
+	/**
+	 * Reads the location of a document from the file.
+	 *
+	 * @param document - the document id
+	 * @return the location
+	 */
+	private String location(int document) {
+		int start = locationOffsets.get(document);
+		char[] chars = new char[locationOffsets.get(document + 1) - start];
+		locations.get(start, chars);
+		return new String(chars);
+	}
+
+	/**
+	 * Finds the document id of a location.
+	 *
+	 * @param location - the location to look up
+	 * @return the document id, or a negative number if the location is not found
+	 */
+	private int findDocument(String location) {
+		int low = 0;
+		int high = wordCounts.length - 1;
+
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			int comparison = location(middle).compareTo(location);
+
+			if (comparison < 0) {
+				low = middle + 1;
+			} else if (comparison > 0) {
+				high = middle - 1;
+			} else {
+				return middle;
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Finds the posting of a word in a location.
+	 *
+	 * @param word     - word to look up
+	 * @param location - location to look up
+	 * @return the index of the posting, or -1 if the word does not occur in the
+	 *         location
+	 */
+	private int findPosting(String word, String location) {
+		int found = words.find(word);
+		if (found < 0) {
+			return -1;
+		}
+
+		int document = findDocument(location);
+		if (document < 0) {
+			return -1;
+		}
+
+		int low = wordOffsets.getInt(found);
+		int high = wordOffsets.getInt(found + 1) - 1;
+
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			int comparison = Integer.compare(documents.getInt(middle), document);
+
+			if (comparison < 0) {
+				low = middle + 1;
+			} else if (comparison > 0) {
+				high = middle - 1;
+			} else {
+				return middle;
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Decodes the positions of a posting.
+	 *
+	 * @param posting - index of the posting
+	 * @return the positions in increasing order
+	 */
+	private int[] decodePositions(int posting) {
+		int[] decoded = new int[counts.getInt(posting)];
+		long offset = positionOffsets.getLong(posting);
+		int position = 0;
+
+		for (int i = 0; i < decoded.length; i++) {
+			int gap = 0;
+			int shift = 0;
+			byte next;
+			do {
+				next = positions.get(offset++);
+				gap |= (next & 0x7F) << shift;
+				shift += 7;
+			} while (next < 0);
+
+			position += gap;
+			decoded[i] = position;
+		}
+
+		return decoded;
+	}
+
+	/**
+	 * Reads the whole file into a snapshot held entirely in memory.
+	 *
+	 * @return an in-memory copy of this index
+	 */
+	@Override
+	public FrozenInvertedIndex freeze() {
+		if (numPositions > Integer.MAX_VALUE - 8) {
+			throw new IllegalStateException("Too many positions to freeze: " + numPositions);
+		}
+
+		int numWords = words.size();
+		int numPostings = wordOffsets.getInt(numWords);
+
+		int[] heapWordOffsets = new int[numWords + 1];
+		for (int word = 0; word <= numWords; word++) {
+			heapWordOffsets[word] = wordOffsets.getInt(word);
+		}
+
+		int[] heapDocuments = new int[numPostings];
+		int[] heapPositionOffsets = new int[numPostings + 1];
+		int[] heapPositions = new int[(int) numPositions];
+		int position = 0;
+
+		for (int posting = 0; posting < numPostings; posting++) {
+			heapDocuments[posting] = documents.getInt(posting);
+			heapPositionOffsets[posting] = position;
+
+			int[] decoded = decodePositions(posting);
+			System.arraycopy(decoded, 0, heapPositions, position, decoded.length);
+			position += decoded.length;
+		}
+		heapPositionOffsets[numPostings] = position;
+
+		String[] heapLocations = new String[wordCounts.length];
+		for (int document = 0; document < heapLocations.length; document++) {
+			heapLocations[document] = location(document);
+		}
+
+		CharBuffer data = words.data();
+		char[] heapData = new char[data.remaining()];
+		data.get(heapData);
+
+		IntBuffer blocks = words.blocks();
+		int[] heapBlocks = new int[blocks.remaining()];
+		blocks.get(heapBlocks);
+
+		TermDictionary heapWords = new TermDictionary(CharBuffer.wrap(heapData), IntBuffer.wrap(heapBlocks), numWords);
+		return new FrozenInvertedIndex(heapWords, heapWordOffsets, heapDocuments, heapPositionOffsets, heapPositions,
+				heapLocations, wordCounts.clone());
+	}
+
+	/**
+	 * Copies the index into an index that can be modified, for example to update
+	 * an index loaded from a file instead of rebuilding it. The positions are
+	 * decoded straight from the file into lists the target keeps, so the index is
+	 * only copied into memory once.
+	 *
+	 * @param target - the index to add every document to
+	 */
+	public void thaw(InvertedIndex target) {
+		// the postings are stored by word, but are added to the target by document
+		List<Map<String, PostingList>> postings = new ArrayList<>(wordCounts.length);
+		for (int document = 0; document < wordCounts.length; document++) {
+			postings.add(new HashMap<>());
+		}
+
+		int ordinal = 0;
+		for (String word : words) {
+			for (int posting = wordOffsets.getInt(ordinal); posting < wordOffsets.getInt(ordinal + 1); posting++) {
+				PostingList list = new PostingList();
+				for (int position : decodePositions(posting)) {
+					list.insert(position);
+				}
+				postings.get(documents.getInt(posting)).put(word, list);
+			}
+			ordinal++;
+		}
+
+		for (int document = 0; document < wordCounts.length; document++) {
+			// a document without any words is never given a word count when added
+			target.insertDocument(location(document), postings.get(document), wordCounts[document]);
+			postings.set(document, null);
+		}
+	}
+
+	/**
+	 * Returns the index as JSON, which requires reading the whole file.
+	 *
+	 * @return the index as JSON
+	 */
+	@Override
+	public String toString() {
+		return freeze().toString();
+	}
+
+	@Override
+	public boolean containsCount(String location) {
+		return findDocument(location) >= 0;
+	}
+
+	@Override
+	public boolean containsWord(String word) {
+		return words.find(word) >= 0;
+	}
+
+	@Override
+	public boolean containsLocation(String word, String location) {
+		return findPosting(word, location) >= 0;
+	}
+
+	@Override
+	public boolean containsPosition(String word, String location, int position) {
+		int posting = findPosting(word, location);
+		return posting >= 0 && Arrays.binarySearch(decodePositions(posting), position) >= 0;
+	}
+
+	@Override
+	public int numUniqueWords() {
+		return words.size();
+	}
+
+	@Override
+	public int numCounts() {
+		return wordCounts.length;
+	}
+
+	@Override
+	public int numLocations(String word) {
+		int found = words.find(word);
+		return found >= 0 ? wordOffsets.getInt(found + 1) - wordOffsets.getInt(found) : 0;
+	}
+
+	@Override
+	public int numPositions(String word, String location) {
+		int posting = findPosting(word, location);
+		return posting >= 0 ? counts.getInt(posting) : 0;
+	}
+
+	@Override
+	public Integer getWordCount(String file) {
+		int document = findDocument(file);
+		return document >= 0 ? wordCounts[document] : 0;
+	}
+
+	@Override
+	public Set<Integer> getPositions(String word, String file) {
+		int posting = findPosting(word, file);
+		if (posting < 0) {
+			return Collections.emptySet();
+		}
+
+		TreeSet<Integer> found = new TreeSet<>();
+		for (int position : decodePositions(posting)) {
+			found.add(position);
+		}
+		return Collections.unmodifiableSet(found);
+	}
+
+	@Override
+	public Set<String> getLocations(String word) {
+		int found = words.find(word);
+		if (found < 0) {
+			return Collections.emptySet();
+		}
+
+		TreeSet<String> wordLocations = new TreeSet<>();
+		int end = wordOffsets.getInt(found + 1);
+		for (int posting = wordOffsets.getInt(found); posting < end; posting++) {
+			wordLocations.add(location(documents.getInt(posting)));
+		}
+		return Collections.unmodifiableSet(wordLocations);
+	}
+
+	@Override
+	public NavigableSet<String> getWords() {
+		TreeSet<String> sorted = new TreeSet<>();
+		words.forEach(sorted::add);
+		return Collections.unmodifiableNavigableSet(sorted);
+	}
+
+	@Override
+	public Map<String, Integer> getWordCounts() {
+		TreeMap<String, Integer> found = new TreeMap<>();
+		for (int document = 0; document < wordCounts.length; document++) {
+			found.put(location(document), wordCounts[document]);
+		}
+		return Collections.unmodifiableMap(found);
+	}
+
+	/**
+	 * Copies the file this index was opened from, which is already in the binary
+	 * format.
+	 *
+	 * @param path - the path to write to
+	 * @throws IOException if an IO error occurs
+	 */
+	@Override
+	public void writeBinary(Path path) throws IOException {
+		if (!Files.exists(path) || !Files.isSameFile(this.path, path)) {
+			Files.copy(this.path, path, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/**
+	 * Writes the index as JSON, which requires reading the whole file.
+	 *
+	 * @param path - the path to write to
+	 * @throws IOException if an IO error occurs
+	 */
+	@Override
+	public void writeJson(Path path) throws IOException {
+		freeze().writeJson(path);
+	}
+
+	/**
+	 * A section of the index file mapped as one or more buffers, since a single
+	 * mapped buffer cannot be larger than 2 GB.
+	 */
+	private static class Section {
+		/**
+		 * The number of bits of an offset within a chunk
+		 */
+		private static final int CHUNK_BITS = 30;
+
+		/**
+		 * The mask for the offset within a chunk
+		 */
+		private static final long CHUNK_MASK = (1L << CHUNK_BITS) - 1;
+
+		/**
+		 * The mapped chunks of the section, each 1 GB except for the last
+		 */
+		private final ByteBuffer[] chunks;
+
+		/**
+		 * Maps a section of an index file.
+		 *
+		 * @param channel - the open index file
+		 * @param start   - where the section starts
+		 * @param size    - the size of the section in bytes
+		 * @throws IOException if the section cannot be mapped
+		 */
+		public Section(FileChannel channel, long start, long size) throws IOException {
+			this.chunks = new ByteBuffer[(int) Math.max(1, (size + CHUNK_MASK) >>> CHUNK_BITS)];
+			for (int i = 0; i < chunks.length; i++) {
+				long offset = (long) i << CHUNK_BITS;
+				chunks[i] = channel.map(MapMode.READ_ONLY, start + offset, Math.min(CHUNK_MASK + 1, size - offset));
+			}
+		}
+
+		/**
+		 * Reads a byte. Chunks are a multiple of 8 bytes, so an aligned int or long
+		 * never spans two chunks.
+		 *
+		 * @param offset - the byte offset in the section
+		 * @return the byte
+		 */
+		public byte get(long offset) {
+			return chunks[(int) (offset >>> CHUNK_BITS)].get((int) (offset & CHUNK_MASK));
+		}
+
+		/**
+		 * Reads an int.
+		 *
+		 * @param index - the index of the int in the section
+		 * @return the int
+		 */
+		public int getInt(long index) {
+			long offset = index * Integer.BYTES;
+			return chunks[(int) (offset >>> CHUNK_BITS)].getInt((int) (offset & CHUNK_MASK));
+		}
+
+		/**
+		 * Reads a long.
+		 *
+		 * @param index - the index of the long in the section
+		 * @return the long
+		 */
+		public long getLong(long index) {
+			long offset = index * Long.BYTES;
+			return chunks[(int) (offset >>> CHUNK_BITS)].getLong((int) (offset & CHUNK_MASK));
+		}
+	}
+}
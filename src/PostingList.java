@@ -0,0 +1,295 @@
+package edu.usfca.cs272;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * Compact sorted set of the positions a word occurs at within a single
+ * location. Positions are stored as variable-byte encoded gaps in a growable
+ * byte array instead of boxed {@link Integer} objects, so a typical posting
+ * takes one or two bytes instead of a tree node.
+ *
+ * Positions are expected to arrive in increasing order (as they do while a
+ * file is being indexed), which makes every insert a cheap append. Inserting
+ * out of order is still supported, but requires the list to be re-encoded.
+ */
+public class PostingList extends AbstractSet<Integer> {
+	/**
+	 * The smallest capacity (in bytes) allocated for a non-empty list
+	 */
+	private static final int MIN_CAPACITY = 4;
+
+	/**
+	 * The variable-byte encoded gaps between positions
+	 */
+	private byte[] bytes;
+
+	/**
+	 * The number of bytes in use
+	 */
+	private int length;
+
+	/**
+	 * The number of positions stored
+	 */
+	private int size;
+
+	/**
+	 * The largest position stored, only meaningful if size is greater than 0
+	 */
+	private int last;
+
+	/**
+	 * Creates an empty posting list
+	 */
+	public PostingList() {
+		this.bytes = new byte[MIN_CAPACITY];
+		this.length = 0;
+		this.size = 0;
+		this.last = 0;
+	}
+
+	/**
+	 * Adds a position to this list if it is not already present.
+	 *
+	 * @param position - the position to add
+	 * @return true if the position was added
+	 */
+	public boolean insert(int position) {
+		if (size == 0 || position > last) {
+			append(position);
+			return true;
+		}
+
+		if (position == last) {
+			return false;
+		}
+
+		// slow path: decode, insert in sorted order, and re-encode
+		int[] positions = toIntArray();
+		int found = Arrays.binarySearch(positions, position);
+
+		if (found >= 0) {
+			return false;
+		}
+
+		int insertAt = -found - 1;
+		clear();
+
+		for (int i = 0; i < insertAt; i++) {
+			append(positions[i]);
+		}
+		append(position);
+		for (int i = insertAt; i < positions.length; i++) {
+			append(positions[i]);
+		}
+
+		return true;
+	}
+
+	/**
+	 * Adds all of the positions from another list to this list. If every position
+	 * in the other list is larger than the positions in this list, the positions
+	 * are appended without decoding this list.
+	 *
+	 * @param other - the list of positions to add
+	 * @return true if this list changed
+	 */
+	public boolean insertAll(PostingList other) {
+		boolean changed = false;
+		var it = other.iterator();
+
+		while (it.hasNext()) {
+			changed |= insert(it.nextInt());
+		}
+
+		return changed;
+	}
+
+	/**
+	 * Appends all of the positions from another list, each shifted by an offset.
+	 * Every shifted position must be larger than the positions in this list. The
+	 * gaps between the positions do not change, so only the first position is
+	 * re-encoded and the rest of the other list is copied as is.
+	 *
+	 * @param other  - the list of positions to append
+	 * @param offset - the amount added to each position
+	 * @throws IllegalArgumentException if a shifted position is not larger than
+	 *                                  the positions in this list
+	 */
+	public void appendAll(PostingList other, int offset) {
+		if (other.size == 0) {
+			return;
+		}
+
+		// the first gap of the other list is its first position
+		int first = 0;
+		int shift = 0;
+		int read = 0;
+		byte next;
+		do {
+			next = other.bytes[read++];
+			first |= (next & 0x7F) << shift;
+			shift += 7;
+		} while (next < 0);
+
+		if (size > 0 && first + offset <= last) {
+			throw new IllegalArgumentException("Position " + (first + offset) + " is not after " + last);
+		}
+		append(first + offset);
+
+		int rest = other.length - read;
+		if (length + rest > bytes.length) {
+			bytes = Arrays.copyOf(bytes, Math.max(bytes.length + (bytes.length >> 1), length + rest));
+		}
+		System.arraycopy(other.bytes, read, bytes, length, rest);
+
+		length += rest;
+		size += other.size - 1;
+		last = other.last + offset;
+	}
+
+	/**
+	 * Checks if a position is stored in this list.
+	 *
+	 * @param position - the position to look for
+	 * @return true if the position is stored
+	 */
+	public boolean contains(int position) {
+		if (size == 0 || position > last) {
+			return false;
+		}
+
+		var it = iterator();
+		while (it.hasNext()) {
+			int next = it.nextInt();
+			if (next >= position) {
+				return next == position;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public boolean contains(Object o) {
+		return o instanceof Integer position && contains(position.intValue());
+	}
+
+	@Override
+	public boolean add(Integer position) {
+		return insert(position);
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the largest position stored.
+	 *
+	 * @return the largest position
+	 * @throws NoSuchElementException if the list is empty
+	 */
+	public int last() {
+		if (size == 0) {
+			throw new NoSuchElementException();
+		}
+		return last;
+	}
+
+	@Override
+	public void clear() {
+		length = 0;
+		size = 0;
+		last = 0;
+	}
+
+	/**
+	 * Shrinks the backing array to the number of bytes in use.
+	 */
+	public void trim() {
+		if (length < bytes.length) {
+			bytes = Arrays.copyOf(bytes, Math.max(length, 1));
+		}
+	}
+
+	/**
+	 * Decodes all of the positions in increasing order.
+	 *
+	 * @return a new array of positions
+	 */
+	public int[] toIntArray() {
+		int[] positions = new int[size];
+		var it = iterator();
+		for (int i = 0; i < size; i++) {
+			positions[i] = it.nextInt();
+		}
+		return positions;
+	}
+
+	@Override
+	public PrimitiveIterator.OfInt iterator() {
+		return new PrimitiveIterator.OfInt() {
+			/** The offset of the next encoded gap */
+			private int offset = 0;
+
+			/** The number of positions decoded so far */
+			private int decoded = 0;
+
+			/** The last position decoded */
+			private int previous = 0;
+
+			@Override
+			public boolean hasNext() {
+				return decoded < size;
+			}
+
+			@Override
+			public int nextInt() {
+				if (decoded >= size) {
+					throw new NoSuchElementException();
+				}
+
+				int gap = 0;
+				int shift = 0;
+				byte b;
+
+				do {
+					b = bytes[offset++];
+					gap |= (b & 0x7F) << shift;
+					shift += 7;
+				} while (b < 0);
+
+				decoded++;
+				previous += gap;
+				return previous;
+			}
+		};
+	}
+
+	/**
+	 * Appends a position larger than every stored position.
+	 *
+	 * @param position - the position to append
+	 */
+	private void append(int position) {
+		// gaps are encoded as unsigned values, so wrapping subtraction is safe
+		int gap = size == 0 ? position : position - last;
+
+		if (length + 5 > bytes.length) {
+			bytes = Arrays.copyOf(bytes, Math.max(bytes.length + (bytes.length >> 1), length + 5));
+		}
+
+		while ((gap & ~0x7F) != 0) {
+			bytes[length++] = (byte) ((gap & 0x7F) | 0x80);
+			gap >>>= 7;
+		}
+		bytes[length++] = (byte) gap;
+
+		last = position;
+		size++;
+	}
+}
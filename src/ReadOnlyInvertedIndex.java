@@ -0,0 +1,453 @@
+package edu.usfca.cs272;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.function.IntFunction;
+
+/**
+ * The operations every inverted index supports for searching and reading it,
+ * without any way to modify it. {@link InvertedIndex} adds the methods that
+ * build and modify an index, while read-only snapshots such as
+ * {@link FrozenInvertedIndex} and {@link MappedInvertedIndex} only store what
+ * they need to answer these.
+ */
+public abstract class ReadOnlyInvertedIndex {
+	/**
+	 * Reusable score accumulator for the searches run by each thread
+	 */
+	private final ThreadLocal<ScoreAccumulator> accumulators;
+
+	/**
+	 * Initializes the state shared by every index.
+	 */
+	protected ReadOnlyInvertedIndex() {
+		accumulators = ThreadLocal.withInitial(ScoreAccumulator::new);
+	}
+
+	/**
+	 * Method that performs a search operation based on a set of queries.
+	 *
+	 * @param queries - a set of search queries to be used for searching.
+	 * @param partial - a boolean flag indicating whether to perform a partial
+	 *                search. If true, partial search is performed; if false, exact
+	 *                search is performed.
+	 * @return - a list of search results based on the provided queries.
+	 */
+	public List<SearchResult> search(Set<String> queries, boolean partial) {
+		return partial ? partialSearch(queries) : exactSearch(queries);
+	}
+
+	/**
+	 * Performs a search and returns only the best results. Rather than sorting
+	 * every match, the best results are selected with a heap bounded to the
+	 * limit, so only those results are ever sorted.
+	 *
+	 * @param queries - a set of search queries to be used for searching.
+	 * @param partial - whether to perform a partial search instead of an exact
+	 *                search
+	 * @param limit   - the maximum number of results to return, or 0 or less to
+	 *                return every result
+	 * @return - the first (at most) limit results of
+	 *         {@link #search(Set, boolean)}, in the same order
+	 */
+	public List<SearchResult> search(Set<String> queries, boolean partial, int limit) {
+		return select(queries, partial, limit);
+	}
+
+	/**
+	 * Method that finds matches from the inverted index data structure and generate
+	 * a search result for each match
+	 *
+	 * @param queries - the set of search terms to search
+	 * @return - a sorted list of search results
+	 */
+	public List<SearchResult> exactSearch(Set<String> queries) {
+		return select(queries, false, 0);
+	}
+
+	/**
+	 * Performs a partial search on the inverted index using word stems.
+	 *
+	 * @param partialQuery The query containing partial search terms (word stems).
+	 * @return A list of SearchResult objects, sorted by relevance.
+	 */
+	public List<SearchResult> partialSearch(Set<String> partialQuery) {
+		return select(partialQuery, true, 0);
+	}
+
+	/**
+	 * Finds the documents matching the queries and returns the best of them.
+	 * Every search method goes through this method, which each way of storing or
+	 * accessing the index implements.
+	 *
+	 * @param queries - the set of search terms to search
+	 * @param partial - whether to match words starting with a query instead of
+	 *                only the query itself
+	 * @param limit   - the maximum number of results to return, or 0 or less to
+	 *                return every result
+	 * @return - the best search results, sorted
+	 */
+	abstract List<SearchResult> select(Set<String> queries, boolean partial, int limit);
+
+	/**
+	 * Returns the score accumulator of the current thread, cleared for a new
+	 * search.
+	 *
+	 * @param numDocuments - the number of documents that may be matched
+	 * @return - an empty score accumulator
+	 */
+	ScoreAccumulator accumulator(int numDocuments) {
+		ScoreAccumulator scores = accumulators.get();
+		scores.reset(numDocuments);
+		return scores;
+	}
+
+	/**
+	 * Creates search results for only the best documents of a search.
+	 *
+	 * @param scores     - the matches found by the search
+	 * @param limit      - the maximum number of results to return, or 0 or less
+	 *                   to return every result
+	 * @param wordCounts - the word count of each document id
+	 * @param locations  - looks up the location of a document id
+	 * @return - the best search results, sorted
+	 */
+	List<SearchResult> results(ScoreAccumulator scores, int limit, int[] wordCounts, IntFunction<String> locations) {
+		int[] best = scores.top(limit, wordCounts, locations);
+		List<SearchResult> results = new ArrayList<>(best.length);
+
+		for (int document : best) {
+			SearchResult result = new SearchResult(locations.apply(document), wordCounts[document]);
+			result.update(scores.matches(document));
+			results.add(result);
+		}
+
+		return results;
+	}
+
+	/**
+	 * Combines the search results from several indexes into one unsorted list,
+	 * adding together the matches found for the same location and scoring them
+	 * with the word count across all of the indexes.
+	 *
+	 * @param partials   - the search results from each index
+	 * @param wordCounts - the word count of every location across all of the
+	 *                   indexes; results for other locations (such as ones
+	 *                   removed while searching) are left out
+	 * @return - the combined search results in no particular order
+	 */
+	List<SearchResult> combine(Collection<List<SearchResult>> partials, Map<String, Integer> wordCounts) {
+		Map<String, SearchResult> matches = new HashMap<>();
+		List<SearchResult> results = new ArrayList<>();
+
+		for (var partial : partials) {
+			for (SearchResult found : partial) {
+				SearchResult result = matches.get(found.getLocation());
+				if (result == null) {
+					Integer wordCount = wordCounts.get(found.getLocation());
+					if (wordCount == null) {
+						continue;
+					}
+					result = new SearchResult(found.getLocation(), wordCount);
+					matches.put(found.getLocation(), result);
+					results.add(result);
+				}
+				result.update(found.getMatchCount());
+			}
+		}
+
+		return results;
+	}
+
+	/**
+	 * Sorts search results and keeps only the best ones. When there are more
+	 * results than the limit, a heap holding the worst of the best results so far
+	 * at its head is used to select them, which takes time proportional to the
+	 * number of results times the log of the limit.
+	 *
+	 * @param results - the search results in no particular order, which may be
+	 *                reordered
+	 * @param limit   - the maximum number of results to keep, or 0 or less to
+	 *                keep every result
+	 * @return - the best results, sorted
+	 */
+	static List<SearchResult> top(List<SearchResult> results, int limit) {
+		if (limit <= 0 || results.size() <= limit) {
+			// Sort the results based on score, match count, and location
+			Collections.sort(results);
+			return results;
+		}
+
+		PriorityQueue<SearchResult> best = new PriorityQueue<>(limit, Collections.reverseOrder());
+		for (SearchResult result : results) {
+			if (best.size() < limit) {
+				best.add(result);
+			} else if (result.compareTo(best.peek()) < 0) {
+				best.poll();
+				best.add(result);
+			}
+		}
+
+		List<SearchResult> sorted = new ArrayList<>(best);
+		Collections.sort(sorted);
+		return sorted;
+	}
+
+	/**
+	 * Method that checks if the word count for a file is known
+	 *
+	 * @param location - location the path to a file
+	 * @return if word count is known
+	 */
+	public abstract boolean containsCount(String location);
+
+	/**
+	 * Method that checks if a word exists in the index
+	 *
+	 * @param word - to query
+	 * @return if the word exists in the index
+	 */
+	public abstract boolean containsWord(String word);
+
+	/**
+	 * Method that checks if a word exists in the index and the location of the word
+	 *
+	 * @param word     - to query
+	 * @param location - of the path in the query
+	 * @return if the word exists in the index
+	 */
+	public abstract boolean containsLocation(String word, String location);
+
+	/**
+	 * Method that checks if a word exists in the index and the location of the word
+	 *
+	 * @param word     - to query
+	 * @param location - of the path in the query
+	 * @param position - position within the file
+	 * @return if the word exists in the index
+	 */
+	public abstract boolean containsPosition(String word, String location, int position);
+
+	/**
+	 * Method that returns the number of unique words in the index
+	 *
+	 * @return the number of unique words in the index
+	 */
+	public abstract int numUniqueWords();
+
+	/**
+	 * Method the number of files in the index
+	 *
+	 * @return the number of files in the index
+	 */
+	public abstract int numCounts();
+
+	/**
+	 * Method that returns the number of locations where a word occurs in the index.
+	 *
+	 * @param word - word in the query
+	 * @return the number of locations where the word occurs, or 0 if the word is
+	 *         not found in the index
+	 */
+	public abstract int numLocations(String word);
+
+	/**
+	 * Returns the number of positions where a word occurs in a specific location.
+	 *
+	 * @param word     - word in the query
+	 * @param location - location in the index
+	 * @return the number of positions where the word occurs in the location, or 0
+	 *         if the word or location is not found in the index
+	 */
+	public abstract int numPositions(String word, String location);
+
+	/**
+	 * Method that returns the number of words in a specific file
+	 *
+	 * @param file - in the index
+	 * @return number of words in the file or null if file not found
+	 */
+	public abstract Integer getWordCount(String file);
+
+	/**
+	 * Retrieves the positions where a word occurs in a specific file in the index.
+	 *
+	 * @param word - word in the query
+	 * @param file - file in the index
+	 * @return a set of positions where the word occurs in the file
+	 */
+	public abstract Set<Integer> getPositions(String word, String file);
+
+	/**
+	 * Retrieves all the files that contain a specific word in the index.
+	 *
+	 * @param word - word in the query
+	 * @return all the files that contain the word
+	 */
+	public abstract Set<String> getLocations(String word);
+
+	/**
+	 * Method that returns the set of all words in the index files
+	 *
+	 * @return the set of all words in the index files
+	 */
+	public abstract NavigableSet<String> getWords();
+
+	/**
+	 * Returns the words of the index starting with a prefix, the same words a
+	 * partial search for the prefix matches.
+	 *
+	 * @param prefix - the prefix to look for
+	 * @return the words starting with the prefix, in sorted order
+	 */
+	List<String> getWords(String prefix) {
+		List<String> found = new ArrayList<>();
+		for (String word : getWords().tailSet(prefix)) {
+			if (!word.startsWith(prefix)) {
+				break;
+			}
+			found.add(word);
+		}
+		return found;
+	}
+
+	/**
+	 * intended for use by JsonWriter.java *
+	 *
+	 * @return the word counts as an unmodifiable map
+	 */
+	public abstract Map<String, Integer> getWordCounts();
+
+	/**
+	 * Writes the index as JSON.
+	 *
+	 * @param path - path to write
+	 * @throws IOException - if an IO error occurs while writing the index
+	 */
+	public abstract void writeJson(Path path) throws IOException;
+
+	/**
+	 * Writes a compact binary copy of the index that can be loaded back almost
+	 * instantly with {@link MappedInvertedIndex#open(Path)}.
+	 *
+	 * @param path - path to write
+	 * @throws IOException - if an IO error occurs while writing the index
+	 */
+	public abstract void writeBinary(Path path) throws IOException;
+
+	/**
+	 * Compacts the index into a read-only snapshot that is faster to search and
+	 * safe to share between threads without locking. Changes made to this index
+	 * afterwards are not reflected in the snapshot.
+	 *
+	 * @return a frozen copy of this index
+	 */
+	public abstract FrozenInvertedIndex freeze();
+
+	/**
+	 * Represents a search result containing information about matches, score, and
+	 * file location.
+	 */
+	public class SearchResult implements Comparable<SearchResult> {
+
+		/**
+		 * Represents the total number of matches found for the current result,
+		 *
+		 */
+		private int matchCount;
+		/**
+		 * Represents the percent of words in the file that match the query
+		 *
+		 */
+		private double score;
+		/**
+		 * Represents file location of the search result.
+		 */
+		private final String location;
+		/**
+		 * Represents the number of words in the file, used to calculate the score
+		 */
+		private final int wordCount;
+
+		/**
+		 *
+		 * @param location - file location of the search result.
+		 */
+		public SearchResult(String location) {
+			this(location, getWordCount(location));
+		}
+
+		/**
+		 * @param location  - file location of the search result.
+		 * @param wordCount - number of words in the file
+		 */
+		SearchResult(String location, int wordCount) {
+			this.matchCount = 0;
+			this.score = 0;
+			this.location = location;
+			this.wordCount = wordCount;
+		}
+
+		/**
+		 * @param matches - The number of matches to add to the current match count.
+		 */
+		void update(int matches) {
+			matchCount += matches;
+			score = (double) matchCount / wordCount;
+		}
+
+		/**
+		 * Retrieves the total number of matches found for the current result.
+		 *
+		 * @return the match count
+		 */
+		public int getMatchCount() {
+			return matchCount;
+		}
+
+		/**
+		 * Retrieves the percent of words in the file that match the query.
+		 *
+		 * @return the matching score
+		 */
+		public double getScore() {
+			return score;
+		}
+
+		/**
+		 * Retrieves the file location of the search result.
+		 *
+		 * @return the file location
+		 */
+		public String getLocation() {
+			return location;
+		}
+
+		@Override
+		public int compareTo(SearchResult other) {
+			// sorting in descending order
+			int scoreComp = Double.compare(other.getScore(), this.getScore());
+			if (scoreComp != 0) {
+				return scoreComp;
+			}
+			// sorting in descending order
+			int matchComp = Integer.compare(other.getMatchCount(), this.getMatchCount());
+			if (matchComp != 0) {
+				return matchComp;
+			}
+
+			int locationComp = this.getLocation().compareToIgnoreCase(other.getLocation());
+			return locationComp;
+		}
+
+	}
+}
@@ -0,0 +1,240 @@
+package edu.usfca.cs272;
+
+import java.util.function.IntFunction;
+
+/**
+ * Adds up the matches of a search in primitive arrays indexed by document id,
+ * so a search does not create any objects per matching document. Scores are
+ * only computed once every match has been added, and the best documents are
+ * selected with a heap of document ids, so search results only need to be
+ * created for the documents that are actually returned.
+ *
+ * An accumulator is meant to be reused for many searches by calling
+ * {@link #reset(int)} before each one, which only clears the documents touched
+ * by the previous search.
+ *
+ * Warning: This class is not thread-safe. Each thread should use its own
+ * accumulator.
+ */
+public class ScoreAccumulator {
+	/**
+	 * The number of matches found so far, indexed by document id
+	 */
+	private int[] matches;
+
+	/**
+	 * The ids of the documents with at least one match, in the order they were
+	 * first matched
+	 */
+	private int[] touched;
+
+	/**
+	 * The number of documents with at least one match
+	 */
+	private int size;
+
+	/**
+	 * The score of each touched document, computed by {@link #top(int, int[],
+	 * IntFunction)}
+	 */
+	private double[] scores;
+
+	/**
+	 * Reusable heap of indices into touched, with the worst document at the head
+	 */
+	private int[] heap;
+
+	/**
+	 * Looks up the location of a document while selecting the best documents
+	 */
+	private IntFunction<String> locations;
+
+	/**
+	 * Creates an empty accumulator
+	 */
+	public ScoreAccumulator() {
+		this.matches = new int[0];
+		this.touched = new int[0];
+		this.scores = new double[0];
+		this.heap = new int[0];
+		this.size = 0;
+	}
+
+	/**
+	 * Clears the matches of the last search and makes room for a number of
+	 * documents.
+	 *
+	 * @param numDocuments - the number of documents that may be matched, so every
+	 *                     document id is less than this
+	 */
+	public void reset(int numDocuments) {
+		if (matches.length < numDocuments) {
+			matches = new int[numDocuments];
+			touched = new int[numDocuments];
+		} else {
+			for (int i = 0; i < size; i++) {
+				matches[touched[i]] = 0;
+			}
+		}
+		size = 0;
+	}
+
+	/**
+	 * Adds matches for a document.
+	 *
+	 * @param document - the document id
+	 * @param count    - the number of matches to add, must be positive
+	 */
+	public void add(int document, int count) {
+		if (matches[document] == 0) {
+			touched[size++] = document;
+		}
+		matches[document] += count;
+	}
+
+	/**
+	 * Returns the number of documents with at least one match.
+	 *
+	 * @return the number of matched documents
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the number of matches added for a document.
+	 *
+	 * @param document - the document id
+	 * @return the number of matches
+	 */
+	public int matches(int document) {
+		return matches[document];
+	}
+
+	/**
+	 * Selects the best matched documents, in the same order as
+	 * {@link InvertedIndex.SearchResult#compareTo(InvertedIndex.SearchResult)}.
+	 * Documents that compare equal are kept in the order they were first matched.
+	 *
+	 * @param limit      - the maximum number of documents to return, or 0 or less
+	 *                   to return every matched document
+	 * @param wordCounts - the word count of each document id
+	 * @param locations  - looks up the location of a document id
+	 * @return the ids of the best documents, best first
+	 */
+	public int[] top(int limit, int[] wordCounts, IntFunction<String> locations) {
+		int count = limit <= 0 ? size : Math.min(limit, size);
+
+		if (scores.length < size) {
+			scores = new double[touched.length];
+		}
+		if (heap.length < count) {
+			heap = new int[touched.length];
+		}
+
+		for (int i = 0; i < size; i++) {
+			int document = touched[i];
+			scores[i] = (double) matches[document] / wordCounts[document];
+		}
+
+		this.locations = locations;
+		try {
+			// keep the best documents seen so far, with the worst of them at the head
+			int heapSize = 0;
+			for (int i = 0; i < size; i++) {
+				if (heapSize < count) {
+					heap[heapSize] = i;
+					siftUp(heapSize++);
+				} else if (compare(i, heap[0]) < 0) {
+					heap[0] = i;
+					siftDown(0, heapSize);
+				}
+			}
+
+			// removing the worst document each time fills the result from the end
+			int[] best = new int[count];
+			for (int i = count - 1; i >= 0; i--) {
+				best[i] = touched[heap[0]];
+				heap[0] = heap[--heapSize];
+				siftDown(0, heapSize);
+			}
+			return best;
+		} finally {
+			this.locations = null;
+		}
+	}
+
+	/**
+	 * Compares two touched documents by score, then matches (both descending),
+	 * then location ignoring case, then the order they were first matched.
+	 *
+	 * @param first  - index into touched of the first document
+	 * @param second - index into touched of the second document
+	 * @return negative if the first document comes first, positive if the second
+	 *         does
+	 */
+	private int compare(int first, int second) {
+		int scoreComp = Double.compare(scores[second], scores[first]);
+		if (scoreComp != 0) {
+			return scoreComp;
+		}
+
+		int matchComp = Integer.compare(matches[touched[second]], matches[touched[first]]);
+		if (matchComp != 0) {
+			return matchComp;
+		}
+
+		int locationComp = locations.apply(touched[first]).compareToIgnoreCase(locations.apply(touched[second]));
+		if (locationComp != 0) {
+			return locationComp;
+		}
+
+		return Integer.compare(first, second);
+	}
+
+	/**
+	 * Moves an entry of the heap up until its parent comes after it.
+	 *
+	 * @param index - the index in the heap to move
+	 */
+	private void siftUp(int index) {
+		int entry = heap[index];
+		while (index > 0) {
+			int parent = (index - 1) >>> 1;
+			if (compare(heap[parent], entry) >= 0) {
+				break;
+			}
+			heap[index] = heap[parent];
+			index = parent;
+		}
+		heap[index] = entry;
+	}
+
+	/**
+	 * Moves an entry of the heap down until both of its children come before it.
+	 *
+	 * @param index    - the index in the heap to move
+	 * @param heapSize - the number of entries in the heap
+	 */
+	private void siftDown(int index, int heapSize) {
+		if (index >= heapSize) {
+			return;
+		}
+
+		int entry = heap[index];
+		int half = heapSize >>> 1;
+		while (index < half) {
+			int child = 2 * index + 1;
+			int right = child + 1;
+			if (right < heapSize && compare(heap[right], heap[child]) > 0) {
+				child = right;
+			}
+			if (compare(entry, heap[child]) >= 0) {
+				break;
+			}
+			heap[index] = heap[child];
+			index = child;
+		}
+		heap[index] = entry;
+	}
+}
@@ -10,7 +10,6 @@ import java.util.Set;
 import java.util.TreeMap;
 
 import opennlp.tools.stemmer.Stemmer;
-import opennlp.tools.stemmer.snowball.SnowballStemmer;
 
 /**
  * This class represents a Search Processor that performs exact search
@@ -22,17 +21,23 @@ public class SearchProcessor implements SearchProcessorInterface {
 	 * results as values. The map is sorted based on the concatenated string
 	 * representation of the keys.
 	 */
-	private final Map<String, List<InvertedIndex.SearchResult>> allSearchResults;
+	private final Map<String, List<ReadOnlyInvertedIndex.SearchResult>> allSearchResults;
 
 	/**
 	 * index - the inverted index used for searching.
 	 */
-	private final InvertedIndex index;
+	private final ReadOnlyInvertedIndex index;
 	/**
 	 * partial - Indicates whether partial or exact search should be performed.
 	 */
 	private final boolean partial;
 
+	/**
+	 * limit - The maximum number of results kept for each query, or 0 or less to
+	 * keep every result.
+	 */
+	private final int limit;
+
 	/**
 	 * stemmer - The stemmer used for processing query lines.
 	 * 
@@ -46,12 +51,27 @@ public class SearchProcessor implements SearchProcessorInterface {
 	 * @param partial - Indicates whether partial or exact search should be
 	 *                performed.
 	 */
-	public SearchProcessor(InvertedIndex index, boolean partial) {
+	public SearchProcessor(ReadOnlyInvertedIndex index, boolean partial) {
+		this(index, partial, 0);
+	}
+
+	/**
+	 * Constructor for search processor that keeps only the best results of each
+	 * query
+	 * 
+	 * @param index   - the inverted index used for searching.
+	 * @param partial - Indicates whether partial or exact search should be
+	 *                performed.
+	 * @param limit   - the maximum number of results kept for each query, or 0 or
+	 *                less to keep every result
+	 */
+	public SearchProcessor(ReadOnlyInvertedIndex index, boolean partial, int limit) {
 		this.index = index;
 		this.partial = partial;
+		this.limit = limit;
 
 		this.allSearchResults = new TreeMap<>();
-		this.stemmer = new SnowballStemmer(SnowballStemmer.ALGORITHM.ENGLISH);
+		this.stemmer = StemCache.ENGLISH;
 	}
 
 	/**
@@ -65,7 +85,7 @@ public class SearchProcessor implements SearchProcessorInterface {
 		if (!stems.isEmpty()) {
 			String joinedString = String.join(" ", stems);
 			if (!allSearchResults.containsKey(joinedString)) {
-				allSearchResults.put(joinedString, index.search(stems, partial));
+				allSearchResults.put(joinedString, index.search(stems, partial, limit));
 			}
 		}
 	}
@@ -85,7 +105,7 @@ public class SearchProcessor implements SearchProcessorInterface {
 	 * @return - the stored inverted index
 	 */
 	@Override
-	public InvertedIndex getIndex() {
+	public ReadOnlyInvertedIndex getIndex() {
 		return index;
 	}
 
@@ -97,12 +117,21 @@ public class SearchProcessor implements SearchProcessorInterface {
 		return partial;
 	}
 
+	/**
+	 * @return - the maximum number of results kept for each query, or 0 or less if
+	 *         every result is kept
+	 */
+	@Override
+	public int getLimit() {
+		return limit;
+	}
+
 	/**
 	 * @param queryLine - a single line representing a query
 	 * @return - the stored search results associated with that query
 	 */
 	@Override
-	public List<InvertedIndex.SearchResult> getStoredSearchResult(String queryLine) {
+	public List<ReadOnlyInvertedIndex.SearchResult> getStoredSearchResult(String queryLine) {
 		Set<String> stems = FileStemmer.uniqueStems(queryLine, stemmer);
 		return allSearchResults.get(String.join(" ", stems));
 	}
@@ -48,18 +48,24 @@ public interface SearchProcessorInterface {
 	/**
 	 * @return - the stored inverted index
 	 */
-	public InvertedIndex getIndex();
+	public ReadOnlyInvertedIndex getIndex();
 
 	/**
 	 * @return - return true if set to do partial searches
 	 */
 	public boolean isPartial();
 
+	/**
+	 * @return - the maximum number of results kept for each query, or 0 or less if
+	 *         every result is kept
+	 */
+	public int getLimit();
+
 	/**
 	 * @param queryLine - a single line representing a query
 	 * @return - the stored search results associated with that query
 	 */
-	public List<InvertedIndex.SearchResult> getStoredSearchResult(String queryLine);
+	public List<ReadOnlyInvertedIndex.SearchResult> getStoredSearchResult(String queryLine);
 
 	@Override
 	public String toString();
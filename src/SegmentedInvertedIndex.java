@@ -0,0 +1,908 @@
+package edu.usfca.cs272;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Thread safe inverted index that is built from segments, so new documents
+ * never require the whole index to be rebuilt or merged again. New documents go
+ * into a small in-memory buffer, which is frozen into an immutable sorted
+ * segment once it holds enough positions. A background thread merges segments
+ * of similar size together (a size-tiered policy), so the number of segments
+ * stays logarithmic in the size of the index while each position is only
+ * merged a logarithmic number of times.
+ *
+ * Searches go through the buffer and every segment, and the matches found for
+ * the same location are combined using the word count across all segments.
+ * A location added to more than one segment keeps its largest word count.
+ *
+ * Positions are only counted once per word and location, so a location that is
+ * written again after it was flushed makes the segments overlap. Until the
+ * background merger has merged every segment into one, searches count the
+ * matches of each overlapping location again from the positions of every
+ * segment it is stored in, which is slower. Adding each document once avoids
+ * this entirely.
+ *
+ * Removing a document from a segment only records a tombstone for it, and reads
+ * skip the locations tombstoned in each segment. A segment is rewritten without
+ * them once enough of its documents are removed, when it is merged with other
+ * segments anyway, or when {@link #compact()} merges every segment into one.
+ *
+ * The background merger runs on its own thread, so {@link #shutdown()} must be
+ * called once the index is no longer being built.
+ */
+public class SegmentedInvertedIndex extends ThreadedInvertedIndex {
+	/**
+	 * The default number of positions the buffer holds before it is flushed
+	 */
+	public static final int DEFAULT_FLUSH_SIZE = 1 << 20;
+
+	/**
+	 * The default number of segments of similar size that are merged together
+	 */
+	public static final int DEFAULT_MERGE_FACTOR = 4;
+
+	/**
+	 * The number of positions the buffer holds before it is flushed
+	 */
+	private final int flushSize;
+
+	/**
+	 * The number of segments of similar size that are merged together
+	 */
+	private final int mergeFactor;
+
+	/**
+	 * The in-memory segment new documents are added to
+	 */
+	private InvertedIndex buffer;
+
+	/**
+	 * The number of positions added to the buffer since it was last flushed
+	 */
+	private long buffered;
+
+	/**
+	 * The immutable segments, replaced rather than modified
+	 */
+	private List<FrozenInvertedIndex> segments;
+
+	/**
+	 * Stores the word count of each location across all segments
+	 */
+	private final TreeMap<String, Integer> wordCounts;
+
+	/**
+	 * The locations stored in at least one segment
+	 */
+	private final Set<String> flushedLocations;
+
+	/**
+	 * The number of writes to each already flushed location since the segments
+	 * were last merged, where an empty map means no two segments share a location
+	 */
+	private final Map<String, Integer> overlaps;
+
+	/**
+	 * The locations removed from each segment, where segments without removed
+	 * locations are left out
+	 */
+	private final Map<FrozenInvertedIndex, Set<String>> tombstones;
+
+	/**
+	 * Whether the next merge must merge every segment into one
+	 */
+	private boolean compacting;
+
+	/**
+	 * Lock protecting the buffer, the segments, the tombstones, and the word
+	 * counts
+	 */
+	private final MultiReaderLock lock;
+
+	/**
+	 * Runs the background merges, one at a time
+	 */
+	private final WorkQueue merger;
+
+	/**
+	 * Whether a background merge has been requested and not started yet
+	 */
+	private final AtomicBoolean mergeRequested;
+
+	/**
+	 * Held while merging segments, so only one merge runs at a time
+	 */
+	private final Object mergeLock;
+
+	/**
+	 * Creates a segmented index with the default flush size and merge factor.
+	 */
+	public SegmentedInvertedIndex() {
+		this(DEFAULT_FLUSH_SIZE, DEFAULT_MERGE_FACTOR);
+	}
+
+	/**
+	 * Creates a segmented index.
+	 *
+	 * @param flushSize   - the number of positions the in-memory buffer holds
+	 *                    before it is flushed into a segment
+	 * @param mergeFactor - the number of segments of similar size that are merged
+	 *                    together, at least 2
+	 */
+	public SegmentedInvertedIndex(int flushSize, int mergeFactor) {
+		if (flushSize < 1) {
+			throw new IllegalArgumentException("Flush size must be positive: " + flushSize);
+		}
+		if (mergeFactor < 2) {
+			throw new IllegalArgumentException("Merge factor must be at least 2: " + mergeFactor);
+		}
+
+		this.flushSize = flushSize;
+		this.mergeFactor = mergeFactor;
+		this.buffer = new InvertedIndex();
+		this.buffered = 0;
+		this.segments = List.of();
+		this.wordCounts = new TreeMap<>();
+		this.flushedLocations = new HashSet<>();
+		this.overlaps = new HashMap<>();
+		this.tombstones = new IdentityHashMap<>();
+		this.compacting = false;
+		this.lock = new MultiReaderLock();
+		this.merger = new WorkQueue(1);
+		this.mergeRequested = new AtomicBoolean();
+		this.mergeLock = new Object();
+	}
+
+	/**
+	 * Returns the number of immutable segments, not counting the buffer.
+	 *
+	 * @return the number of segments
+	 */
+	public int numSegments() {
+		lock.readLock().lock();
+		try {
+			return segments.size();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Flushes the buffer into a segment, even if it is not full yet.
+	 */
+	public void flush() {
+		lock.writeLock().lock();
+		try {
+			flushBuffer();
+		} finally {
+			lock.writeLock().unlock();
+		}
+		requestMerge();
+	}
+
+	/**
+	 * Waits for every background merge requested so far to finish.
+	 */
+	public void finishMerges() {
+		merger.finish();
+	}
+
+	/**
+	 * Stops the background merger. Segments are no longer merged afterwards, but
+	 * the index can still be used.
+	 */
+	public void shutdown() {
+		merger.join();
+	}
+
+	/**
+	 * Freezes the buffer into a new segment. Must be called while holding the
+	 * write lock.
+	 */
+	private void flushBuffer() {
+		if (buffered > 0) {
+			// every document in the buffer may have been removed since
+			if (buffer.numCounts() > 0) {
+				List<FrozenInvertedIndex> flushed = new ArrayList<>(segments);
+				flushed.add(buffer.freeze());
+				segments = Collections.unmodifiableList(flushed);
+				flushedLocations.addAll(buffer.getWordCounts().keySet());
+			}
+			buffer = new InvertedIndex();
+			buffered = 0;
+		}
+	}
+
+	/**
+	 * Counts positions added to the buffer and flushes it if it is full. Must be
+	 * called while holding the write lock.
+	 *
+	 * @param positions - the number of positions added
+	 * @return true if the buffer was flushed
+	 */
+	private boolean buffered(long positions) {
+		buffered += positions;
+		if (buffered >= flushSize) {
+			flushBuffer();
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Counts a write to a location if the location is already stored in a
+	 * segment. Must be called while holding the write lock.
+	 *
+	 * @param location - the location written to
+	 * @return true if the location was already flushed
+	 */
+	private boolean overlaps(String location) {
+		if (flushedLocations.contains(location)) {
+			overlaps.merge(location, 1, Integer::sum);
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Asks the background merger to check for segments to merge, unless it has
+	 * already been asked and not started yet.
+	 */
+	private void requestMerge() {
+		if (mergeRequested.compareAndSet(false, true)) {
+			try {
+				merger.execute(this::mergeSegments);
+			} catch (RejectedExecutionException e) {
+				// the merger was shut down, so the segments are left as they are
+				mergeRequested.set(false);
+			}
+		}
+	}
+
+	/**
+	 * Merges segments until no tier has enough segments of similar size left, or
+	 * merges everything into one segment if the segments overlap or the index is
+	 * being compacted. Removed documents are left out of the merged segment.
+	 * Merges are serialized by the merge lock, so the segments picked cannot be
+	 * removed by anyone else while they are being merged.
+	 */
+	private void mergeSegments() {
+		mergeRequested.set(false);
+
+		synchronized (mergeLock) {
+			while (true) {
+				List<FrozenInvertedIndex> picked;
+				List<Set<String>> removed;
+				Map<String, Integer> merging;
+				lock.writeLock().lock();
+				try {
+					merging = Map.copyOf(overlaps);
+					if (!merging.isEmpty() || compacting) {
+						flushBuffer();
+						picked = segments;
+						compacting = false;
+					} else {
+						picked = pickMerge(segments);
+					}
+
+					removed = tombstones(picked);
+					if (picked.isEmpty() || picked.size() == 1 && removed.get(0).isEmpty()) {
+						merged(merging);
+						return;
+					}
+				} finally {
+					lock.writeLock().unlock();
+				}
+
+				// the expensive part happens without holding any lock
+				FrozenInvertedIndex merged = FrozenInvertedIndex.merge(picked, removed);
+
+				lock.writeLock().lock();
+				try {
+					List<FrozenInvertedIndex> replaced = new ArrayList<>(segments.size());
+					boolean added = merged.numCounts() == 0;
+					for (FrozenInvertedIndex segment : segments) {
+						if (!picked.contains(segment)) {
+							replaced.add(segment);
+						} else if (!added) {
+							replaced.add(merged);
+							added = true;
+						}
+					}
+					segments = Collections.unmodifiableList(replaced);
+					merged(merging);
+
+					// documents removed while merging are still in the merged segment
+					for (int i = 0; i < picked.size(); i++) {
+						Set<String> current = tombstones.remove(picked.get(i));
+						if (current != null && current.size() > removed.get(i).size()) {
+							current.removeAll(removed.get(i));
+							tombstones.computeIfAbsent(merged, segment -> new HashSet<>()).addAll(current);
+						}
+					}
+				} finally {
+					lock.writeLock().unlock();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Forgets the writes to flushed locations that a merge of every segment has
+	 * resolved, keeping any made while merging. Must be called while holding the
+	 * write lock.
+	 *
+	 * @param merging - the writes to each location counted when the merge started
+	 */
+	private void merged(Map<String, Integer> merging) {
+		for (var entry : merging.entrySet()) {
+			overlaps.computeIfPresent(entry.getKey(),
+					(location, writes) -> writes > entry.getValue() ? writes - entry.getValue() : null);
+		}
+	}
+
+	/**
+	 * Picks segments of similar size to merge. Segments are grouped into tiers
+	 * where each tier holds segments up to merge factor times larger than the
+	 * tier below, and the smallest tier with at least merge factor segments is
+	 * merged.
+	 *
+	 * @param current - the current segments
+	 * @return the segments to merge, or an empty list if no tier is full and no
+	 *         segment needs to be compacted
+	 */
+	private List<FrozenInvertedIndex> pickMerge(List<FrozenInvertedIndex> current) {
+		// a segment with many removed documents is rewritten on its own
+		for (FrozenInvertedIndex segment : current) {
+			Set<String> removed = removed(segment);
+			if (!removed.isEmpty() && removed.size() * COMPACT_RATIO >= segment.numCounts()) {
+				return List.of(segment);
+			}
+		}
+
+		TreeMap<Integer, List<FrozenInvertedIndex>> tiers = new TreeMap<>();
+
+		for (FrozenInvertedIndex segment : current) {
+			int tier = 0;
+			for (long size = segment.positionCount(); size > flushSize; size /= mergeFactor) {
+				tier++;
+			}
+			tiers.computeIfAbsent(tier, key -> new ArrayList<>()).add(segment);
+		}
+
+		for (var tier : tiers.values()) {
+			if (tier.size() >= mergeFactor) {
+				tier.sort((first, second) -> Integer.compare(first.positionCount(), second.positionCount()));
+				return tier.subList(0, mergeFactor);
+			}
+		}
+
+		return List.of();
+	}
+
+	/**
+	 * Returns the locations removed from a segment. The buffer removes its own
+	 * documents, so nothing is ever removed from it here. Must be called while
+	 * holding the read lock.
+	 *
+	 * @param segment - the segment or buffer
+	 * @return the removed locations, which must not be modified
+	 */
+	private Set<String> removed(ReadOnlyInvertedIndex segment) {
+		return tombstones.getOrDefault(segment, Set.of());
+	}
+
+	/**
+	 * Copies the locations removed from several segments, so they can be used
+	 * without the lock. Must be called while holding the read lock.
+	 *
+	 * @param snapshot - the segments
+	 * @return the locations removed from each segment, in the same order
+	 */
+	private List<Set<String>> tombstones(List<FrozenInvertedIndex> snapshot) {
+		List<Set<String>> removed = new ArrayList<>(snapshot.size());
+		for (FrozenInvertedIndex segment : snapshot) {
+			removed.add(Set.copyOf(removed(segment)));
+		}
+		return removed;
+	}
+
+	/**
+	 * Checks whether a word is stored for any location that was not removed from
+	 * a segment. Must be called while holding the read lock.
+	 *
+	 * @param segment - the segment or buffer
+	 * @param word    - the word to look for
+	 * @return true if the word is found
+	 */
+	private boolean containsWord(ReadOnlyInvertedIndex segment, String word) {
+		Set<String> removed = removed(segment);
+		if (removed.isEmpty()) {
+			return segment.containsWord(word);
+		}
+		return !removed.containsAll(segment.getLocations(word));
+	}
+
+	/**
+	 * Returns every segment, including the buffer if it is not empty. Must be
+	 * called while holding the read lock.
+	 *
+	 * @return every segment
+	 */
+	private List<ReadOnlyInvertedIndex> all() {
+		List<ReadOnlyInvertedIndex> all = new ArrayList<>(segments.size() + 1);
+		all.addAll(segments);
+		if (buffered > 0) {
+			all.add(buffer);
+		}
+		return all;
+	}
+
+	@Override
+	List<SearchResult> select(Set<String> queries, boolean partial, int limit) {
+		lock.readLock().lock();
+		try {
+			List<ReadOnlyInvertedIndex> all = all();
+			List<List<SearchResult>> partials = new ArrayList<>();
+			for (ReadOnlyInvertedIndex segment : all) {
+				List<SearchResult> results = segment.select(queries, partial, 0);
+				Set<String> removed = removed(segment);
+				if (!removed.isEmpty()) {
+					results.removeIf(result -> removed.contains(result.getLocation()));
+				}
+				partials.add(results);
+			}
+			List<SearchResult> results = combine(partials, wordCounts);
+			if (!overlaps.isEmpty()) {
+				Map<String, List<String>> matched = new HashMap<>();
+				results.replaceAll(result -> overlaps.containsKey(result.getLocation())
+						? recount(all, queries, partial, result.getLocation(), matched)
+						: result);
+			}
+			return top(results, limit);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Counts the matches of a location stored in more than one segment again, so
+	 * a position stored in several segments is only counted once. Must be called
+	 * while holding the read lock.
+	 *
+	 * @param all      - every segment, including the buffer
+	 * @param queries  - the set of search terms to search
+	 * @param partial  - whether to match words starting with a query instead of
+	 *                 only the query itself
+	 * @param location - the location to count the matches of
+	 * @param matched  - the words matched by each query so far, shared between
+	 *                 the locations of one search
+	 * @return the search result of the location
+	 */
+	private SearchResult recount(List<ReadOnlyInvertedIndex> all, Set<String> queries, boolean partial,
+			String location, Map<String, List<String>> matched) {
+		List<ReadOnlyInvertedIndex> stored = new ArrayList<>();
+		for (ReadOnlyInvertedIndex segment : all) {
+			if (segment.containsCount(location) && !removed(segment).contains(location)) {
+				stored.add(segment);
+			}
+		}
+
+		int matches = 0;
+		for (String query : queries) {
+			List<String> words = partial ? matched.computeIfAbsent(query, prefix -> startingWith(all, prefix)) : List.of(query);
+			for (String word : words) {
+				Set<Integer> positions = new HashSet<>();
+				for (ReadOnlyInvertedIndex segment : stored) {
+					positions.addAll(segment.getPositions(word, location));
+				}
+				matches += positions.size();
+			}
+		}
+
+		SearchResult result = new SearchResult(location, wordCounts.get(location));
+		result.update(matches);
+		return result;
+	}
+
+	/**
+	 * Finds the words starting with a prefix in any segment. Must be called while
+	 * holding the read lock.
+	 *
+	 * @param all    - every segment, including the buffer
+	 * @param prefix - the prefix to look for
+	 * @return the words starting with the prefix, each listed once
+	 */
+	private static List<String> startingWith(List<ReadOnlyInvertedIndex> all, String prefix) {
+		TreeSet<String> words = new TreeSet<>();
+		for (ReadOnlyInvertedIndex segment : all) {
+			words.addAll(segment.getWords(prefix));
+		}
+		return List.copyOf(words);
+	}
+
+	@Override
+	public void insertWord(String word, String fileName, int position) {
+		boolean merge;
+		lock.writeLock().lock();
+		try {
+			buffer.insertWord(word, fileName, position);
+			wordCounts.merge(fileName, position, Integer::max);
+			merge = overlaps(fileName) | buffered(1);
+		} finally {
+			lock.writeLock().unlock();
+		}
+
+		if (merge) {
+			requestMerge();
+		}
+	}
+
+	@Override
+	void insertDocument(String location, Map<String, PostingList> postings, int wordCount) {
+		if (postings.isEmpty()) {
+			return;
+		}
+
+		boolean merge;
+		lock.writeLock().lock();
+		try {
+			buffer.insertDocument(location, postings, wordCount);
+			wordCounts.merge(location, wordCount, Integer::max);
+			merge = overlaps(location) | buffered(wordCount);
+		} finally {
+			lock.writeLock().unlock();
+		}
+
+		if (merge) {
+			requestMerge();
+		}
+	}
+
+	/**
+	 * Removes a document. It is removed from the buffer right away, and a
+	 * tombstone is recorded for each segment it was flushed to.
+	 *
+	 * @param location - the location of the document
+	 * @return true if the document was in the index
+	 */
+	@Override
+	public boolean removeDocument(String location) {
+		boolean merge = false;
+		lock.writeLock().lock();
+		try {
+			if (wordCounts.remove(location) == null) {
+				return false;
+			}
+
+			buffer.removeDocument(location);
+
+			if (flushedLocations.remove(location)) {
+				for (FrozenInvertedIndex segment : segments) {
+					if (segment.containsCount(location)) {
+						tombstones.computeIfAbsent(segment, key -> new HashSet<>()).add(location);
+					}
+				}
+				merge = true;
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+
+		if (merge) {
+			requestMerge();
+		}
+		return true;
+	}
+
+	/**
+	 * Replaces every word of a document while holding the write lock, so searches
+	 * see either the old or the new document but never neither.
+	 *
+	 * @param location  - the location of the document
+	 * @param postings  - the new positions of each word in the document
+	 * @param wordCount - the new word count of the document
+	 */
+	@Override
+	void replaceDocument(String location, Map<String, PostingList> postings, int wordCount) {
+		lock.writeLock().lock();
+		try {
+			removeDocument(location);
+			insertDocument(location, postings, wordCount);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Merges the buffer and every segment into a single segment without any
+	 * removed documents. Runs on the calling thread, after any merge already in
+	 * progress.
+	 */
+	@Override
+	public void compact() {
+		lock.writeLock().lock();
+		try {
+			compacting = true;
+		} finally {
+			lock.writeLock().unlock();
+		}
+		mergeSegments();
+	}
+
+	/**
+	 * Adds an already built index as a new segment.
+	 *
+	 * @param other - the InvertedIndex to add
+	 */
+	@Override
+	public void addAll(InvertedIndex other) {
+		addAll(List.of(other));
+	}
+
+	/**
+	 * Adds several already built indexes as a single new segment. The indexes are
+	 * frozen and merged before any lock is taken.
+	 *
+	 * @param others - the InvertedIndexes to add
+	 */
+	@Override
+	public void addAll(Collection<? extends InvertedIndex> others) {
+		List<FrozenInvertedIndex> frozen = new ArrayList<>(others.size());
+		for (InvertedIndex other : others) {
+			frozen.add(other.freeze());
+		}
+		if (frozen.isEmpty()) {
+			return;
+		}
+
+		FrozenInvertedIndex segment = FrozenInvertedIndex.merge(frozen);
+
+		if (segment.numCounts() == 0) {
+			return;
+		}
+
+		lock.writeLock().lock();
+		try {
+			List<FrozenInvertedIndex> added = new ArrayList<>(segments);
+			added.add(segment);
+			segments = Collections.unmodifiableList(added);
+
+			for (var entry : segment.getWordCounts().entrySet()) {
+				if (wordCounts.containsKey(entry.getKey())) {
+					overlaps.merge(entry.getKey(), 1, Integer::sum);
+				}
+				wordCounts.merge(entry.getKey(), entry.getValue(), Integer::max);
+				flushedLocations.add(entry.getKey());
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+
+		requestMerge();
+	}
+
+	/**
+	 * Merges the buffer and every segment into a single snapshot, without changing
+	 * the segments of this index.
+	 *
+	 * @return a frozen copy of this index
+	 */
+	@Override
+	public FrozenInvertedIndex freeze() {
+		List<FrozenInvertedIndex> snapshot;
+		List<Set<String>> removed;
+		lock.readLock().lock();
+		try {
+			snapshot = snapshot();
+			removed = tombstones(snapshot);
+		} finally {
+			lock.readLock().unlock();
+		}
+
+		// the segments never change, so they can be merged without the lock
+		return FrozenInvertedIndex.merge(snapshot, removed);
+	}
+
+	/**
+	 * Returns every segment, including a frozen copy of the buffer if it is not
+	 * empty. Must be called while holding the read lock.
+	 *
+	 * @return a snapshot of every segment
+	 */
+	private List<FrozenInvertedIndex> snapshot() {
+		List<FrozenInvertedIndex> snapshot = new ArrayList<>(segments.size() + 1);
+		snapshot.addAll(segments);
+		if (buffered > 0) {
+			snapshot.add(buffer.freeze());
+		}
+		return snapshot;
+	}
+
+	@Override
+	public String toString() {
+		return freeze().toString();
+	}
+
+	@Override
+	public void writeJson(Path path) throws IOException {
+		freeze().writeJson(path);
+	}
+
+	@Override
+	public void writeBinary(Path path) throws IOException {
+		freeze().writeBinary(path);
+	}
+
+	@Override
+	public boolean containsCount(String location) {
+		lock.readLock().lock();
+		try {
+			return wordCounts.containsKey(location);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public boolean containsWord(String word) {
+		lock.readLock().lock();
+		try {
+			for (ReadOnlyInvertedIndex segment : all()) {
+				if (containsWord(segment, word)) {
+					return true;
+				}
+			}
+			return false;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public boolean containsLocation(String word, String location) {
+		lock.readLock().lock();
+		try {
+			for (ReadOnlyInvertedIndex segment : all()) {
+				if (segment.containsLocation(word, location) && !removed(segment).contains(location)) {
+					return true;
+				}
+			}
+			return false;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public boolean containsPosition(String word, String location, int position) {
+		lock.readLock().lock();
+		try {
+			for (ReadOnlyInvertedIndex segment : all()) {
+				if (segment.containsPosition(word, location, position) && !removed(segment).contains(location)) {
+					return true;
+				}
+			}
+			return false;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public int numUniqueWords() {
+		return getWords().size();
+	}
+
+	@Override
+	public int numCounts() {
+		lock.readLock().lock();
+		try {
+			return wordCounts.size();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public int numLocations(String word) {
+		return getLocations(word).size();
+	}
+
+	@Override
+	public int numPositions(String word, String location) {
+		return getPositions(word, location).size();
+	}
+
+	@Override
+	public Integer getWordCount(String file) {
+		lock.readLock().lock();
+		try {
+			return wordCounts.getOrDefault(file, 0);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public Set<Integer> getPositions(String word, String file) {
+		TreeSet<Integer> positions = new TreeSet<>();
+		lock.readLock().lock();
+		try {
+			for (ReadOnlyInvertedIndex segment : all()) {
+				if (!removed(segment).contains(file)) {
+					positions.addAll(segment.getPositions(word, file));
+				}
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+		return Collections.unmodifiableSet(positions);
+	}
+
+	@Override
+	public Set<String> getLocations(String word) {
+		TreeSet<String> locations = new TreeSet<>();
+		lock.readLock().lock();
+		try {
+			for (ReadOnlyInvertedIndex segment : all()) {
+				Set<String> removed = removed(segment);
+				for (String location : segment.getLocations(word)) {
+					if (!removed.contains(location)) {
+						locations.add(location);
+					}
+				}
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+		return Collections.unmodifiableSet(locations);
+	}
+
+	@Override
+	public NavigableSet<String> getWords() {
+		TreeSet<String> words = new TreeSet<>();
+		lock.readLock().lock();
+		try {
+			for (ReadOnlyInvertedIndex segment : all()) {
+				if (removed(segment).isEmpty()) {
+					words.addAll(segment.getWords());
+				} else {
+					for (String word : segment.getWords()) {
+						if (containsWord(segment, word)) {
+							words.add(word);
+						}
+					}
+				}
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+		return Collections.unmodifiableNavigableSet(words);
+	}
+
+	@Override
+	public Map<String, Integer> getWordCounts() {
+		lock.readLock().lock();
+		try {
+			return Collections.unmodifiableMap(new TreeMap<>(wordCounts));
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+}
@@ -0,0 +1,573 @@
+package edu.usfca.cs272;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+/**
+ * Thread safe inverted index that partitions words by hash into several
+ * shards, each protected by its own lock, so indexing threads merging into
+ * different shards do not block each other and searches only lock the shards
+ * their words live in.
+ *
+ * Word counts are kept separately (under their own lock) since a document's
+ * words are usually spread across every shard. Each shard is still a sorted
+ * index, so prefix (partial) searches are answered by every shard for its own
+ * slice of the word range and the per-location matches are combined
+ * afterwards.
+ *
+ * Operations that must see a consistent index hold several shard locks
+ * together, always acquired in shard order and before the counts lock. A search
+ * holds the read locks of the shards it needs, and merging the shards into one
+ * index (to freeze or write it) holds all of them. Removing or replacing a
+ * document holds every shard write lock and the counts lock for the whole
+ * operation, so a replaced document is never seen half old and half new.
+ *
+ * Adding documents and the other operations that touch several shards (such as
+ * {@link #getWords()}) lock one shard at a time instead. They may observe a
+ * document that is only partially added if indexing is still in progress.
+ */
+public class ShardedInvertedIndex extends ThreadedInvertedIndex {
+	/**
+	 * The shards, each storing the words that hash to it
+	 */
+	private final InvertedIndex[] shards;
+
+	/**
+	 * The lock protecting each shard
+	 */
+	private final MultiReaderLock[] locks;
+
+	/**
+	 * Stores the word count of each location across all shards
+	 */
+	private final TreeMap<String, Integer> wordCounts;
+
+	/**
+	 * Lock protecting the word counts
+	 */
+	private final MultiReaderLock countsLock;
+
+	/**
+	 * Used to spread the shard each insert starts with across inserting threads
+	 */
+	private final AtomicInteger nextStart;
+
+	/**
+	 * Creates a sharded inverted index
+	 *
+	 * @param shards - the number of shards to use, at least 1
+	 */
+	public ShardedInvertedIndex(int shards) {
+		if (shards < 1) {
+			throw new IllegalArgumentException("Number of shards must be at least 1: " + shards);
+		}
+
+		this.shards = new InvertedIndex[shards];
+		this.locks = new MultiReaderLock[shards];
+
+		for (int i = 0; i < shards; i++) {
+			this.shards[i] = new InvertedIndex();
+			this.locks[i] = new MultiReaderLock();
+		}
+
+		this.wordCounts = new TreeMap<>();
+		this.countsLock = new MultiReaderLock();
+		this.nextStart = new AtomicInteger();
+	}
+
+	/**
+	 * Returns the shard a word belongs to.
+	 *
+	 * @param word - the word to look up
+	 * @return the index of the shard
+	 */
+	private int shardOf(String word) {
+		return Math.floorMod(word.hashCode(), shards.length);
+	}
+
+	/**
+	 * Splits the postings of a document by the shard each word belongs to.
+	 *
+	 * @param postings - the positions of each word in the document
+	 * @return the postings of the words in each shard, in shard order
+	 */
+	private List<Map<String, PostingList>> split(Map<String, PostingList> postings) {
+		List<Map<String, PostingList>> split = new ArrayList<>(shards.length);
+		for (int i = 0; i < shards.length; i++) {
+			split.add(new HashMap<>());
+		}
+		for (var entry : postings.entrySet()) {
+			split.get(shardOf(entry.getKey())).put(entry.getKey(), entry.getValue());
+		}
+		return split;
+	}
+
+	@Override
+	List<SearchResult> select(Set<String> queries, boolean partial, int limit) {
+		// words with the same prefix may be stored in any shard, while exact queries
+		// are grouped so each shard is only searched once
+		TreeMap<Integer, Set<String>> grouped = new TreeMap<>();
+		if (partial) {
+			for (int shard = 0; shard < shards.length; shard++) {
+				grouped.put(shard, queries);
+			}
+		} else {
+			for (String query : queries) {
+				grouped.computeIfAbsent(shardOf(query), shard -> new HashSet<>()).add(query);
+			}
+		}
+
+		// the shards are locked together (in shard order) so a document removed or
+		// replaced meanwhile is never seen half way
+		for (int shard : grouped.keySet()) {
+			locks[shard].readLock().lock();
+		}
+		countsLock.readLock().lock();
+
+		try {
+			List<List<SearchResult>> partials = new ArrayList<>(grouped.size());
+			for (var entry : grouped.entrySet()) {
+				partials.add(shards[entry.getKey()].select(entry.getValue(), partial, 0));
+			}
+			return top(combine(partials, wordCounts), limit);
+		} finally {
+			countsLock.readLock().unlock();
+			for (int shard : grouped.descendingKeySet()) {
+				locks[shard].readLock().unlock();
+			}
+		}
+	}
+
+	@Override
+	public void insertWord(String word, String fileName, int position) {
+		countsLock.writeLock().lock();
+		try {
+			wordCounts.merge(fileName, position, Integer::max);
+		} finally {
+			countsLock.writeLock().unlock();
+		}
+
+		int shard = shardOf(word);
+		locks[shard].writeLock().lock();
+		try {
+			shards[shard].insertWord(word, fileName, position);
+		} finally {
+			locks[shard].writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Adds the positions of several words in a document to the index at once. The
+	 * words are split by shard first, and each shard is locked once.
+	 *
+	 * @param location  - the location of the document
+	 * @param postings  - the positions of each word in the document
+	 * @param wordCount - the word count of the document
+	 */
+	@Override
+	void insertDocument(String location, Map<String, PostingList> postings, int wordCount) {
+		if (postings.isEmpty()) {
+			return;
+		}
+
+		List<Map<String, PostingList>> split = split(postings);
+
+		countsLock.writeLock().lock();
+		try {
+			wordCounts.merge(location, wordCount, Integer::max);
+		} finally {
+			countsLock.writeLock().unlock();
+		}
+
+		int start = Math.floorMod(nextStart.getAndIncrement(), shards.length);
+		for (int i = 0; i < shards.length; i++) {
+			int shard = (start + i) % shards.length;
+			var words = split.get(shard);
+
+			if (words.isEmpty()) {
+				continue;
+			}
+
+			locks[shard].writeLock().lock();
+			try {
+				shards[shard].insertDocument(location, words, wordCount);
+			} finally {
+				locks[shard].writeLock().unlock();
+			}
+		}
+	}
+
+	/**
+	 * Removes a document from every shard while holding every lock, so no search
+	 * or other removal or replacement sees it partially removed.
+	 *
+	 * @param location - the location of the document
+	 * @return true if the document was in the index
+	 */
+	@Override
+	public boolean removeDocument(String location) {
+		lockAll();
+		try {
+			return remove(location);
+		} finally {
+			unlockAll();
+		}
+	}
+
+	/**
+	 * Replaces every word of a document while holding every lock, so searches see
+	 * either the old or the new document but never a mix of both.
+	 *
+	 * @param location  - the location of the document
+	 * @param postings  - the new positions of each word in the document
+	 * @param wordCount - the new word count of the document
+	 */
+	@Override
+	void replaceDocument(String location, Map<String, PostingList> postings, int wordCount) {
+		List<Map<String, PostingList>> split = split(postings);
+
+		lockAll();
+		try {
+			remove(location);
+
+			if (!postings.isEmpty()) {
+				wordCounts.put(location, wordCount);
+				for (int shard = 0; shard < shards.length; shard++) {
+					if (!split.get(shard).isEmpty()) {
+						shards[shard].insertDocument(location, split.get(shard), wordCount);
+					}
+				}
+			}
+		} finally {
+			unlockAll();
+		}
+	}
+
+	/**
+	 * Removes a document from the word counts and every shard. Must be called
+	 * while holding every lock.
+	 *
+	 * @param location - the location of the document
+	 * @return true if the document was in the index
+	 */
+	private boolean remove(String location) {
+		boolean removed = wordCounts.remove(location) != null;
+		for (InvertedIndex shard : shards) {
+			removed |= shard.removeDocument(location);
+		}
+		return removed;
+	}
+
+	/**
+	 * Takes every shard write lock in shard order followed by the counts write
+	 * lock, the same order {@link #merge()} takes its read locks in.
+	 */
+	private void lockAll() {
+		for (var lock : locks) {
+			lock.writeLock().lock();
+		}
+		countsLock.writeLock().lock();
+	}
+
+	/**
+	 * Releases the locks taken by {@link #lockAll()}.
+	 */
+	private void unlockAll() {
+		countsLock.writeLock().unlock();
+		for (int i = locks.length - 1; i >= 0; i--) {
+			locks[i].writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Compacts every shard, one at a time.
+	 */
+	@Override
+	public void compact() {
+		for (int shard = 0; shard < shards.length; shard++) {
+			locks[shard].writeLock().lock();
+			try {
+				shards[shard].compact();
+			} finally {
+				locks[shard].writeLock().unlock();
+			}
+		}
+	}
+
+	/**
+	 * Adds the data from several InvertedIndexes to this one. The whole batch is
+	 * split by shard before any locks are taken. Each shard then merges its slice
+	 * of every index in a single pass (see {@link InvertedIndex#addAll(Collection)})
+	 * while holding only its own lock, and the shards are merged in parallel.
+	 *
+	 * @param others - the InvertedIndexes to add
+	 */
+	@Override
+	public void addAll(Collection<? extends InvertedIndex> others) {
+		List<InvertedIndex> batch = List.copyOf(others);
+
+		// the words of each index in the batch that belong to each shard
+		List<List<List<String>>> split = new ArrayList<>(shards.length);
+		for (int shard = 0; shard < shards.length; shard++) {
+			List<List<String>> slice = new ArrayList<>(batch.size());
+			for (int i = 0; i < batch.size(); i++) {
+				slice.add(new ArrayList<>());
+			}
+			split.add(slice);
+		}
+
+		for (int i = 0; i < batch.size(); i++) {
+			for (String word : batch.get(i).getWords()) {
+				split.get(shardOf(word)).get(i).add(word);
+			}
+		}
+
+		// counts first, so every location found by a search already has a count
+		countsLock.writeLock().lock();
+		try {
+			for (InvertedIndex other : batch) {
+				for (var entry : other.getWordCounts().entrySet()) {
+					wordCounts.merge(entry.getKey(), entry.getValue(), Integer::max);
+				}
+			}
+		} finally {
+			countsLock.writeLock().unlock();
+		}
+
+		IntStream.range(0, shards.length).parallel().forEach(shard -> {
+			var slice = split.get(shard);
+
+			if (slice.stream().allMatch(List::isEmpty)) {
+				return;
+			}
+
+			locks[shard].writeLock().lock();
+			try {
+				shards[shard].addAll(batch, slice);
+			} finally {
+				locks[shard].writeLock().unlock();
+			}
+		});
+	}
+
+	/**
+	 * Merges every shard and the word counts into a single unsharded index. All of
+	 * the shard read locks are held (in shard order) while merging so the result
+	 * is consistent. The merged index shares position lists with the shards, so
+	 * it must not be modified.
+	 *
+	 * @return the merged index
+	 */
+	private InvertedIndex merge() {
+		InvertedIndex merged = new InvertedIndex();
+
+		for (var lock : locks) {
+			lock.readLock().lock();
+		}
+		countsLock.readLock().lock();
+
+		try {
+			merged.addAll(Arrays.asList(shards));
+
+			// the shards only know the largest position of their own words
+			for (var entry : wordCounts.entrySet()) {
+				merged.updateWordCount(entry.getKey(), entry.getValue());
+			}
+		} finally {
+			countsLock.readLock().unlock();
+			for (int i = locks.length - 1; i >= 0; i--) {
+				locks[i].readLock().unlock();
+			}
+		}
+
+		return merged;
+	}
+
+	@Override
+	public FrozenInvertedIndex freeze() {
+		return merge().freeze();
+	}
+
+	@Override
+	public String toString() {
+		return merge().toString();
+	}
+
+	@Override
+	public void writeJson(Path path) throws IOException {
+		merge().writeJson(path);
+	}
+
+	@Override
+	public void writeBinary(Path path) throws IOException {
+		merge().writeBinary(path);
+	}
+
+	@Override
+	public boolean containsCount(String location) {
+		countsLock.readLock().lock();
+		try {
+			return wordCounts.containsKey(location);
+		} finally {
+			countsLock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public boolean containsWord(String word) {
+		int shard = shardOf(word);
+		locks[shard].readLock().lock();
+		try {
+			return shards[shard].containsWord(word);
+		} finally {
+			locks[shard].readLock().unlock();
+		}
+	}
+
+	@Override
+	public boolean containsLocation(String word, String location) {
+		int shard = shardOf(word);
+		locks[shard].readLock().lock();
+		try {
+			return shards[shard].containsLocation(word, location);
+		} finally {
+			locks[shard].readLock().unlock();
+		}
+	}
+
+	@Override
+	public boolean containsPosition(String word, String location, int position) {
+		int shard = shardOf(word);
+		locks[shard].readLock().lock();
+		try {
+			return shards[shard].containsPosition(word, location, position);
+		} finally {
+			locks[shard].readLock().unlock();
+		}
+	}
+
+	@Override
+	public int numUniqueWords() {
+		int total = 0;
+		for (int shard = 0; shard < shards.length; shard++) {
+			locks[shard].readLock().lock();
+			try {
+				total += shards[shard].numUniqueWords();
+			} finally {
+				locks[shard].readLock().unlock();
+			}
+		}
+		return total;
+	}
+
+	@Override
+	public int numCounts() {
+		countsLock.readLock().lock();
+		try {
+			return wordCounts.size();
+		} finally {
+			countsLock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public int numLocations(String word) {
+		int shard = shardOf(word);
+		locks[shard].readLock().lock();
+		try {
+			return shards[shard].numLocations(word);
+		} finally {
+			locks[shard].readLock().unlock();
+		}
+	}
+
+	@Override
+	public int numPositions(String word, String location) {
+		int shard = shardOf(word);
+		locks[shard].readLock().lock();
+		try {
+			return shards[shard].numPositions(word, location);
+		} finally {
+			locks[shard].readLock().unlock();
+		}
+	}
+
+	@Override
+	public Integer getWordCount(String file) {
+		countsLock.readLock().lock();
+		try {
+			return wordCounts.getOrDefault(file, 0);
+		} finally {
+			countsLock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public Set<Integer> getPositions(String word, String file) {
+		int shard = shardOf(word);
+		locks[shard].readLock().lock();
+		try {
+			return shards[shard].getPositions(word, file);
+		} finally {
+			locks[shard].readLock().unlock();
+		}
+	}
+
+	@Override
+	public Set<String> getLocations(String word) {
+		int shard = shardOf(word);
+		locks[shard].readLock().lock();
+		try {
+			return shards[shard].getLocations(word);
+		} finally {
+			locks[shard].readLock().unlock();
+		}
+	}
+
+	@Override
+	public NavigableSet<String> getWords() {
+		TreeSet<String> words = new TreeSet<>();
+		for (int shard = 0; shard < shards.length; shard++) {
+			locks[shard].readLock().lock();
+			try {
+				words.addAll(shards[shard].getWords());
+			} finally {
+				locks[shard].readLock().unlock();
+			}
+		}
+		return Collections.unmodifiableNavigableSet(words);
+	}
+
+	@Override
+	public Map<String, Integer> getWordCounts() {
+		countsLock.readLock().lock();
+		try {
+			return Collections.unmodifiableMap(new TreeMap<>(wordCounts));
+		} finally {
+			countsLock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns the number of shards used by this index.
+	 *
+	 * @return the number of shards
+	 */
+	public int numShards() {
+		return shards.length;
+	}
+}
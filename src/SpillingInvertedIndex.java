@@ -0,0 +1,625 @@
+package edu.usfca.cs272;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Thread safe inverted index for building indexes that do not fit in memory
+ * (single-pass in-memory indexing). New data goes into an ordinary in-memory
+ * index until its estimated size reaches a memory budget. The full index is
+ * then written to a temporary run file in the binary format and replaced by an
+ * empty one. Once everything has been added, {@link #finish(Path)} merges the
+ * sorted runs in a single k-way pass into the final index file, which is served
+ * by a {@link MappedInvertedIndex} without reading it into memory.
+ *
+ * The index can only be searched after it is finished, and can no longer be
+ * modified afterwards. Like {@link InvertedIndex#addAll(Collection)}, a location
+ * added more than once has its positions merged and its largest word count
+ * kept, even if it was spilled to more than one run.
+ *
+ * Documents can be removed or replaced while the index is being built. A
+ * document still in memory is removed from it directly, while a document that
+ * was already spilled gets a tombstone for every earlier run, and is left out
+ * when the runs are merged.
+ *
+ * A full index is written straight to its run file without being copied
+ * first, and only one run is written at a time: a writer that fills the new
+ * in-memory index while the previous run is still being written waits for it.
+ * Memory use therefore peaks at roughly twice the budget.
+ */
+public class SpillingInvertedIndex extends ThreadedInvertedIndex {
+	/**
+	 * The estimated number of bytes the in-memory index may use before it is
+	 * spilled to disk
+	 */
+	private final long budget;
+
+	/**
+	 * The directory the run files are written to, or null until a temporary
+	 * directory is needed
+	 */
+	private Path directory;
+
+	/**
+	 * The in-memory index new data is added to, or null once finished
+	 */
+	private InvertedIndex buffer;
+
+	/**
+	 * The estimated number of bytes used by the in-memory index
+	 */
+	private long used;
+
+	/**
+	 * The run files spilled so far, in the order they were swapped out
+	 */
+	private final List<Run> runs;
+
+	/**
+	 * The locations stored in at least one run and not removed since
+	 */
+	private final Set<String> spilledLocations;
+
+	/**
+	 * The final index, or null until the index is finished
+	 */
+	private volatile MappedInvertedIndex finished;
+
+	/**
+	 * Lock protecting the in-memory index, the run files, and the directory
+	 */
+	private final MultiReaderLock lock;
+
+	/**
+	 * Held from when a full in-memory index is swapped out until its run is
+	 * written, so only one full index waits to be written at a time
+	 */
+	private final Semaphore spilling;
+
+	/**
+	 * Creates an index that spills runs to a new temporary directory.
+	 *
+	 * @param budget - the estimated number of bytes the in-memory index may use
+	 *               before it is spilled to disk
+	 */
+	public SpillingInvertedIndex(long budget) {
+		this(budget, null);
+	}
+
+	/**
+	 * Creates an index that spills runs to a directory.
+	 *
+	 * @param budget    - the estimated number of bytes the in-memory index may use
+	 *                  before it is spilled to disk
+	 * @param directory - the directory to write run files to, or null to create a
+	 *                  temporary directory when it is first needed
+	 */
+	public SpillingInvertedIndex(long budget, Path directory) {
+		if (budget < 1) {
+			throw new IllegalArgumentException("Memory budget must be positive: " + budget);
+		}
+
+		this.budget = budget;
+		this.directory = directory;
+		this.buffer = new InvertedIndex();
+		this.used = 0;
+		this.runs = new ArrayList<>();
+		this.spilledLocations = new HashSet<>();
+		this.finished = null;
+		this.lock = new MultiReaderLock();
+		this.spilling = new Semaphore(1);
+	}
+
+	/**
+	 * Returns the number of run files spilled so far.
+	 *
+	 * @return the number of runs
+	 */
+	public int numRuns() {
+		lock.readLock().lock();
+		try {
+			return runs.size();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Spills whatever is left in memory and merges every run into a single index
+	 * file. Must only be called once every write to this index has returned.
+	 *
+	 * @param output - the index file to write
+	 * @return the finished index, which is also used by this index from now on
+	 * @throws IOException if a run cannot be read or the index cannot be written
+	 * @throws IllegalStateException if the index is already finished
+	 */
+	public MappedInvertedIndex finish(Path output) throws IOException {
+		Run last = null;
+		lock.writeLock().lock();
+		try {
+			checkOpen();
+
+			// an empty index still needs a file
+			if (buffer.numCounts() > 0 || runs.isEmpty()) {
+				last = swap(buffer);
+			}
+			buffer = null;
+			used = 0;
+		} finally {
+			lock.writeLock().unlock();
+		}
+
+		if (last != null) {
+			spill(last);
+		}
+
+		try {
+			if (runs.size() == 1 && runs.get(0).removed.isEmpty()) {
+				Files.move(runs.get(0).path, output, StandardCopyOption.REPLACE_EXISTING);
+			} else {
+				List<MappedInvertedIndex> mapped = new ArrayList<>(runs.size());
+				List<Set<String>> removed = new ArrayList<>(runs.size());
+				for (Run run : runs) {
+					mapped.add(MappedInvertedIndex.open(run.path));
+					removed.add(run.removed);
+				}
+				MappedInvertedIndex.merge(mapped, removed, output);
+			}
+		} finally {
+			for (Run run : runs) {
+				Files.deleteIfExists(run.path);
+			}
+		}
+
+		finished = MappedInvertedIndex.open(output);
+		return finished;
+	}
+
+	/**
+	 * Finishes the index into a temporary file that is deleted when the program
+	 * exits.
+	 *
+	 * @return the finished index
+	 * @throws IOException if a run cannot be read or the index cannot be written
+	 * @see #finish(Path)
+	 */
+	public MappedInvertedIndex finish() throws IOException {
+		Path output;
+		lock.writeLock().lock();
+		try {
+			output = Files.createTempFile(directory(), "index", ".bin");
+		} finally {
+			lock.writeLock().unlock();
+		}
+
+		output.toFile().deleteOnExit();
+		return finish(output);
+	}
+
+	/**
+	 * Adds an index file written earlier, such as a saved index being updated, as
+	 * a run of its own instead of reading it into memory. The file is copied into
+	 * the run directory, so finishing the index into the same path is safe, and
+	 * documents removed or replaced afterwards get a tombstone for it like for any
+	 * other run.
+	 *
+	 * @param saved - the index file to add
+	 * @throws IOException if the file cannot be copied
+	 * @throws IllegalStateException if the index is already finished
+	 */
+	public void addRun(MappedInvertedIndex saved) throws IOException {
+		lock.writeLock().lock();
+		try {
+			checkOpen();
+			Path path = Files.createTempFile(directory(), "run", ".bin");
+			try {
+				saved.writeBinary(path);
+			} catch (IOException e) {
+				Files.deleteIfExists(path);
+				throw e;
+			}
+
+			runs.add(new Run(path, null));
+			spilledLocations.addAll(saved.getWordCounts().keySet());
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns the directory for run files, creating a temporary directory if none
+	 * was given. Must be called while holding the write lock.
+	 *
+	 * @return the run directory
+	 * @throws IOException if the directory cannot be created
+	 */
+	private Path directory() throws IOException {
+		if (directory == null) {
+			directory = Files.createTempDirectory("index-runs");
+			directory.toFile().deleteOnExit();
+		}
+		return directory;
+	}
+
+	/**
+	 * Throws an exception if the index is already finished. Must be called while
+	 * holding the lock.
+	 *
+	 * @throws IllegalStateException if the index is already finished
+	 */
+	private void checkOpen() {
+		if (buffer == null) {
+			throw new IllegalStateException("Index is already finished and cannot be modified.");
+		}
+	}
+
+	/**
+	 * Counts bytes added to the in-memory index, and swaps it for an empty one if
+	 * it is over budget. Must be called while holding the write lock.
+	 *
+	 * @param bytes - the estimated number of bytes added
+	 * @return the run the full index must be spilled to, or null if there is room
+	 *         left
+	 * @throws UncheckedIOException if the run file cannot be created
+	 */
+	private Run account(long bytes) {
+		used += bytes;
+		if (used < budget) {
+			return null;
+		}
+
+		Run run = swap(buffer);
+		buffer = new InvertedIndex();
+		used = 0;
+		return run;
+	}
+
+	/**
+	 * Creates the run file a full in-memory index is spilled to, first waiting for
+	 * the previous run to be written. The run is added right away, so documents
+	 * removed before the index is written still get a tombstone for it. Must be
+	 * called while holding the write lock.
+	 *
+	 * @param full - the index to spill
+	 * @return the run to write the index to
+	 * @throws UncheckedIOException if the run file cannot be created
+	 */
+	private Run swap(InvertedIndex full) {
+		// writing a run never takes the lock, so this cannot wait forever
+		spilling.acquireUninterruptibly();
+		try {
+			Run run = new Run(Files.createTempFile(directory(), "run", ".bin"), full);
+			runs.add(run);
+			spilledLocations.addAll(full.getWordCounts().keySet());
+			return run;
+		} catch (IOException e) {
+			spilling.release();
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Writes a full in-memory index to its run file. Called without holding the
+	 * lock, so other threads can keep adding to the new in-memory index meanwhile.
+	 * The index is written straight from its postings rather than frozen first.
+	 *
+	 * @param run - the run to write
+	 * @throws UncheckedIOException if the run cannot be written
+	 */
+	private void spill(Run run) {
+		try {
+			run.full.writeBinary(run.path);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} finally {
+			// the run is kept until finished, but the full index is not needed anymore
+			run.full = null;
+			spilling.release();
+		}
+	}
+
+	/**
+	 * Estimates the bytes a document adds to the in-memory index if it is not
+	 * already there. Must be called while holding the lock.
+	 *
+	 * @param location - the location of the document
+	 * @return the estimated number of bytes
+	 */
+	private long estimateDocument(String location) {
+		if (buffer.containsCount(location)) {
+			return 0;
+		}
+		return DOCUMENT_BYTES + Character.BYTES * (long) location.length();
+	}
+
+	/**
+	 * Estimates the bytes a word adds to the in-memory index if it is not already
+	 * there. Must be called while holding the lock.
+	 *
+	 * @param word - the word
+	 * @return the estimated number of bytes
+	 */
+	private long estimateWord(String word) {
+		if (buffer.containsWord(word)) {
+			return 0;
+		}
+		return WORD_BYTES + Character.BYTES * (long) word.length();
+	}
+
+	@Override
+	public void insertWord(String word, String fileName, int position) {
+		Run full;
+		lock.writeLock().lock();
+		try {
+			checkOpen();
+			long bytes = estimateDocument(fileName) + estimateWord(word) + POSITION_BYTES;
+			if (!buffer.containsLocation(word, fileName)) {
+				bytes += POSTING_BYTES;
+			}
+
+			buffer.insertWord(word, fileName, position);
+			full = account(bytes);
+		} finally {
+			lock.writeLock().unlock();
+		}
+
+		if (full != null) {
+			spill(full);
+		}
+	}
+
+	@Override
+	void insertDocument(String location, Map<String, PostingList> postings, int wordCount) {
+		Run full;
+		lock.writeLock().lock();
+		try {
+			checkOpen();
+			long bytes = estimateDocument(location);
+			for (var entry : postings.entrySet()) {
+				bytes += estimateWord(entry.getKey()) + POSTING_BYTES + POSITION_BYTES * (long) entry.getValue().size();
+			}
+
+			buffer.insertDocument(location, postings, wordCount);
+			full = account(bytes);
+		} finally {
+			lock.writeLock().unlock();
+		}
+
+		if (full != null) {
+			spill(full);
+		}
+	}
+
+	/**
+	 * Removes a document. A document still in memory is removed right away, and
+	 * a document that was already spilled is left out when the runs are merged.
+	 *
+	 * @param location - the location of the document
+	 * @return true if the document was in the index
+	 */
+	@Override
+	public boolean removeDocument(String location) {
+		lock.writeLock().lock();
+		try {
+			checkOpen();
+			boolean removed = buffer.removeDocument(location);
+
+			if (spilledLocations.remove(location)) {
+				for (Run run : runs) {
+					run.removed.add(location);
+				}
+				removed = true;
+			}
+			return removed;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Compacts the in-memory index. Spilled runs are compacted when they are
+	 * merged by {@link #finish(Path)}.
+	 */
+	@Override
+	public void compact() {
+		lock.writeLock().lock();
+		try {
+			checkOpen();
+			buffer.compact();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public void addAll(InvertedIndex other) {
+		addAll(List.of(other));
+	}
+
+	/**
+	 * Adds the data from several InvertedIndexes to the in-memory index, spilling
+	 * it to disk afterwards if it is over budget.
+	 *
+	 * @param others - the InvertedIndexes to add
+	 */
+	@Override
+	public void addAll(Collection<? extends InvertedIndex> others) {
+		// sizing the other indexes does not need the lock
+		long bytes = 0;
+		for (InvertedIndex other : others) {
+			bytes += other.estimateBytes();
+		}
+
+		Run full;
+		lock.writeLock().lock();
+		try {
+			checkOpen();
+
+			// words and documents already in memory are not stored again
+			for (InvertedIndex other : others) {
+				for (String word : other.getWords()) {
+					bytes -= WORD_BYTES + Character.BYTES * (long) word.length() - estimateWord(word);
+				}
+				for (String location : other.getWordCounts().keySet()) {
+					bytes -= DOCUMENT_BYTES + Character.BYTES * (long) location.length() - estimateDocument(location);
+				}
+			}
+
+			buffer.addAll(others);
+			full = account(bytes);
+		} finally {
+			lock.writeLock().unlock();
+		}
+
+		if (full != null) {
+			spill(full);
+		}
+	}
+
+	/**
+	 * Returns the finished index, which serves every read.
+	 *
+	 * @return the finished index
+	 * @throws IllegalStateException if the index is not finished yet
+	 */
+	private MappedInvertedIndex view() {
+		MappedInvertedIndex view = finished;
+		if (view == null) {
+			throw new IllegalStateException("Index is still being built, call finish() first.");
+		}
+		return view;
+	}
+
+	@Override
+	List<SearchResult> select(Set<String> queries, boolean partial, int limit) {
+		return view().select(queries, partial, limit);
+	}
+
+	@Override
+	public FrozenInvertedIndex freeze() {
+		return view().freeze();
+	}
+
+	@Override
+	public String toString() {
+		return view().toString();
+	}
+
+	@Override
+	public void writeJson(Path path) throws IOException {
+		view().writeJson(path);
+	}
+
+	@Override
+	public void writeBinary(Path path) throws IOException {
+		view().writeBinary(path);
+	}
+
+	@Override
+	public boolean containsCount(String location) {
+		return view().containsCount(location);
+	}
+
+	@Override
+	public boolean containsWord(String word) {
+		return view().containsWord(word);
+	}
+
+	@Override
+	public boolean containsLocation(String word, String location) {
+		return view().containsLocation(word, location);
+	}
+
+	@Override
+	public boolean containsPosition(String word, String location, int position) {
+		return view().containsPosition(word, location, position);
+	}
+
+	@Override
+	public int numUniqueWords() {
+		return view().numUniqueWords();
+	}
+
+	@Override
+	public int numCounts() {
+		return view().numCounts();
+	}
+
+	@Override
+	public int numLocations(String word) {
+		return view().numLocations(word);
+	}
+
+	@Override
+	public int numPositions(String word, String location) {
+		return view().numPositions(word, location);
+	}
+
+	@Override
+	public Integer getWordCount(String file) {
+		return view().getWordCount(file);
+	}
+
+	@Override
+	public Set<Integer> getPositions(String word, String file) {
+		return view().getPositions(word, file);
+	}
+
+	@Override
+	public Set<String> getLocations(String word) {
+		return view().getLocations(word);
+	}
+
+	@Override
+	public NavigableSet<String> getWords() {
+		return view().getWords();
+	}
+
+	@Override
+	public Map<String, Integer> getWordCounts() {
+		return view().getWordCounts();
+	}
+
+	/**
+	 * A run file, with the locations removed from it after it was swapped out.
+	 */
+	private static class Run {
+		/**
+		 * The run file
+		 */
+		private final Path path;
+
+		/**
+		 * The locations removed from the run, guarded by the index lock
+		 */
+		private final Set<String> removed;
+
+		/**
+		 * The full in-memory index to write to the run, or null once it is written
+		 * or if the run was added as a file
+		 */
+		private InvertedIndex full;
+
+		/**
+		 * @param path - the run file
+		 * @param full - the full in-memory index to write to the run, or null if the
+		 *             run is already written
+		 */
+		public Run(Path path, InvertedIndex full) {
+			this.path = path;
+			this.removed = new HashSet<>();
+			this.full = full;
+		}
+	}
+}
@@ -0,0 +1,278 @@
+package edu.usfca.cs272;
+
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * A work queue where every worker thread has its own queue of tasks, so
+ * threads adding and taking tasks rarely contend with each other. Tasks added
+ * by a worker (such as a crawler task finding new links) go to that worker's
+ * own queue, and are run newest first while they are likely still in its cache.
+ * Tasks added by any other thread go to a shared queue. A worker with nothing
+ * left to do steals the oldest tasks from the other workers.
+ *
+ * Nothing is locked to add or run a task: pending work is counted atomically,
+ * and an idle worker parks until a new task wakes it, instead of every waiting
+ * thread being woken for each task.
+ *
+ * @see <a href=
+ *      "https://docs.oracle.com/en/java/javase/17/docs/api/java.base/java/util/concurrent/ForkJoinPool.html">
+ *      ForkJoinPool</a>
+ */
+public class StealingWorkQueue extends WorkQueue {
+	/** Logger used for this class. */
+	private static final Logger log = LogManager.getLogger();
+
+	/** Workers that run their own tasks, or steal tasks from each other. */
+	private final Worker[] workers;
+
+	/** Tasks added by threads other than the workers. */
+	private final ConcurrentLinkedQueue<Runnable> submitted;
+
+	/** The number of tasks added but not finished yet. */
+	private final AtomicLong pending;
+
+	/** The number of parked workers, checked before looking for one to wake. */
+	private final AtomicInteger idle;
+
+	/** Used to wait in {@link #finish()} until there is no more pending work. */
+	private final Object finishLock;
+
+	/** Used to signal the workers should terminate. */
+	private volatile boolean shutdown;
+
+	/**
+	 * Starts a work queue with the default number of threads.
+	 *
+	 * @see #StealingWorkQueue(int)
+	 */
+	public StealingWorkQueue() {
+		this(DEFAULT);
+	}
+
+	/**
+	 * Starts a work queue with the specified number of threads.
+	 *
+	 * @param threads number of worker threads; should be greater than 1
+	 */
+	public StealingWorkQueue(int threads) {
+		super(threads, false);
+		this.workers = new Worker[threads];
+		this.submitted = new ConcurrentLinkedQueue<>();
+		this.pending = new AtomicLong();
+		this.idle = new AtomicInteger();
+		this.finishLock = new Object();
+		this.shutdown = false;
+
+		for (int i = 0; i < threads; i++) {
+			workers[i] = new Worker();
+		}
+
+		// start the threads only once all of them can be stolen from
+		for (Worker worker : workers) {
+			worker.start();
+		}
+	}
+
+	@Override
+	public void execute(Runnable task) {
+		if (shutdown) {
+			throw new RejectedExecutionException("Work queue is shut down.");
+		}
+
+		pending.incrementAndGet();
+
+		if (Thread.currentThread() instanceof Worker worker && worker.owner() == this) {
+			worker.tasks.addLast(task);
+		} else {
+			submitted.add(task);
+		}
+
+		wakeOne();
+	}
+
+	@Override
+	public void finish() {
+		synchronized (finishLock) {
+			while (pending.get() > 0) {
+				try {
+					finishLock.wait();
+				} catch (InterruptedException e) {
+					System.err.println("Warning: Interrupted while waiting on pending work.");
+
+					log.catching(Level.WARN, e);
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+		}
+	}
+
+	@Override
+	public void join() {
+		try {
+			finish();
+			shutdown();
+
+			for (Worker worker : workers) {
+				worker.join();
+			}
+		} catch (InterruptedException e) {
+			System.err.println("Warning: Work queue interrupted while joining.");
+			log.catching(Level.WARN, e);
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	@Override
+	public void shutdown() {
+		shutdown = true;
+
+		for (Worker worker : workers) {
+			LockSupport.unpark(worker);
+		}
+	}
+
+	@Override
+	public int size() {
+		return workers.length;
+	}
+
+	/**
+	 * Wakes up one parked worker, if any, to run a new task.
+	 */
+	private void wakeOne() {
+		if (idle.get() == 0) {
+			return;
+		}
+
+		for (Worker worker : workers) {
+			if (worker.parked.get() && worker.parked.compareAndSet(true, false)) {
+				idle.decrementAndGet();
+				LockSupport.unpark(worker);
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Marks a task as finished, waking up threads waiting in {@link #finish()} if
+	 * it was the last one.
+	 */
+	private void finished() {
+		if (pending.decrementAndGet() == 0) {
+			synchronized (finishLock) {
+				finishLock.notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Runs the tasks in its own queue, then the shared queue, and then steals
+	 * from the other workers, parking when there is nothing left to do. Exits once
+	 * a shutdown is detected.
+	 */
+	private class Worker extends Thread {
+		/** The tasks added by this worker. */
+		private final ConcurrentLinkedDeque<Runnable> tasks;
+
+		/** Whether this worker is parked, waiting to be woken for a new task. */
+		private final AtomicBoolean parked;
+
+		/**
+		 * Initializes a worker thread with a custom name.
+		 */
+		public Worker() {
+			this.tasks = new ConcurrentLinkedDeque<>();
+			this.parked = new AtomicBoolean();
+			setName("Worker" + getName());
+		}
+
+		/**
+		 * Returns the queue this worker belongs to.
+		 *
+		 * @return the queue of this worker
+		 */
+		private StealingWorkQueue owner() {
+			return StealingWorkQueue.this;
+		}
+
+		@Override
+		public void run() {
+			while (!shutdown) {
+				Runnable task = next();
+
+				if (task == null) {
+					// announce this worker is idle before checking one last time, so a
+					// task added in between either is found or wakes this worker
+					parked.set(true);
+					idle.incrementAndGet();
+
+					task = next();
+					if (task == null) {
+						while (parked.get() && !shutdown) {
+							LockSupport.park(this);
+						}
+						continue;
+					}
+
+					if (parked.compareAndSet(true, false)) {
+						idle.decrementAndGet();
+					}
+				}
+
+				try {
+					task.run();
+				} catch (RuntimeException e) {
+					// catch runtime exceptions to avoid leaking threads
+					System.err.printf("Error: %s encountered an exception while running.%n", this.getName());
+					log.catching(Level.ERROR, e);
+				}
+
+				finished();
+			}
+		}
+
+		/**
+		 * Finds the next task to run: the newest task of this worker, the oldest
+		 * task in the shared queue, or the oldest task of another worker.
+		 *
+		 * @return the next task, or null if there are none
+		 */
+		private Runnable next() {
+			Runnable task = tasks.pollLast();
+			if (task != null) {
+				return task;
+			}
+
+			task = submitted.poll();
+			if (task != null) {
+				return task;
+			}
+
+			// start stealing at a random worker so thieves spread out
+			int start = ThreadLocalRandom.current().nextInt(workers.length);
+			for (int i = 0; i < workers.length; i++) {
+				Worker victim = workers[(start + i) % workers.length];
+				if (victim != this) {
+					task = victim.tasks.pollFirst();
+					if (task != null) {
+						return task;
+					}
+				}
+			}
+
+			return null;
+		}
+	}
+}
@@ -0,0 +1,188 @@
+package edu.usfca.cs272;
+
+import java.nio.CharBuffer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import opennlp.tools.stemmer.Stemmer;
+
+/**
+ * Remembers the stems of recently stemmed words, so common words (which make up
+ * most of any text) are only stemmed once instead of every time they appear.
+ * The cache is shared by every thread: lookups do not block, and words that are
+ * not cached yet are stemmed with a stemmer owned by the calling thread.
+ *
+ * The number of words cached is bounded. Words are kept in two generations:
+ * new words go into the young generation, and once it is full it becomes the
+ * old generation, replacing (evicting) the previous old generation. A word found
+ * in the old generation is moved back into the young one, so words that keep
+ * appearing are never evicted, while rare words are dropped.
+ *
+ * Words are looked up by their characters, so a word passed as a
+ * {@link CharBuffer} (such as the reused buffer of a {@link WordTokenizer}) is
+ * found without copying it into a new string first. Only words that are not
+ * cached yet are copied.
+ *
+ * The number of hits and misses is recorded to tell how well the cache works.
+ */
+public class StemCache implements Stemmer {
+	/**
+	 * The default number of words cached
+	 */
+	public static final int DEFAULT_CAPACITY = 1 << 16;
+
+	/**
+	 * The cache shared by everything stemming English words
+	 */
+	public static final StemCache ENGLISH = new StemCache(DEFAULT_CAPACITY, EnglishStemmer::new);
+
+	/**
+	 * The number of words each generation holds before it is replaced
+	 */
+	private final int generation;
+
+	/**
+	 * The stemmer of each thread, used to stem words that are not cached
+	 */
+	private final ThreadLocal<Stemmer> stemmers;
+
+	/**
+	 * The most recently used words and their stems
+	 */
+	private volatile ConcurrentHashMap<CharBuffer, String> young;
+
+	/**
+	 * The words used before the young generation was started, which are evicted
+	 * next unless used again
+	 */
+	private volatile ConcurrentHashMap<CharBuffer, String> old;
+
+	/**
+	 * The number of words found in the cache
+	 */
+	private final LongAdder hits;
+
+	/**
+	 * The number of words that had to be stemmed
+	 */
+	private final LongAdder misses;
+
+	/**
+	 * Creates a new cache.
+	 *
+	 * @param capacity - the maximum number of words cached
+	 * @param stemmer  - creates the stemmer of each thread, which does not need to
+	 *                 be thread safe
+	 */
+	public StemCache(int capacity, Supplier<? extends Stemmer> stemmer) {
+		this.generation = Math.max(1, capacity / 2);
+		this.stemmers = ThreadLocal.withInitial(stemmer);
+		this.young = new ConcurrentHashMap<>();
+		this.old = new ConcurrentHashMap<>();
+		this.hits = new LongAdder();
+		this.misses = new LongAdder();
+	}
+
+	/**
+	 * Returns the stem of a word, stemming it only if it is not cached.
+	 *
+	 * @param word - the word to stem
+	 * @return the stem of the word
+	 */
+	@Override
+	public String stem(CharSequence word) {
+		// buffers compare equal by their remaining characters, whatever backs them
+		CharBuffer chars = word instanceof CharBuffer buffer ? buffer : CharBuffer.wrap(word);
+		ConcurrentHashMap<CharBuffer, String> current = young;
+
+		String stem = current.get(chars);
+		if (stem != null) {
+			hits.increment();
+			return stem;
+		}
+
+		// the word may be a reused buffer, so the cache keeps its own copy
+		CharBuffer key = CharBuffer.wrap(chars.toString().toCharArray());
+		stem = old.get(key);
+		if (stem != null) {
+			hits.increment();
+		} else {
+			misses.increment();
+			stem = stemmers.get().stem(key).toString();
+		}
+
+		current.put(key, stem);
+		if (current.size() >= generation) {
+			rotate(current);
+		}
+
+		return stem;
+	}
+
+	/**
+	 * Starts a new young generation once the current one is full, evicting the
+	 * old generation.
+	 *
+	 * @param full - the young generation that is full
+	 */
+	private synchronized void rotate(ConcurrentHashMap<CharBuffer, String> full) {
+		// another thread may have rotated it already
+		if (young == full) {
+			old = full;
+			young = new ConcurrentHashMap<>();
+		}
+	}
+
+	/**
+	 * Returns the number of words found in the cache.
+	 *
+	 * @return the number of hits
+	 */
+	public long hits() {
+		return hits.sum();
+	}
+
+	/**
+	 * Returns the number of words that were not cached and had to be stemmed.
+	 *
+	 * @return the number of misses
+	 */
+	public long misses() {
+		return misses.sum();
+	}
+
+	/**
+	 * Returns the fraction of words found in the cache.
+	 *
+	 * @return the hit rate between 0 and 1, or 0 if nothing was stemmed yet
+	 */
+	public double hitRate() {
+		long found = hits();
+		long total = found + misses();
+		return total == 0 ? 0 : (double) found / total;
+	}
+
+	/**
+	 * Returns the number of words currently cached.
+	 *
+	 * @return the number of words cached
+	 */
+	public int size() {
+		ConcurrentHashMap<CharBuffer, String> current = young;
+		ConcurrentHashMap<CharBuffer, String> previous = old;
+		int size = current.size();
+		for (CharBuffer word : previous.keySet()) {
+			if (!current.containsKey(word)) {
+				size++;
+			}
+		}
+		return size;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%d hits, %d misses (%.1f%% hit rate), %d words cached", hits(), misses(),
+				hitRate() * 100, size());
+	}
+}
@@ -0,0 +1,416 @@
+package edu.usfca.cs272;
+
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Compact, read-only dictionary of sorted words that maps each word to its
+ * ordinal (its position in sorted order). Words are front coded in blocks: the
+ * first word of each block is stored in full, and every other word only stores
+ * the suffix that differs from the word before it. All of the characters are
+ * packed into a single buffer (an array, or part of a memory-mapped file), so
+ * a dictionary of stems takes a fraction of the memory of the equivalent
+ * {@link String} objects.
+ *
+ * Lookups binary search the first word of each block and then scan at most one
+ * block. Since words sharing a prefix are stored next to each other, every word
+ * starting with a prefix is a single contiguous range of ordinals.
+ *
+ * Words are ordered the same way as {@link String#compareTo(String)}.
+ */
+public class TermDictionary implements Iterable<String> {
+	/**
+	 * The number of words in each block
+	 */
+	private static final int BLOCK_SIZE = 16;
+
+	/**
+	 * Lengths at or above this value are stored in two characters
+	 */
+	private static final int LONG_LENGTH = 0x8000;
+
+	/**
+	 * The encoded words; each word is a shared prefix length, a suffix length, and
+	 * the suffix characters
+	 */
+	private final CharBuffer data;
+
+	/**
+	 * The offset in data where each block starts
+	 */
+	private final IntBuffer blocks;
+
+	/**
+	 * The number of words stored
+	 */
+	private final int size;
+
+	/**
+	 * Builds a dictionary from words that are already sorted and unique.
+	 *
+	 * @param sorted - the words in increasing order, without duplicates
+	 * @throws IllegalArgumentException if the words are not sorted and unique
+	 */
+	public TermDictionary(Collection<String> sorted) {
+		this.size = sorted.size();
+		int[] starts = new int[(size + BLOCK_SIZE - 1) / BLOCK_SIZE];
+
+		char[] encoded = new char[Math.max(16, size * 4)];
+		int length = 0;
+		int ordinal = 0;
+		String previous = null;
+
+		for (String word : sorted) {
+			if (previous != null && previous.compareTo(word) >= 0) {
+				throw new IllegalArgumentException("Words are not sorted and unique: " + previous + ", " + word);
+			}
+
+			int shared = 0;
+			if (ordinal % BLOCK_SIZE == 0) {
+				starts[ordinal / BLOCK_SIZE] = length;
+			} else {
+				int max = Math.min(previous.length(), word.length());
+				while (shared < max && previous.charAt(shared) == word.charAt(shared)) {
+					shared++;
+				}
+			}
+
+			int suffix = word.length() - shared;
+			if (length + suffix + 4 > encoded.length) {
+				encoded = Arrays.copyOf(encoded, Math.max(encoded.length * 2, length + suffix + 4));
+			}
+
+			length = writeLength(encoded, length, shared);
+			length = writeLength(encoded, length, suffix);
+			word.getChars(shared, word.length(), encoded, length);
+			length += suffix;
+
+			previous = word;
+			ordinal++;
+		}
+
+		this.data = CharBuffer.wrap(Arrays.copyOf(encoded, length));
+		this.blocks = IntBuffer.wrap(starts);
+	}
+
+	/**
+	 * Creates a dictionary from already encoded words, such as ones read from a
+	 * file by {@link MappedInvertedIndex}.
+	 *
+	 * @param data   - the encoded words, as returned by {@link #data()}
+	 * @param blocks - where each block starts, as returned by {@link #blocks()}
+	 * @param size   - the number of words
+	 */
+	TermDictionary(CharBuffer data, IntBuffer blocks, int size) {
+		this.data = data;
+		this.blocks = blocks;
+		this.size = size;
+	}
+
+	/**
+	 * Returns the number of words in the dictionary.
+	 *
+	 * @return the number of words
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Finds the ordinal of a word.
+	 *
+	 * @param word - the word to look up
+	 * @return the ordinal of the word if found, otherwise
+	 *         {@code (-(insertion point) - 1)} like
+	 *         {@link Arrays#binarySearch(Object[], Object)}
+	 */
+	public int find(String word) {
+		int ordinal = bound(word, false, false);
+		if (ordinal < size && get(ordinal).equals(word)) {
+			return ordinal;
+		}
+		return -ordinal - 1;
+	}
+
+	/**
+	 * Returns the ordinal of the first word starting with a prefix, or of the
+	 * first word after the prefix if none do.
+	 *
+	 * @param prefix - the prefix to look for
+	 * @return the first ordinal of the prefix range (inclusive)
+	 */
+	public int prefixStart(String prefix) {
+		return bound(prefix, true, false);
+	}
+
+	/**
+	 * Returns the ordinal after the last word starting with a prefix.
+	 *
+	 * @param prefix - the prefix to look for
+	 * @return the last ordinal of the prefix range (exclusive)
+	 */
+	public int prefixEnd(String prefix) {
+		return bound(prefix, true, true);
+	}
+
+	/**
+	 * Returns the word with an ordinal.
+	 *
+	 * @param ordinal - an ordinal between 0 (inclusive) and {@link #size()}
+	 * @return the word
+	 * @throws IndexOutOfBoundsException if the ordinal is out of range
+	 */
+	public String get(int ordinal) {
+		if (ordinal < 0 || ordinal >= size) {
+			throw new IndexOutOfBoundsException(ordinal);
+		}
+
+		Decoder decoder = new Decoder();
+		decoder.seek(ordinal / BLOCK_SIZE);
+		for (int i = ordinal % BLOCK_SIZE; i >= 0; i--) {
+			decoder.next();
+		}
+		return decoder.word();
+	}
+
+	/**
+	 * Returns the encoded words, so they can be written to a file.
+	 *
+	 * @return a read-only view of the encoded words
+	 */
+	CharBuffer data() {
+		return data.asReadOnlyBuffer().clear();
+	}
+
+	/**
+	 * Returns where each block of encoded words starts, so they can be written to
+	 * a file.
+	 *
+	 * @return a read-only view of the block offsets
+	 */
+	IntBuffer blocks() {
+		return blocks.asReadOnlyBuffer().clear();
+	}
+
+	@Override
+	public Iterator<String> iterator() {
+		return new Iterator<>() {
+			/** The ordinal of the next word */
+			private int ordinal = 0;
+
+			/** Decodes the block the next word is in */
+			private Decoder decoder = null;
+
+			@Override
+			public boolean hasNext() {
+				return ordinal < size;
+			}
+
+			@Override
+			public String next() {
+				if (ordinal >= size) {
+					throw new NoSuchElementException();
+				}
+
+				if (decoder == null) {
+					decoder = new Decoder();
+				}
+				if (ordinal % BLOCK_SIZE == 0) {
+					decoder.seek(ordinal / BLOCK_SIZE);
+				}
+
+				decoder.next();
+				ordinal++;
+				return decoder.word();
+			}
+		};
+	}
+
+	/**
+	 * Finds the first ordinal whose word compares at least (or greater than) a
+	 * key.
+	 *
+	 * @param key    - the key to compare words with
+	 * @param prefix - if true, words are only compared up to the length of the
+	 *               key, so every word starting with the key compares equal
+	 * @param strict - if true, finds the first word greater than the key instead
+	 * @return the first matching ordinal, or {@link #size()} if there is none
+	 */
+	private int bound(String key, boolean prefix, boolean strict) {
+		Decoder decoder = new Decoder();
+
+		// find the first block whose first word matches
+		int low = 0;
+		int high = blocks.limit();
+
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			decoder.seek(middle);
+			decoder.next();
+
+			if (matches(compare(decoder.buffer, decoder.length, key, prefix), strict)) {
+				high = middle;
+			} else {
+				low = middle + 1;
+			}
+		}
+
+		if (low == 0) {
+			return 0;
+		}
+
+		// the answer is in the previous block or is the first word of this block
+		decoder.seek(low - 1);
+		int ordinal = (low - 1) * BLOCK_SIZE;
+		int end = Math.min(low * BLOCK_SIZE, size);
+
+		while (ordinal < end) {
+			decoder.next();
+			if (matches(compare(decoder.buffer, decoder.length, key, prefix), strict)) {
+				return ordinal;
+			}
+			ordinal++;
+		}
+
+		return end;
+	}
+
+	/**
+	 * @param comparison - the result of comparing a word to a key
+	 * @param strict     - whether the word must be greater than the key
+	 * @return whether the word is at least (or greater than) the key
+	 */
+	private static boolean matches(int comparison, boolean strict) {
+		return strict ? comparison > 0 : comparison >= 0;
+	}
+
+	/**
+	 * Compares characters stored in an array to a key, the same way as
+	 * {@link String#compareTo(String)}.
+	 *
+	 * @param chars  - the array holding the word
+	 * @param length - the length of the word
+	 * @param key    - the key to compare with
+	 * @param prefix - if true, only the first characters of the word up to the
+	 *               length of the key are compared
+	 * @return negative, zero, or positive if the word is less than, equal to, or
+	 *         greater than the key
+	 */
+	private static int compare(char[] chars, int length, String key, boolean prefix) {
+		if (prefix) {
+			length = Math.min(length, key.length());
+		}
+
+		int max = Math.min(length, key.length());
+		for (int i = 0; i < max; i++) {
+			int diff = chars[i] - key.charAt(i);
+			if (diff != 0) {
+				return diff;
+			}
+		}
+		return length - key.length();
+	}
+
+	/**
+	 * Writes a length using one character, or two if it is large.
+	 *
+	 * @param chars  - the array to write to
+	 * @param offset - where to write
+	 * @param value  - the length to write
+	 * @return the offset after the written length
+	 */
+	private static int writeLength(char[] chars, int offset, int value) {
+		if (value >= LONG_LENGTH) {
+			chars[offset++] = (char) (LONG_LENGTH | (value >>> 15));
+			chars[offset++] = (char) (value & 0x7FFF);
+		} else {
+			chars[offset++] = (char) value;
+		}
+		return offset;
+	}
+
+	/**
+	 * Reads a length written by {@link #writeLength(char[], int, int)}.
+	 *
+	 * @param chars  - the buffer to read from
+	 * @param offset - where to read
+	 * @return the length
+	 */
+	private static int readLength(CharBuffer chars, int offset) {
+		int value = chars.get(offset);
+		if (value >= LONG_LENGTH) {
+			return ((value & 0x7FFF) << 15) | chars.get(offset + 1);
+		}
+		return value;
+	}
+
+	/**
+	 * Decodes the words of a block one at a time into a reusable buffer.
+	 */
+	private class Decoder {
+		/**
+		 * The offset of the next encoded word
+		 */
+		private int offset;
+
+		/**
+		 * The characters of the current word
+		 */
+		private char[] buffer;
+
+		/**
+		 * The length of the current word
+		 */
+		private int length;
+
+		/**
+		 * Creates a decoder, which must be positioned with {@link #seek(int)} before
+		 * decoding any words
+		 */
+		public Decoder() {
+			this.offset = 0;
+			this.buffer = new char[32];
+			this.length = 0;
+		}
+
+		/**
+		 * Moves to the start of a block.
+		 *
+		 * @param block - the block to decode
+		 */
+		public void seek(int block) {
+			this.offset = blocks.get(block);
+			this.length = 0;
+		}
+
+		/**
+		 * Decodes the next word of the block.
+		 */
+		public void next() {
+			int shared = readLength(data, offset);
+			offset += shared >= LONG_LENGTH ? 2 : 1;
+
+			int suffix = readLength(data, offset);
+			offset += suffix >= LONG_LENGTH ? 2 : 1;
+
+			if (shared + suffix > buffer.length) {
+				buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, shared + suffix));
+			}
+
+			data.get(offset, buffer, shared, suffix);
+			offset += suffix;
+			length = shared + suffix;
+		}
+
+		/**
+		 * @return the current word
+		 */
+		public String word() {
+			return new String(buffer, 0, length);
+		}
+	}
+}
@@ -0,0 +1,218 @@
+package edu.usfca.cs272;
+
+import java.util.Arrays;
+import java.util.TreeMap;
+
+/**
+ * Stores the postings of a single word: the ids of the documents the word
+ * occurs in, kept in increasing order, along with the positions of the word in
+ * each of those documents.
+ *
+ * Documents are normally added in increasing id order, which makes every new
+ * document a cheap append. Adding documents out of order is still supported.
+ *
+ * Warning: This class is not thread-safe. If multiple threads access this class
+ * concurrently, access must be synchronized externally.
+ */
+public class TermPostings {
+	/**
+	 * The smallest capacity allocated for the parallel arrays
+	 */
+	private static final int MIN_CAPACITY = 2;
+
+	/**
+	 * The document ids in increasing order
+	 */
+	private int[] documents;
+
+	/**
+	 * The positions for the document id at the same index
+	 */
+	private PostingList[] positions;
+
+	/**
+	 * The number of documents stored
+	 */
+	private int size;
+
+	/**
+	 * Creates an empty set of postings
+	 */
+	public TermPostings() {
+		this.documents = new int[MIN_CAPACITY];
+		this.positions = new PostingList[MIN_CAPACITY];
+		this.size = 0;
+	}
+
+	/**
+	 * Returns the number of documents the word occurs in.
+	 *
+	 * @return the number of documents
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the document id stored at an index.
+	 *
+	 * @param index - an index between 0 (inclusive) and {@link #size()}
+	 * @return the document id
+	 */
+	public int document(int index) {
+		return documents[index];
+	}
+
+	/**
+	 * Returns the positions stored at an index.
+	 *
+	 * @param index - an index between 0 (inclusive) and {@link #size()}
+	 * @return the positions of the word in that document
+	 */
+	public PostingList positions(int index) {
+		return positions[index];
+	}
+
+	/**
+	 * Returns the positions of the word in a document.
+	 *
+	 * @param document - the document id
+	 * @return the positions, or null if the word does not occur in the document
+	 */
+	public PostingList get(int document) {
+		int found = find(document);
+		return found >= 0 ? positions[found] : null;
+	}
+
+	/**
+	 * Returns the positions of the word in a document, adding an empty list if the
+	 * document is not stored yet.
+	 *
+	 * @param document - the document id
+	 * @return the positions of the word in the document
+	 */
+	public PostingList getOrCreate(int document) {
+		int found = find(document);
+
+		if (found >= 0) {
+			return positions[found];
+		}
+
+		PostingList created = new PostingList();
+		insertAt(-found - 1, document, created);
+		return created;
+	}
+
+	/**
+	 * Adds all of the postings of another word to this one, translating the other
+	 * document ids first. Position lists for documents that are not stored yet are
+	 * shared rather than copied.
+	 *
+	 * @param other - the postings to add
+	 * @param remap - the id in this index of each document id in the other index,
+	 *              or a negative number to skip the document
+	 */
+	public void addAll(TermPostings other, int[] remap) {
+		for (int i = 0; i < other.size; i++) {
+			int document = remap[other.documents[i]];
+			if (document >= 0) {
+				add(document, other.positions[i]);
+			}
+		}
+	}
+
+	/**
+	 * Drops and renumbers documents in place. The new ids must keep the remaining
+	 * documents in the same relative order.
+	 *
+	 * @param renumber - the new id of each document id, or a negative number to
+	 *                 drop the document
+	 */
+	public void renumber(int[] renumber) {
+		int kept = 0;
+		for (int i = 0; i < size; i++) {
+			int document = renumber[documents[i]];
+			if (document >= 0) {
+				documents[kept] = document;
+				positions[kept++] = positions[i];
+			}
+		}
+
+		Arrays.fill(positions, kept, size, null);
+		size = kept;
+	}
+
+	/**
+	 * Adds the positions of the word in a document. If the document is not stored
+	 * yet, the list is stored as is rather than copied.
+	 *
+	 * @param document - the document id
+	 * @param list     - the positions of the word in the document
+	 */
+	public void add(int document, PostingList list) {
+		int found = find(document);
+
+		if (found >= 0) {
+			positions[found].insertAll(list);
+		} else {
+			insertAt(-found - 1, document, list);
+		}
+	}
+
+	/**
+	 * Returns the postings keyed and sorted by location, intended for output.
+	 *
+	 * @param dictionary - the dictionary used to look up document locations
+	 * @return a sorted map from location to positions
+	 */
+	public TreeMap<String, PostingList> toLocationMap(DocumentDictionary dictionary) {
+		TreeMap<String, PostingList> locations = new TreeMap<>();
+		for (int i = 0; i < size; i++) {
+			locations.put(dictionary.location(documents[i]), positions[i]);
+		}
+		return locations;
+	}
+
+	/**
+	 * Finds the index of a document id.
+	 *
+	 * @param document - the document id
+	 * @return the index of the document if found, otherwise
+	 *         {@code (-(insertion point) - 1)} like
+	 *         {@link Arrays#binarySearch(int[], int)}
+	 */
+	private int find(int document) {
+		// the most recent document is by far the most common lookup while indexing
+		if (size == 0 || document > documents[size - 1]) {
+			return -size - 1;
+		}
+		if (document == documents[size - 1]) {
+			return size - 1;
+		}
+		return Arrays.binarySearch(documents, 0, size, document);
+	}
+
+	/**
+	 * Inserts a document and its positions at an index, shifting later entries.
+	 *
+	 * @param index    - the index to insert at
+	 * @param document - the document id
+	 * @param list     - the positions of the word in the document
+	 */
+	private void insertAt(int index, int document, PostingList list) {
+		if (size == documents.length) {
+			int capacity = Math.max(MIN_CAPACITY, documents.length + (documents.length >> 1));
+			documents = Arrays.copyOf(documents, capacity);
+			positions = Arrays.copyOf(positions, capacity);
+		}
+
+		if (index < size) {
+			System.arraycopy(documents, index, documents, index + 1, size - index);
+			System.arraycopy(positions, index, positions, index + 1, size - index);
+		}
+
+		documents[index] = document;
+		positions[index] = list;
+		size++;
+	}
+}
@@ -2,6 +2,7 @@ package edu.usfca.cs272;
 
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.NavigableSet;
@@ -24,49 +25,85 @@ public class ThreadedInvertedIndex extends InvertedIndex {
 	}
 
 	@Override
-	public List<SearchResult> exactSearch(Set<String> queries) {
+	List<SearchResult> select(Set<String> queries, boolean partial, int limit) {
 		lock.readLock().lock();
 		try {
-			var result = super.exactSearch(queries);
-			return result;
-
+			return super.select(queries, partial, limit);
 		} finally {
 			lock.readLock().unlock();
 		}
 	}
 
 	/**
-	 * Performs a partial search on the inverted index using word stems.
+	 * Updates the backward index so word has a location at fileName, position
+	 * 
+	 * @note does not update the word count of the file
 	 * 
-	 * @param partialQuery The query containing partial search terms (word stems).
-	 * @return A list of SearchResult objects, sorted by relevance.
+	 * @param word     - word to be added to the index
+	 * @param fileName - the file the word was found in
+	 * @param position - location of word in the file
 	 */
 	@Override
-	public List<SearchResult> partialSearch(Set<String> partialQuery) {
-		lock.readLock().lock();
+	public void insertWord(String word, String fileName, int position) {
+		lock.writeLock().lock();
 		try {
-			var result = super.partialSearch(partialQuery);
-			return result;
+			super.insertWord(word, fileName, position);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
 
+	/**
+	 * Adds the positions of several words in a document to the index at once,
+	 * holding the write lock once per document instead of once per word.
+	 *
+	 * @param location  - the location of the document
+	 * @param postings  - the positions of each word in the document
+	 * @param wordCount - the word count of the document
+	 */
+	@Override
+	void insertDocument(String location, Map<String, PostingList> postings, int wordCount) {
+		lock.writeLock().lock();
+		try {
+			super.insertDocument(location, postings, wordCount);
 		} finally {
-			lock.readLock().unlock();
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public boolean removeDocument(String location) {
+		lock.writeLock().lock();
+		try {
+			return super.removeDocument(location);
+		} finally {
+			lock.writeLock().unlock();
 		}
 	}
 
 	/**
-	 * Updates the backward index so word has a location at fileName, position
-	 * 
-	 * @note does not update the word count of the file
-	 * 
-	 * @param word     - word to be added to the index
-	 * @param fileName - the file the word was found in
-	 * @param position - location of word in the file
+	 * Replaces every word of a document while holding the write lock, so searches
+	 * see either the old or the new document but never neither.
+	 *
+	 * @param location  - the location of the document
+	 * @param postings  - the new positions of each word in the document
+	 * @param wordCount - the new word count of the document
 	 */
 	@Override
-	public void insertWord(String word, String fileName, int position) {
+	void replaceDocument(String location, Map<String, PostingList> postings, int wordCount) {
 		lock.writeLock().lock();
 		try {
-			super.insertWord(word, fileName, position);
+			super.replaceDocument(location, postings, wordCount);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public void compact() {
+		lock.writeLock().lock();
+		try {
+			super.compact();
 		} finally {
 			lock.writeLock().unlock();
 		}
@@ -325,17 +362,33 @@ public class ThreadedInvertedIndex extends InvertedIndex {
 		}
 	}
 
+	/**
+	 * Adds the data from several InvertedIndexes to this one while holding the
+	 * write lock once for the whole batch.
+	 *
+	 * @param others - the InvertedIndexes to add
+	 */
 	@Override
-	public void addAll(InvertedIndex other) {
+	public void addAll(Collection<? extends InvertedIndex> others) {
 		lock.writeLock().lock();
 		try {
-			super.addAll(other);
+			super.addAll(others);
 		} finally {
 			lock.writeLock().unlock();
 
 		}
 	}
 
+	@Override
+	public FrozenInvertedIndex freeze() {
+		lock.readLock().lock();
+		try {
+			return super.freeze();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
 	/**
 	 * @param path - path to write
 	 * @throws IOException - throw IOexcetion if IOexcetion occurs while writing the
@@ -350,4 +403,14 @@ public class ThreadedInvertedIndex extends InvertedIndex {
 			lock.readLock().unlock();
 		}
 	}
+
+	@Override
+	public void writeBinary(Path path) throws IOException {
+		lock.readLock().lock();
+		try {
+			super.writeBinary(path);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
 }
\ No newline at end of file
@@ -4,14 +4,29 @@ import java.io.IOException;
 import java.io.UncheckedIOException;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.TreeSet;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.stream.Stream;
 
 /**
  * A Multi-threaded version of InvertedIndexProcessor
  */
 public class ThreadedInvertedIndexProcessor {
+	/**
+	 * The number of local indices merged at once per worker thread
+	 */
+	private static final int BATCH_FACTOR = 4;
+
+	/**
+	 * Files larger than this many bytes are split into chunks of about this size,
+	 * which are indexed in parallel
+	 */
+	public static final int CHUNK_SIZE = 8 * 1024 * 1024;
 
 	/**
 	 * Reads 1 or more files and builds an inverted index
@@ -24,13 +39,110 @@ public class ThreadedInvertedIndexProcessor {
 	 */
 	public static void process(Path textPath, ThreadedInvertedIndex index, WorkQueue queue) throws IOException {
 
-		// Get a list of files from the specified path
+		// files are indexed locally and merged into the shared index in batches
+		Batch batch = new Batch(index, queue.size() * BATCH_FACTOR);
+
+		// files are found as they are indexed, so a bounded queue keeps only some of
+		// them in memory at once
+		try (Stream<Path> files = FileFinder.findText(textPath, textPath)) {
+			for (Path file : (Iterable<Path>) files::iterator) {
+				long[] chunks = split(file);
+
+				if (chunks.length > 2) {
+					// a large file is indexed in parallel chunks instead of on one thread
+					ChunkedFile chunked = new ChunkedFile(batch, file, chunks.length - 1);
+					for (int i = 0; i < chunks.length - 1; i++) {
+						queue.compute(new ChunkTask(chunked, i, chunks[i], chunks[i + 1]));
+					}
+				} else {
+					Task task = new Task(batch, file);
+					queue.compute(task);
+				}
+			}
+		} finally {
+			queue.finish();
+			batch.flush();
+		}
+	}
+
+	/**
+	 * Splits a file into chunks of about {@link #CHUNK_SIZE} bytes at line
+	 * boundaries, so no line is split between chunks.
+	 *
+	 * @param file - the file to split
+	 * @return the offsets the chunks start at, followed by the size of the file,
+	 *         or just the start and size of the file if it is not split (or cannot
+	 *         be read, which is reported when it is indexed)
+	 */
+	private static long[] split(Path file) {
+		List<Long> offsets = new ArrayList<>();
+		offsets.add(0L);
+
+		try (FileChannel channel = FileChannel.open(file)) {
+			long size = channel.size();
+			ByteBuffer buffer = ByteBuffer.allocate(8192);
+			long start = 0;
+
+			while (size - start > CHUNK_SIZE) {
+				// the next chunk starts after the first line feed past the chunk size
+				long end = -1;
+				long position = start + CHUNK_SIZE;
+
+				while (end < 0 && position < size) {
+					buffer.clear();
+					int read = channel.read(buffer, position);
+					if (read < 0) {
+						break;
+					}
+					for (int i = 0; i < read; i++) {
+						if (buffer.get(i) == '\n') {
+							end = position + i + 1;
+							break;
+						}
+					}
+					position += read;
+				}
+
+				if (end < 0 || end >= size) {
+					break;
+				}
+				offsets.add(end);
+				start = end;
+			}
+
+			offsets.add(size);
+		} catch (IOException e) {
+			return new long[] { 0, 0 };
+		}
+
+		return offsets.stream().mapToLong(Long::longValue).toArray();
+	}
+
+	/**
+	 * Updates an index built from the same path earlier, re-indexing only the
+	 * files that were added or changed since and removing the files that were
+	 * deleted. Changed files are checked and stemmed by the worker threads, and
+	 * each replaces its old document in the shared index directly, since there
+	 * are usually too few of them to be worth batching.
+	 *
+	 * @param textPath - for individual file index the file, if directory index
+	 *                 files in within the directory
+	 * @param index    - inverted index being updated
+	 * @param queue    - queue containing the worker thread
+	 * @param manifest - the files the index was built from
+	 * @throws IOException - if there is an issue reading the textPath
+	 * @see InvertedIndexProcessor#update(Path, InvertedIndex, IndexManifest)
+	 */
+	public static void update(Path textPath, ThreadedInvertedIndex index, WorkQueue queue, IndexManifest manifest)
+			throws IOException {
 		List<Path> files = FileFinder.listText(textPath, textPath);
 
-		// Iterate through the files and index their contents
+		for (String location : manifest.retain(files)) {
+			index.removeDocument(location);
+		}
+
 		for (Path file : files) {
-			Task task = new Task(index, file);
-			queue.execute(task);
+			queue.compute(new UpdateTask(index, manifest, file));
 		}
 		queue.finish();
 	}
@@ -67,24 +179,92 @@ public class ThreadedInvertedIndexProcessor {
 	}
 
 	/**
-	 * A task representing indexing a single file
+	 * Collects the local indices built by tasks and merges them into the shared
+	 * index several at a time, so the shared index is locked and merged into once
+	 * per batch instead of once per file.
 	 */
-	private static class Task implements Runnable {
+	private static class Batch {
 		/**
 		 * index - index to update
 		 */
 		private final ThreadedInvertedIndex index;
+		/**
+		 * The number of local indices to collect before merging
+		 */
+		private final int capacity;
+		/**
+		 * The local indices waiting to be merged
+		 */
+		private List<InvertedIndex> pending;
+
+		/**
+		 * @param index    - index to update
+		 * @param capacity - the number of local indices to collect before merging
+		 */
+		public Batch(ThreadedInvertedIndex index, int capacity) {
+			this.index = index;
+			this.capacity = Math.max(1, capacity);
+			this.pending = new ArrayList<>(this.capacity);
+		}
+
+		/**
+		 * Adds a local index to the batch, merging the batch if it is full. The merge
+		 * happens outside of the batch lock so other tasks can keep adding.
+		 *
+		 * @param local - the local index to add
+		 */
+		public void add(InvertedIndex local) {
+			List<InvertedIndex> full = null;
+
+			synchronized (this) {
+				pending.add(local);
+				if (pending.size() >= capacity) {
+					full = pending;
+					pending = new ArrayList<>(capacity);
+				}
+			}
+
+			if (full != null) {
+				index.addAll(full);
+			}
+		}
+
+		/**
+		 * Merges any local indices left in the batch.
+		 */
+		public void flush() {
+			List<InvertedIndex> remaining;
+
+			synchronized (this) {
+				remaining = pending;
+				pending = new ArrayList<>(capacity);
+			}
+
+			if (!remaining.isEmpty()) {
+				index.addAll(remaining);
+			}
+		}
+	}
+
+	/**
+	 * A task representing indexing a single file
+	 */
+	private static class Task implements Runnable {
+		/**
+		 * batch - batch to add the indexed file to
+		 */
+		private final Batch batch;
 		/**
 		 * path - path to file to be indexed
 		 */
 		private final Path path;
 
 		/**
-		 * @param index - index to update
+		 * @param batch - batch to add the indexed file to
 		 * @param path  - path to file to be indexed
 		 */
-		public Task(ThreadedInvertedIndex index, Path path) {
-			this.index = index;
+		public Task(Batch batch, Path path) {
+			this.batch = batch;
 			this.path = path;
 		}
 
@@ -95,14 +275,174 @@ public class ThreadedInvertedIndexProcessor {
 				InvertedIndex localIndex = new InvertedIndex();
 				InvertedIndexProcessor.indexAll(localIndex, path);
 
-				index.addAll(localIndex);
+				batch.add(localIndex);
+
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+
+		}
+
+	}
+
+	/**
+	 * Collects the chunks of a large file as they are indexed, and once all of
+	 * them are done, joins them into a single document in order, shifting the
+	 * positions of each chunk by the number of words in the chunks before it.
+	 */
+	private static class ChunkedFile {
+		/**
+		 * batch - batch to add the indexed file to
+		 */
+		private final Batch batch;
+		/**
+		 * path - path to the file being indexed
+		 */
+		private final Path path;
+		/**
+		 * The stems of each chunk, in order
+		 */
+		private final DocumentPostings[] chunks;
+		/**
+		 * The number of chunks not done yet
+		 */
+		private int remaining;
+		/**
+		 * Whether indexing a chunk failed, in which case the file is not added
+		 */
+		private boolean failed;
+
+		/**
+		 * @param batch  - batch to add the indexed file to
+		 * @param path   - path to the file being indexed
+		 * @param chunks - the number of chunks
+		 */
+		public ChunkedFile(Batch batch, Path path, int chunks) {
+			this.batch = batch;
+			this.path = path;
+			this.chunks = new DocumentPostings[chunks];
+			this.remaining = chunks;
+			this.failed = false;
+		}
+
+		/**
+		 * Records a chunk that is done. The thread finishing the last chunk joins the
+		 * chunks and adds the file to the batch.
+		 *
+		 * @param index - the index of the chunk
+		 * @param chunk - the stems of the chunk, or null if indexing it failed
+		 */
+		public void finish(int index, DocumentPostings chunk) {
+			synchronized (this) {
+				chunks[index] = chunk;
+				failed |= chunk == null;
+				if (--remaining > 0 || failed) {
+					return;
+				}
+			}
+
+			DocumentPostings document = chunks[0];
+			for (int i = 1; i < chunks.length; i++) {
+				document.addAll(chunks[i]);
+			}
 
+			InvertedIndex localIndex = new InvertedIndex();
+			localIndex.insertDocument(path.toString(), document);
+			batch.add(localIndex);
+		}
+	}
+
+	/**
+	 * A task representing indexing a chunk of a large file
+	 */
+	private static class ChunkTask implements Runnable {
+		/**
+		 * file - the file the chunk belongs to
+		 */
+		private final ChunkedFile file;
+		/**
+		 * index - the index of the chunk within the file
+		 */
+		private final int index;
+		/**
+		 * start - the offset the chunk starts at
+		 */
+		private final long start;
+		/**
+		 * end - the offset after the end of the chunk
+		 */
+		private final long end;
+
+		/**
+		 * @param file  - the file the chunk belongs to
+		 * @param index - the index of the chunk within the file
+		 * @param start - the offset the chunk starts at
+		 * @param end   - the offset after the end of the chunk
+		 */
+		public ChunkTask(ChunkedFile file, int index, long start, long end) {
+			this.file = file;
+			this.index = index;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		public void run() throws UncheckedIOException {
+			DocumentPostings chunk = null;
+
+			try {
+				chunk = InvertedIndexProcessor.stemChunk(file.path, start, end);
 			} catch (IOException e) {
 				throw new UncheckedIOException(e);
+			} finally {
+				file.finish(index, chunk);
 			}
+		}
+	}
 
+	/**
+	 * A task re-indexing a single file if it changed
+	 */
+	private static class UpdateTask implements Runnable {
+		/**
+		 * index - index to update
+		 */
+		private final ThreadedInvertedIndex index;
+		/**
+		 * manifest - the files the index was built from
+		 */
+		private final IndexManifest manifest;
+		/**
+		 * path - path to file to be checked
+		 */
+		private final Path path;
+
+		/**
+		 * @param index    - index to update
+		 * @param manifest - the files the index was built from
+		 * @param path     - path to file to be checked
+		 */
+		public UpdateTask(ThreadedInvertedIndex index, IndexManifest manifest, Path path) {
+			this.index = index;
+			this.manifest = manifest;
+			this.path = path;
 		}
 
+		@Override
+		public void run() throws UncheckedIOException {
+			try {
+				if (manifest.update(path)) {
+					try {
+						index.replaceDocument(path.toString(), InvertedIndexProcessor.stemFile(path));
+					} catch (IOException e) {
+						manifest.forget(path);
+						throw e;
+					}
+				}
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
 	}
 
 	/**
@@ -158,29 +498,53 @@ public class ThreadedInvertedIndexProcessor {
 
 		@Override
 		public void run() {
+			// fetching waits on the network, while the rest keeps a processor busy
+			String html = HtmlFetcher.fetch(url, 3);
+			try {
+				queue.compute(() -> process(html));
+			} catch (RejectedExecutionException e) {
+				// the page is already fetched, so it is processed here instead
+				process(html);
+			}
+		}
 
-			String content = HtmlFetcher.fetch(url, 3);
-			content = HtmlCleaner.stripBlockElements(content);
+		/**
+		 * Adds the new links of a fetched page to the queue, and indexes its text.
+		 *
+		 * @param html the fetched page, or null if it could not be fetched
+		 */
+		private void process(String html) {
+			String content = HtmlCleaner.stripBlockElements(html);
 
 			var links = LinkFinder.listUrls(url, content);
 
 			content = HtmlCleaner.stripHtml(content);
 
+			List<URL> added = new ArrayList<>();
 			synchronized (visited) {
 				for (var link : links) {
-					if (visited.size() < limit && !visited.contains(link.toString())) {
-						visited.add(link.toString());
-						queue.execute(new HtmlTask(link, index, limit, queue, visited));
+					if (visited.size() < limit && visited.add(link.toString())) {
+						added.add(link);
+					}
+				}
+			}
+
+			// a full queue may run a task on this thread, so the lock is not held
+			for (URL link : added) {
+				try {
+					queue.execute(new HtmlTask(link, index, limit, queue, visited));
+				} catch (RejectedExecutionException e) {
+					// another page may link to it once the queue has room
+					synchronized (visited) {
+						visited.remove(link.toString());
 					}
 				}
 			}
+
 			try
 
 			{
-				InvertedIndex localIndex = new InvertedIndex();
-				InvertedIndexProcessor.indexAll(localIndex, content, url.toString());
-
-				index.addAll(localIndex);
+				InvertedIndexProcessor.indexAll(index, content, url.toString());
 
 			} catch (IOException e) {
 				throw new UncheckedIOException(e);
@@ -10,7 +10,7 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
 
 /**
  * A Multi-threaded version of SearchProcessor
@@ -25,44 +25,77 @@ public class ThreadedSearchProcessor implements SearchProcessorInterface {
 	/**
 	 * A sorted map that stores a set of strings as keys and a list of search
 	 * results as values. The map is sorted based on the concatenated string
-	 * representation of the keys.
+	 * representation of the keys, and is safe to update from multiple threads
+	 * without locking.
 	 */
-	private final Map<String, List<InvertedIndex.SearchResult>> allSearchResults;
+	private final Map<String, List<ReadOnlyInvertedIndex.SearchResult>> allSearchResults;
 
 	/**
-	 * index - the inverted index used for searching.
+	 * index - the inverted index used for searching, must be safe to search from
+	 * multiple threads (a {@link ThreadedInvertedIndex} or a
+	 * {@link FrozenInvertedIndex})
 	 */
-	private final ThreadedInvertedIndex index;
+	private final ReadOnlyInvertedIndex index;
 	/**
 	 * partial - Indicates whether partial or exact search should be performed.
 	 */
 	private final boolean partial;
 
 	/**
-	 * @param index   - the inverted index used for searching.
+	 * limit - The maximum number of results kept for each query, or 0 or less to
+	 * keep every result.
+	 */
+	private final int limit;
+
+	/**
+	 * @param index   - the inverted index used for searching, must be safe to
+	 *                search from multiple threads
+	 * @param partial - Indicates whether partial or exact search should be
+	 *                performed.
+	 * @param queue   - the work queue containing the worker thread
+	 */
+	public ThreadedSearchProcessor(ReadOnlyInvertedIndex index, boolean partial, WorkQueue queue) {
+		this(index, partial, 0, queue);
+	}
+
+	/**
+	 * @param index   - the inverted index used for searching, must be safe to
+	 *                search from multiple threads
 	 * @param partial - Indicates whether partial or exact search should be
 	 *                performed.
+	 * @param limit   - the maximum number of results kept for each query, or 0 or
+	 *                less to keep every result
 	 * @param queue   - the work queue containing the worker thread
 	 */
-	public ThreadedSearchProcessor(ThreadedInvertedIndex index, boolean partial, WorkQueue queue) {
+	public ThreadedSearchProcessor(ReadOnlyInvertedIndex index, boolean partial, int limit, WorkQueue queue) {
 		this.index = index;
 		this.partial = partial;
+		this.limit = limit;
 
-		this.allSearchResults = new TreeMap<>();
+		this.allSearchResults = new ConcurrentSkipListMap<>();
 
 		this.queue = queue;
 
 	}
 
+	/**
+	 * Searches each line of a query file on the work queue. Only the searches are
+	 * waited on, so other work in the queue may still be running afterwards.
+	 *
+	 * @param path - the query file
+	 * @throws IOException if the query file cannot be read
+	 */
 	@Override
 	public void processQueryFile(Path path) throws IOException {
+		WorkQueue.TaskGroup searches = queue.group("search " + path);
+
 		try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
 			String line;
 			while ((line = reader.readLine()) != null) {
-				queue.execute(new Task(line));
+				searches.compute(new Task(line));
 			}
 		} finally {
-			queue.finish();
+			searches.finish();
 		}
 	}
 
@@ -73,16 +106,8 @@ public class ThreadedSearchProcessor implements SearchProcessorInterface {
 		if (!stems.isEmpty()) {
 			String joinedString = String.join(" ", stems);
 
-			synchronized (this) {
-				boolean shouldSearch = !allSearchResults.containsKey(joinedString);
-				if (!shouldSearch) {
-					return;
-				}
-			}
-
-			var results = index.search(stems, partial);
-			synchronized (this) {
-				allSearchResults.put(joinedString, results);
+			if (!allSearchResults.containsKey(joinedString)) {
+				allSearchResults.putIfAbsent(joinedString, index.search(stems, partial, limit));
 			}
 		}
 
@@ -96,16 +121,14 @@ public class ThreadedSearchProcessor implements SearchProcessorInterface {
 	 */
 	@Override
 	public void writeJson(Path resultsPath) throws IOException {
-		synchronized (this) {
-			JsonWriter.writeQueryResults(allSearchResults, resultsPath);
-		}
+		JsonWriter.writeQueryResults(allSearchResults, resultsPath);
 	}
 
 	/**
 	 * @return - the stored inverted index
 	 */
 	@Override
-	public InvertedIndex getIndex() {
+	public ReadOnlyInvertedIndex getIndex() {
 		return index;
 	}
 
@@ -117,21 +140,28 @@ public class ThreadedSearchProcessor implements SearchProcessorInterface {
 		return partial;
 	}
 
+	/**
+	 * @return - the maximum number of results kept for each query, or 0 or less if
+	 *         every result is kept
+	 */
+	@Override
+	public int getLimit() {
+		return limit;
+	}
+
 	/**
 	 * @param queryLine - a single line representing a query
 	 * @return - the stored search results associated with that query
 	 */
 	@Override
-	public List<InvertedIndex.SearchResult> getStoredSearchResult(String queryLine) {
+	public List<ReadOnlyInvertedIndex.SearchResult> getStoredSearchResult(String queryLine) {
 		Set<String> stems = FileStemmer.uniqueStems(queryLine);
 		String joinedStems = String.join(" ", stems);
-		synchronized (this) {
-			return allSearchResults.get(joinedStems);
-		}
+		return allSearchResults.get(joinedStems);
 	}
 
 	@Override
-	public synchronized String toString() {
+	public String toString() {
 
 		StringWriter writer = new StringWriter();
 
@@ -149,7 +179,7 @@ public class ThreadedSearchProcessor implements SearchProcessorInterface {
 	 * @return - An unmodifiable set of query lines.
 	 */
 	@Override
-	public synchronized Set<String> getQueryLines() {
+	public Set<String> getQueryLines() {
 		return Collections.unmodifiableSet(allSearchResults.keySet());
 	}
 
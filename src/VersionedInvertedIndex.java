@@ -0,0 +1,258 @@
+package edu.usfca.cs272;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Thread safe inverted index where readers never take a lock. Writers update a
+ * private {@link ThreadedInvertedIndex} off to the side, and every so often a
+ * new {@link FrozenInvertedIndex} version is built from it and published with a
+ * single volatile write. Every read method uses whichever version is published
+ * at the time it is called, found with a single volatile read.
+ *
+ * Changes are not visible to readers until the next version is published,
+ * either automatically after a configurable number of updates or explicitly by
+ * calling {@link #publish()}. Since each version is a full snapshot, publishing
+ * takes time proportional to the size of the index; pick an interval that
+ * balances freshness against that cost.
+ */
+public class VersionedInvertedIndex extends ThreadedInvertedIndex {
+	/**
+	 * The version of the index readers currently see
+	 */
+	private volatile FrozenInvertedIndex published;
+
+	/**
+	 * The number of updates after which a new version is published automatically,
+	 * or 0 to only publish explicitly
+	 */
+	private final int interval;
+
+	/**
+	 * The number of updates since the last version was published
+	 */
+	private final AtomicInteger unpublished;
+
+	/**
+	 * Ensures versions are built and published one at a time, in order
+	 */
+	private final Object publishLock;
+
+	/**
+	 * Creates a versioned index that only publishes when {@link #publish()} is
+	 * called.
+	 */
+	public VersionedInvertedIndex() {
+		this(0);
+	}
+
+	/**
+	 * Creates a versioned index that publishes automatically.
+	 *
+	 * @param interval - the number of updates (calls to
+	 *                 {@link #insertWord(String, String, int)},
+	 *                 {@link #insertDocument(String, DocumentPostings)},
+	 *                 {@link #replaceDocument(String, DocumentPostings)},
+	 *                 {@link #removeDocument(String)}, or
+	 *                 {@link #addAll(Collection)}) after which a new version is
+	 *                 published, or 0 to only publish explicitly
+	 */
+	public VersionedInvertedIndex(int interval) {
+		if (interval < 0) {
+			throw new IllegalArgumentException("Publish interval must not be negative: " + interval);
+		}
+
+		this.interval = interval;
+		this.unpublished = new AtomicInteger();
+		this.publishLock = new Object();
+		// nothing has been added yet, so readers start with an empty version
+		this.published = new InvertedIndex().freeze();
+	}
+
+	/**
+	 * Builds a new version from every update made so far and makes it visible to
+	 * readers.
+	 *
+	 * @return the version that was published
+	 */
+	public FrozenInvertedIndex publish() {
+		synchronized (publishLock) {
+			unpublished.set(0);
+			published = super.freeze();
+			return published;
+		}
+	}
+
+	/**
+	 * Returns the version of the index readers currently see.
+	 *
+	 * @return the published version
+	 */
+	public FrozenInvertedIndex current() {
+		return published;
+	}
+
+	/**
+	 * Counts an update and publishes a new version if the interval is reached.
+	 */
+	private void updated() {
+		unpublished.incrementAndGet();
+		publishIfDue();
+	}
+
+	/**
+	 * Publishes a new version if the interval is reached, unless the current
+	 * thread is in the middle of replacing a document.
+	 */
+	private void publishIfDue() {
+		if (interval > 0 && unpublished.get() >= interval && !Thread.holdsLock(publishLock)) {
+			publish();
+		}
+	}
+
+	@Override
+	public void insertWord(String word, String fileName, int position) {
+		super.insertWord(word, fileName, position);
+		updated();
+	}
+
+	@Override
+	void insertDocument(String location, Map<String, PostingList> postings, int wordCount) {
+		super.insertDocument(location, postings, wordCount);
+		updated();
+	}
+
+	@Override
+	public void addAll(Collection<? extends InvertedIndex> others) {
+		super.addAll(others);
+		updated();
+	}
+
+	@Override
+	public boolean removeDocument(String location) {
+		boolean removed = super.removeDocument(location);
+		if (removed) {
+			updated();
+		}
+		return removed;
+	}
+
+	/**
+	 * Replaces every word of a document. No version is published between removing
+	 * the old words and adding the new ones.
+	 *
+	 * @param location  - the location of the document
+	 * @param postings  - the new positions of each word in the document
+	 * @param wordCount - the new word count of the document
+	 */
+	@Override
+	void replaceDocument(String location, Map<String, PostingList> postings, int wordCount) {
+		synchronized (publishLock) {
+			super.replaceDocument(location, postings, wordCount);
+		}
+		publishIfDue();
+	}
+
+	/**
+	 * Publishes any unpublished updates and returns the resulting version.
+	 *
+	 * @return the published version, which includes every update so far
+	 */
+	@Override
+	public FrozenInvertedIndex freeze() {
+		synchronized (publishLock) {
+			return unpublished.get() == 0 ? published : publish();
+		}
+	}
+
+	@Override
+	List<SearchResult> select(Set<String> queries, boolean partial, int limit) {
+		return published.select(queries, partial, limit);
+	}
+
+	@Override
+	public String toString() {
+		return published.toString();
+	}
+
+	@Override
+	public boolean containsCount(String location) {
+		return published.containsCount(location);
+	}
+
+	@Override
+	public boolean containsWord(String word) {
+		return published.containsWord(word);
+	}
+
+	@Override
+	public boolean containsLocation(String word, String location) {
+		return published.containsLocation(word, location);
+	}
+
+	@Override
+	public boolean containsPosition(String word, String location, int position) {
+		return published.containsPosition(word, location, position);
+	}
+
+	@Override
+	public int numUniqueWords() {
+		return published.numUniqueWords();
+	}
+
+	@Override
+	public int numCounts() {
+		return published.numCounts();
+	}
+
+	@Override
+	public int numLocations(String word) {
+		return published.numLocations(word);
+	}
+
+	@Override
+	public int numPositions(String word, String location) {
+		return published.numPositions(word, location);
+	}
+
+	@Override
+	public Integer getWordCount(String file) {
+		return published.getWordCount(file);
+	}
+
+	@Override
+	public Set<Integer> getPositions(String word, String file) {
+		return published.getPositions(word, file);
+	}
+
+	@Override
+	public Set<String> getLocations(String word) {
+		return published.getLocations(word);
+	}
+
+	@Override
+	public NavigableSet<String> getWords() {
+		return published.getWords();
+	}
+
+	@Override
+	public Map<String, Integer> getWordCounts() {
+		return published.getWordCounts();
+	}
+
+	@Override
+	public void writeJson(Path path) throws IOException {
+		published.writeJson(path);
+	}
+
+	@Override
+	public void writeBinary(Path path) throws IOException {
+		published.writeBinary(path);
+	}
+}
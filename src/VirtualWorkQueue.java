@@ -0,0 +1,198 @@
+package edu.usfca.cs272;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * A work queue that runs every task on a virtual thread of its own, for tasks
+ * that spend most of their time waiting on I/O (such as fetching web pages).
+ * Thousands of them can wait at once without each one holding an operating
+ * system thread. Tasks added with {@link #compute(Runnable)}, which keep a
+ * processor busy instead, run on a bounded pool of platform threads, so they
+ * neither pile up on nor hold up the threads that virtual threads run on.
+ *
+ * Work added either way counts as pending work for {@link #finish()}.
+ *
+ * @see <a href="https://openjdk.org/jeps/444">JEP 444: Virtual Threads</a>
+ */
+public class VirtualWorkQueue extends WorkQueue {
+	/** Logger used for this class. */
+	private static final Logger log = LogManager.getLogger();
+
+	/** Creates the virtual thread of each task. */
+	private final ThreadFactory fetchers;
+
+	/** The platform threads that run the tasks keeping a processor busy. */
+	private final WorkQueue workers;
+
+	/** The number of tasks added but not finished yet. */
+	private int pending;
+
+	/** Used to signal no more tasks should be started. */
+	private volatile boolean shutdown;
+
+	/**
+	 * Starts a work queue with the default number of platform threads.
+	 *
+	 * @see #VirtualWorkQueue(int)
+	 */
+	public VirtualWorkQueue() {
+		this(DEFAULT);
+	}
+
+	/**
+	 * Starts a work queue with the specified number of platform threads. The
+	 * number of virtual threads is not bounded.
+	 *
+	 * @param threads number of platform threads for the tasks that keep a
+	 *                processor busy; should be greater than 1
+	 */
+	public VirtualWorkQueue(int threads) {
+		this(threads, new WorkQueue(threads));
+	}
+
+	/**
+	 * Starts a work queue with the specified number of platform threads, which
+	 * hold at most the specified number of tasks waiting to be run.
+	 *
+	 * @param threads  number of platform threads for the tasks that keep a
+	 *                 processor busy; should be greater than 1
+	 * @param capacity the maximum number of tasks waiting for a platform thread
+	 * @param overflow what to do with a task added while they are full
+	 *
+	 * @see WorkQueue#WorkQueue(int, int, Overflow)
+	 */
+	public VirtualWorkQueue(int threads, int capacity, Overflow overflow) {
+		this(threads, new WorkQueue(threads, capacity, overflow));
+	}
+
+	/**
+	 * Starts a work queue.
+	 *
+	 * @param threads number of platform threads
+	 * @param workers the platform threads
+	 */
+	private VirtualWorkQueue(int threads, WorkQueue workers) {
+		super(threads, false);
+		this.fetchers = Thread.ofVirtual().name("Fetcher", 0).factory();
+		this.workers = workers;
+		this.pending = 0;
+		this.shutdown = false;
+	}
+
+	/**
+	 * Runs a task on a new virtual thread.
+	 *
+	 * @param task work request (in the form of a {@link Runnable} object)
+	 * @throws RejectedExecutionException if the queue was shut down
+	 */
+	@Override
+	public void execute(Runnable task) throws RejectedExecutionException {
+		started();
+		fetchers.newThread(() -> run(task)).start();
+	}
+
+	/**
+	 * Runs a task on the bounded pool of platform threads.
+	 *
+	 * @param task work request (in the form of a {@link Runnable} object)
+	 * @throws RejectedExecutionException if the queue was shut down, or the
+	 *                                    platform threads are full and reject new
+	 *                                    tasks
+	 */
+	@Override
+	public void compute(Runnable task) throws RejectedExecutionException {
+		started();
+		try {
+			workers.execute(() -> run(task));
+		} catch (RejectedExecutionException e) {
+			finished();
+			throw e;
+		}
+	}
+
+	@Override
+	public synchronized void finish() {
+		while (pending > 0) {
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				System.err.println("Warning: Interrupted while waiting on pending work.");
+
+				log.catching(Level.WARN, e);
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+	}
+
+	@Override
+	public void join() {
+		finish();
+		shutdown();
+		workers.join();
+	}
+
+	@Override
+	public void shutdown() {
+		shutdown = true;
+		workers.shutdown();
+	}
+
+	/**
+	 * Returns the number of platform threads, since that is how many tasks keeping
+	 * a processor busy run at once.
+	 *
+	 * @return number of platform threads
+	 */
+	@Override
+	public int size() {
+		return workers.size();
+	}
+
+	/**
+	 * Counts a new task as pending work.
+	 *
+	 * @throws RejectedExecutionException if the queue was shut down
+	 */
+	private synchronized void started() throws RejectedExecutionException {
+		if (shutdown) {
+			throw new RejectedExecutionException("Work queue is shut down.");
+		}
+
+		pending++;
+	}
+
+	/**
+	 * Runs a task, counting it as finished afterwards even if it fails.
+	 *
+	 * @param task the task to run
+	 */
+	private void run(Runnable task) {
+		try {
+			task.run();
+		} catch (RuntimeException e) {
+			// catch runtime exceptions so the pending work is still counted down
+			System.err.printf("Error: %s encountered an exception while running.%n", Thread.currentThread().getName());
+			log.catching(Level.ERROR, e);
+		} finally {
+			finished();
+		}
+	}
+
+	/**
+	 * Marks a task as finished, waking up threads waiting in {@link #finish()} if
+	 * it was the last one.
+	 */
+	private synchronized void finished() {
+		pending--;
+
+		if (pending == 0) {
+			notifyAll();
+		}
+	}
+}
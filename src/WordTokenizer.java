@@ -0,0 +1,208 @@
+package edu.usfca.cs272;
+
+import java.nio.CharBuffer;
+import java.text.Normalizer;
+import java.util.Locale;
+import java.util.function.Consumer;
+
+/**
+ * Splits lines of text into the same cleaned words as
+ * {@link FileStemmer#parse(String)}, but in a single pass over the characters
+ * instead of normalizing, cleaning, and splitting the whole line with regular
+ * expressions. Each word is written into a buffer that is reused for every word
+ * instead of being collected into a new array.
+ *
+ * Words made of Latin letters only (with or without accents, which covers
+ * almost all words in English and most European text) are cleaned and
+ * lower-cased one character at a time using a precomputed table. Any other word
+ * is cleaned with {@link FileStemmer#clean(String)}, so Unicode normalization
+ * and lower-casing behave exactly as before.
+ *
+ * A tokenizer is not thread safe, so each thread needs its own.
+ */
+public class WordTokenizer {
+	/**
+	 * Marks a character that is removed when cleaning
+	 */
+	private static final char REMOVED = '\u0000';
+
+	/**
+	 * Marks a character that can only be cleaned together with its word
+	 */
+	private static final char SLOW = '\uFFFF';
+
+	/**
+	 * The cleaned, lower-cased form of every character before the Greek block,
+	 * which covers ASCII, the Latin-1 and Latin Extended letters, and the
+	 * combining accents they are decomposed into
+	 */
+	private static final char[] CLEANED = new char[0x370];
+
+	static {
+		for (char c = 0; c < CLEANED.length; c++) {
+			String cleaned = FileStemmer.CLEAN_REGEX.matcher(Normalizer.normalize(String.valueOf(c), Normalizer.Form.NFD))
+					.replaceAll("");
+
+			if (cleaned.isEmpty()) {
+				CLEANED[c] = REMOVED;
+			} else if (cleaned.length() > 1 || !Character.isLetter(cleaned.charAt(0))) {
+				// accents that are kept are reordered with the accents around them
+				CLEANED[c] = SLOW;
+			} else {
+				String lower = cleaned.toLowerCase(Locale.ROOT);
+				CLEANED[c] = lower.length() == 1 ? lower.charAt(0) : SLOW;
+			}
+		}
+	}
+
+	/**
+	 * The characters of the current word
+	 */
+	private char[] buffer;
+
+	/**
+	 * A view of the current word in the buffer, passed to the consumer
+	 */
+	private CharBuffer word;
+
+	/**
+	 * Creates a new tokenizer.
+	 */
+	public WordTokenizer() {
+		this.buffer = new char[32];
+		this.word = CharBuffer.wrap(buffer);
+	}
+
+	/**
+	 * Splits a line into cleaned words, passing each one to the consumer in order.
+	 * The word passed is only valid until the consumer returns, since the same
+	 * buffer is reused for the next word.
+	 *
+	 * @param line     - the line to split
+	 * @param consumer - receives each cleaned word
+	 *
+	 * @see FileStemmer#parse(String)
+	 */
+	public void tokenize(String line, Consumer<CharSequence> consumer) {
+		// a capital sigma is lower-cased depending on the word boundaries around it,
+		// which are found in the whole line, so these lines are parsed as a whole
+		if (line.indexOf('\u03A3') >= 0) {
+			for (String parsed : FileStemmer.parse(line)) {
+				consumer.accept(parsed);
+			}
+			return;
+		}
+
+		// the Turkic languages lower-case 'I' differently, which the table does not
+		boolean turkic = isTurkic(Locale.getDefault());
+		int length = line.length();
+		int i = 0;
+
+		// whether a word was found yet, and whether an empty word comes first
+		boolean first = true;
+		boolean leading = false;
+
+		while (i < length) {
+			// skip to the start of the next word
+			while (i < length && isSpace(line.charAt(i))) {
+				leading |= first && !Character.isWhitespace(line.charAt(i));
+				i++;
+			}
+
+			int start = i;
+			int size = 0;
+			boolean slow = false;
+
+			for (; i < length; i++) {
+				char c = line.charAt(i);
+
+				if (isSpace(c)) {
+					break;
+				}
+
+				char cleaned = c < CLEANED.length && !(turkic && (c == 'I' || c >= 0x80)) ? CLEANED[c] : SLOW;
+
+				if (cleaned == SLOW) {
+					// finish the word first, then clean it the slow way
+					while (i < length && !isSpace(line.charAt(i))) {
+						i++;
+					}
+					slow = true;
+					break;
+				}
+
+				if (cleaned != REMOVED) {
+					append(size++, cleaned);
+				}
+			}
+
+			if (slow) {
+				String cleaned = FileStemmer.clean(line.substring(start, i));
+				size = cleaned.length();
+				for (int j = 0; j < size; j++) {
+					append(j, cleaned.charAt(j));
+				}
+			}
+
+			if (size > 0) {
+				if (leading) {
+					// parse strips the line before splitting it, which keeps spaces like the
+					// no-break space, so a line starting with one had an empty first word
+					word.limit(0).position(0);
+					consumer.accept(word);
+					leading = false;
+				}
+
+				first = false;
+				word.limit(size).position(0);
+				consumer.accept(word);
+			}
+		}
+	}
+
+	/**
+	 * Stores a character of the current word, growing the buffer if needed.
+	 *
+	 * @param index - the position in the word
+	 * @param c     - the character
+	 */
+	private void append(int index, char c) {
+		if (index == buffer.length) {
+			char[] larger = new char[buffer.length * 2];
+			System.arraycopy(buffer, 0, larger, 0, index);
+			buffer = larger;
+			word = CharBuffer.wrap(buffer);
+		}
+		buffer[index] = c;
+	}
+
+	/**
+	 * Checks whether a character separates words, which is the case for the same
+	 * characters as {@code \p{Space}} in {@link FileStemmer#SPLIT_REGEX}. None of
+	 * them are surrogates, so checking one character at a time is enough.
+	 *
+	 * @param c - the character to check
+	 * @return true if the character is white space
+	 */
+	private static boolean isSpace(char c) {
+		if (c < 0x80) {
+			return c == ' ' || (c >= '\t' && c <= '\r');
+		}
+
+		return switch (Character.getType(c)) {
+			case Character.SPACE_SEPARATOR, Character.LINE_SEPARATOR, Character.PARAGRAPH_SEPARATOR -> true;
+			default -> c == '\u0085';
+		};
+	}
+
+	/**
+	 * Checks whether a locale lower-cases the letter 'I' to a dotless i.
+	 *
+	 * @param locale - the locale to check
+	 * @return true for Turkish and Azerbaijani
+	 */
+	private static boolean isTurkic(Locale locale) {
+		String language = locale.getLanguage();
+		return language.equals("tr") || language.equals("az");
+	}
+}
@@ -1,6 +1,10 @@
 package edu.usfca.cs272;
 
 import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.LogManager;
@@ -28,6 +32,15 @@ public class WorkQueue {
 	/** Used to signal the workers should terminate. */
 	private volatile boolean shutdown;
 
+	/** The maximum number of tasks waiting in the queue. */
+	private final int capacity;
+
+	/** What to do with a task added while the queue is full. */
+	private final Overflow overflow;
+
+	/** The task groups of this queue by name. */
+	private final ConcurrentHashMap<String, TaskGroup> groups;
+
 	/** The default number of worker threads to use when not specified. */
 	public static final int DEFAULT = 5;
 
@@ -60,14 +73,53 @@ public class WorkQueue {
 	 * @param threads number of worker threads; should be greater than 1
 	 */
 	public WorkQueue(int threads) {
+		this(threads, Integer.MAX_VALUE, Overflow.BLOCK);
+	}
+
+	/**
+	 * Starts a work queue that holds at most the specified number of tasks, so
+	 * adding tasks faster than they are run does not use more and more memory.
+	 *
+	 * @param threads  number of worker threads; should be greater than 1
+	 * @param capacity the maximum number of tasks waiting to be run
+	 * @param overflow what to do with a task added while the queue is full
+	 */
+	public WorkQueue(int threads, int capacity, Overflow overflow) {
+		this(threads, capacity, overflow, true);
+	}
+
+	/**
+	 * Creates a work queue, optionally without starting its worker threads.
+	 * Subclasses that run work on threads of their own do not start them, and
+	 * override every method that uses them.
+	 *
+	 * @param threads number of worker threads
+	 * @param start   whether to start the worker threads
+	 */
+	WorkQueue(int threads, boolean start) {
+		this(threads, Integer.MAX_VALUE, Overflow.BLOCK, start);
+	}
+
+	/**
+	 * Creates a work queue.
+	 *
+	 * @param threads  number of worker threads
+	 * @param capacity the maximum number of tasks waiting to be run
+	 * @param overflow what to do with a task added while the queue is full
+	 * @param start    whether to start the worker threads
+	 */
+	private WorkQueue(int threads, int capacity, Overflow overflow, boolean start) {
 		this.tasks = new LinkedList<Runnable>();
-		this.workers = new Worker[threads];
+		this.workers = new Worker[start ? threads : 0];
 		this.pending = 0;
 		this.pendingLock = new Object();
 		this.shutdown = false;
+		this.capacity = Math.max(1, capacity);
+		this.overflow = overflow;
+		this.groups = new ConcurrentHashMap<>();
 
 		// start the threads so they are waiting in the background
-		for (int i = 0; i < threads; i++) {
+		for (int i = 0; i < workers.length; i++) {
 			workers[i] = new Worker();
 			workers[i].start();
 		}
@@ -75,19 +127,93 @@ public class WorkQueue {
 
 	/**
 	 * Adds a work (or task) request to the queue. A worker thread will process this
-	 * request when available.
+	 * request when available. If the queue is full, what happens depends on its
+	 * {@link Overflow} policy. A worker thread of this queue never waits on a full
+	 * queue, since it might be waiting on itself, and runs the task instead.
 	 *
 	 * @param task work request (in the form of a {@link Runnable} object)
+	 * @throws RejectedExecutionException if the queue was shut down, or is full
+	 *                                    and rejects new tasks
 	 */
-	public void execute(Runnable task) {
-
-		synchronized (pendingLock) {
-			pending += 1;
-		}
+	public void execute(Runnable task) throws RejectedExecutionException {
 		synchronized (tasks) {
-			tasks.addLast(task);
-			tasks.notifyAll();
+			while (!shutdown && tasks.size() >= capacity) {
+				if (overflow == Overflow.REJECT) {
+					throw new RejectedExecutionException("Work queue is full with " + capacity + " tasks.");
+				}
+
+				if (overflow == Overflow.CALLER_RUNS || isWorker()) {
+					break;
+				}
+
+				try {
+					tasks.wait();
+				} catch (InterruptedException e) {
+					System.err.println("Warning: Interrupted while waiting to add work.");
+
+					log.catching(Level.WARN, e);
+					Thread.currentThread().interrupt();
+					break;
+				}
+			}
+
+			// the workers are gone or leaving, so the task would never run
+			if (shutdown) {
+				throw new RejectedExecutionException("Work queue is shut down.");
+			}
+
+			if (tasks.size() < capacity) {
+				synchronized (pendingLock) {
+					pending += 1;
+				}
+
+				tasks.addLast(task);
+				tasks.notifyAll();
+				return;
+			}
 		}
+
+		// the queue is still full, so the task is run by the caller instead
+		runTask(task);
+	}
+
+	/**
+	 * Adds a task that keeps a processor busy (such as stemming or indexing)
+	 * rather than waiting on I/O. Queues that run tasks on more threads than there
+	 * are processors run these on a bounded number of threads instead. By default
+	 * this is the same as {@link #execute(Runnable)}.
+	 *
+	 * @param task work request (in the form of a {@link Runnable} object)
+	 */
+	public void compute(Runnable task) {
+		execute(task);
+	}
+
+	/**
+	 * Adds a task that computes a result, like {@link #compute(Runnable)}. The
+	 * result (or the exception thrown instead) is passed on through the returned
+	 * future rather than shared with other tasks, and the exception is not logged.
+	 *
+	 * @param <T>  the type of the result
+	 * @param task the task computing the result
+	 * @return the future result of the task
+	 */
+	public <T> CompletableFuture<T> submit(Callable<T> task) {
+		CompletableFuture<T> future = new CompletableFuture<>();
+		compute(() -> complete(future, task));
+		return future;
+	}
+
+	/**
+	 * Returns the group of tasks with the specified name, creating it if needed.
+	 * Tasks added through a group run on this queue like any other, but the group
+	 * can be waited on without waiting on the rest of the queue.
+	 *
+	 * @param name the name of the group
+	 * @return the group with that name
+	 */
+	public TaskGroup group(String name) {
+		return groups.computeIfAbsent(name, TaskGroup::new);
 	}
 
 	/**
@@ -152,6 +278,200 @@ public class WorkQueue {
 		return workers.length;
 	}
 
+	/**
+	 * Checks whether the calling thread is a worker thread of this queue.
+	 *
+	 * @return true if called by a worker thread
+	 */
+	private boolean isWorker() {
+		for (Worker worker : workers) {
+			if (worker == Thread.currentThread()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Runs a task, catching runtime exceptions so they do not end the thread
+	 * running it.
+	 *
+	 * @param task the task to run
+	 */
+	private static void runTask(Runnable task) {
+		try {
+			task.run();
+		} catch (RuntimeException e) {
+			// catch runtime exceptions to avoid leaking threads
+			System.err.printf("Error: %s encountered an exception while running.%n", Thread.currentThread().getName());
+			log.catching(Level.ERROR, e);
+		}
+	}
+
+	/**
+	 * Runs a task computing a result, and completes a future with its result or
+	 * the exception it threw.
+	 *
+	 * @param <T>    the type of the result
+	 * @param future the future to complete
+	 * @param task   the task computing the result
+	 */
+	private static <T> void complete(CompletableFuture<T> future, Callable<T> task) {
+		try {
+			future.complete(task.call());
+		} catch (Exception e) {
+			future.completeExceptionally(e);
+		}
+	}
+
+	/**
+	 * A named group of tasks added to the queue, which is waited on separately
+	 * from the other tasks. Waiting on a group from one of its own tasks never
+	 * returns, since that task is still pending.
+	 */
+	public class TaskGroup {
+		/** The name of this group. */
+		private final String name;
+
+		/** The number of tasks in this group added but not finished yet. */
+		private int pending;
+
+		/**
+		 * Creates an empty group.
+		 *
+		 * @param name the name of this group
+		 */
+		private TaskGroup(String name) {
+			this.name = name;
+			this.pending = 0;
+		}
+
+		/**
+		 * Adds a task to the queue as part of this group.
+		 *
+		 * @param task work request (in the form of a {@link Runnable} object)
+		 * @see WorkQueue#execute(Runnable)
+		 */
+		public void execute(Runnable task) {
+			started();
+			try {
+				WorkQueue.this.execute(() -> run(task));
+			} catch (RejectedExecutionException e) {
+				finished();
+				throw e;
+			}
+		}
+
+		/**
+		 * Adds a task that keeps a processor busy to the queue as part of this group.
+		 *
+		 * @param task work request (in the form of a {@link Runnable} object)
+		 * @see WorkQueue#compute(Runnable)
+		 */
+		public void compute(Runnable task) {
+			started();
+			try {
+				WorkQueue.this.compute(() -> run(task));
+			} catch (RejectedExecutionException e) {
+				finished();
+				throw e;
+			}
+		}
+
+		/**
+		 * Adds a task that computes a result to the queue as part of this group.
+		 *
+		 * @param <T>  the type of the result
+		 * @param task the task computing the result
+		 * @return the future result of the task
+		 * @see WorkQueue#submit(Callable)
+		 */
+		public <T> CompletableFuture<T> submit(Callable<T> task) {
+			CompletableFuture<T> future = new CompletableFuture<>();
+			compute(() -> complete(future, task));
+			return future;
+		}
+
+		/**
+		 * Waits for the tasks of this group to be finished, but not for the other
+		 * tasks in the queue.
+		 */
+		public synchronized void finish() {
+			while (pending > 0) {
+				try {
+					wait();
+				} catch (InterruptedException e) {
+					System.err.printf("Warning: Interrupted while waiting on %s.%n", name);
+
+					log.catching(Level.WARN, e);
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+		}
+
+		/**
+		 * Returns the name of this group.
+		 *
+		 * @return the name of this group
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * Counts a new task of this group as pending.
+		 */
+		private synchronized void started() {
+			pending++;
+		}
+
+		/**
+		 * Runs a task of this group, counting it as finished afterwards even if it
+		 * fails. Failures are still caught and logged by the queue.
+		 *
+		 * @param task the task to run
+		 */
+		private void run(Runnable task) {
+			try {
+				task.run();
+			} finally {
+				finished();
+			}
+		}
+
+		/**
+		 * Marks a task of this group as finished, waking up threads waiting on the
+		 * group if it was the last one.
+		 */
+		private synchronized void finished() {
+			pending--;
+
+			if (pending == 0) {
+				notifyAll();
+			}
+		}
+
+		@Override
+		public synchronized String toString() {
+			return String.format("%s (%d pending)", name, pending);
+		}
+	}
+
+	/**
+	 * What to do with a task added while the queue is full.
+	 */
+	public enum Overflow {
+		/** Wait until there is room in the queue. */
+		BLOCK,
+
+		/** Run the task on the thread adding it. */
+		CALLER_RUNS,
+
+		/** Throw a {@link RejectedExecutionException}. */
+		REJECT
+	}
+
 	/**
 	 * Waits until work (or a task) is available in the work queue. When work is
 	 * found, will remove the work from the queue and run it.
@@ -189,15 +509,13 @@ public class WorkQueue {
 
 						task = tasks.removeFirst();
 
+						// wake up the threads waiting for room in a full queue
+						if (tasks.size() == capacity - 1) {
+							tasks.notifyAll();
+						}
 					}
 
-					try {
-						task.run();
-					} catch (RuntimeException e) {
-						// catch runtime exceptions to avoid leaking threads
-						System.err.printf("Error: %s encountered an exception while running.%n", this.getName());
-						log.catching(Level.ERROR, e);
-					}
+					runTask(task);
 					synchronized (pendingLock) {
 						pending -= 1;
 						if (pending == 0) {
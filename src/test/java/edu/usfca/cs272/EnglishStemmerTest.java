@@ -0,0 +1,126 @@
+package edu.usfca.cs272;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import opennlp.tools.stemmer.Stemmer;
+import opennlp.tools.stemmer.snowball.SnowballStemmer;
+import opennlp.tools.stemmer.snowball.SnowballStemmer.ALGORITHM;
+
+/**
+ * Checks that {@link EnglishStemmer} stems every word of a word list exactly
+ * like the Snowball English stemmer it replaced, including through the in-place
+ * method and {@link StemCache}. The word list holds common words from English
+ * documentation along with the special cases of the Snowball algorithm.
+ */
+public class EnglishStemmerTest {
+	/**
+	 * The word list, one lower-case word per line
+	 */
+	private static final String WORDS = "/stemmer-words.txt";
+
+	/**
+	 * The words read from the word list
+	 */
+	private static List<String> words;
+
+	/**
+	 * Creates the test.
+	 */
+	public EnglishStemmerTest() {
+	}
+
+	/**
+	 * Reads the word list once for every test.
+	 *
+	 * @throws IOException if the word list cannot be read
+	 */
+	@BeforeAll
+	public static void readWords() throws IOException {
+		words = new ArrayList<>();
+		try (InputStream stream = EnglishStemmerTest.class.getResourceAsStream(WORDS)) {
+			assertNotNull(stream, "Missing word list " + WORDS);
+			BufferedReader reader = new BufferedReader(new InputStreamReader(stream, UTF_8));
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (!line.isBlank()) {
+					words.add(line.strip());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Lists the words the stemmer stems differently than the Snowball stemmer, so
+	 * a failure shows every mismatch at once.
+	 *
+	 * @param stemmer - the stemmer to check
+	 * @return a description of each mismatch
+	 */
+	private static List<String> mismatches(Stemmer stemmer) {
+		SnowballStemmer expected = new SnowballStemmer(ALGORITHM.ENGLISH);
+		List<String> mismatches = new ArrayList<>();
+		for (String word : words) {
+			String wanted = expected.stem(word).toString();
+			String actual = stemmer.stem(word).toString();
+			if (!wanted.equals(actual)) {
+				mismatches.add(word + ": expected " + wanted + " but was " + actual);
+			}
+		}
+		return mismatches;
+	}
+
+	/**
+	 * Tests stemming words passed as strings.
+	 */
+	@Test
+	public void testStem() {
+		assertEquals(List.of(), mismatches(new EnglishStemmer()));
+	}
+
+	/**
+	 * Tests stemming words in place, reusing the same array for every word like
+	 * the tokenizer does.
+	 */
+	@Test
+	public void testStemInPlace() {
+		EnglishStemmer stemmer = new EnglishStemmer();
+		char[] buffer = new char[64];
+		assertEquals(List.of(), mismatches(word -> {
+			word.toString().getChars(0, word.length(), buffer, 0);
+			return new String(buffer, 0, stemmer.stem(buffer, word.length()));
+		}));
+	}
+
+	/**
+	 * Tests stemming words passed as a reused buffer through the shared cache, the
+	 * way files are stemmed when they are indexed.
+	 */
+	@Test
+	public void testStemCache() {
+		StemCache cache = new StemCache(StemCache.DEFAULT_CAPACITY, EnglishStemmer::new);
+		CharBuffer buffer = CharBuffer.allocate(64);
+		Stemmer cached = word -> {
+			buffer.clear();
+			buffer.append(word).flip();
+			return cache.stem(buffer);
+		};
+
+		assertEquals(List.of(), mismatches(cached));
+
+		// every word is found in the cache the second time
+		assertEquals(List.of(), mismatches(cached));
+	}
+}